@@ -0,0 +1,125 @@
+// Creates per second through json-server, one `POST /planets` per entity
+// against `POST /planets/_bulk` (middleware/bulk.js) with batches of growing
+// size. Run with `npm run bench:bulk`.
+//
+// Single creates keep `concurrency` requests in flight over keep-alive
+// connections, bulk writes one batch at a time like org.example.client.BatchWriter.
+// Both run once with json-server's default persistence, which rewrites
+// db.json after every write, and once with the op log (persistence/oplog.js)
+// at its default durability.
+const fs = require('fs')
+const os = require('os')
+const path = require('path')
+const http = require('http')
+const express = require('express')
+const jsonServer = require('json-server')
+const bulk = require('../middleware/bulk')
+const sequence = require('../middleware/sequence')
+const oplog = require('../persistence/oplog')
+
+const CREATES = 5000
+const CONCURRENCY = 32
+const BATCHES = [10, 100, 1000]
+
+const planet = (n) => ({
+    name: `Bulk_${n}`,
+    rotation_period: '24',
+    orbital_period: '364',
+    diameter: '12500',
+    climate: 'temperate',
+    gravity: '1 standard',
+    terrain: 'grasslands, mountains',
+    surface_water: '40',
+    population: String(n),
+    residents: [],
+    films: [],
+    created: new Date().toISOString(),
+    edited: new Date().toISOString()
+})
+
+const app = (file, persistence) => {
+    const router = jsonServer.router(persistence ? persistence.load(file) : file)
+    const sequences = sequence(router.db)
+    const server = express()
+
+    server.use(express.json({ limit: '16mb' }))
+    server.use(sequences)
+    server.use(bulk(router.db, {
+        assign: sequences.assign,
+        persist: persistence ? operations => persistence.append({ op: 'batch', operations }) : undefined
+    }))
+
+    if (persistence) {
+        persistence.attach(router.db)
+        router.render = persistence.render((req, res) => res.jsonp(res.locals.data))
+    }
+
+    server.use(router)
+    return server
+}
+
+const post = (agent, port, path, body) => new Promise((resolve, reject) => {
+    const json = JSON.stringify(body)
+    const req = http.request({ agent, port, path, method: 'POST', headers: { 'Content-Type': 'application/json', 'Content-Length': Buffer.byteLength(json) } }, (res) => {
+        res.resume()
+        res.on('end', () => res.statusCode < 300 ? resolve() : reject(new Error(`POST ${path} returned ${res.statusCode}`)))
+    })
+
+    req.on('error', reject)
+    req.end(json)
+})
+
+// Creates per second
+const measure = async (port, batch) => {
+    const agent = new http.Agent({ keepAlive: true, maxSockets: CONCURRENCY })
+    const start = Date.now()
+    let created = 0
+
+    if (batch === 1) {
+        const writer = async () => {
+            while (created < CREATES) {
+                await post(agent, port, '/planets', planet(created++))
+            }
+        }
+
+        await Promise.all(Array.from({ length: CONCURRENCY }, writer))
+    } else {
+        while (created < CREATES) {
+            const size = Math.min(batch, CREATES - created)
+            await post(agent, port, '/planets/_bulk', Array.from({ length: size }, (_, i) => ({ op: 'create', data: planet(created + i) })))
+            created += size
+        }
+    }
+
+    agent.destroy()
+    return CREATES * 1000 / (Date.now() - start)
+}
+
+const main = async () => {
+    const dir = fs.mkdtempSync(path.join(os.tmpdir(), 'bulk-bench-'))
+
+    console.log(`${'persistence'.padEnd(20)}${'writes'.padEnd(28)}${'creates/s'.padStart(12)}`)
+
+    for (const persistence of ['rewrite db.json', 'oplog, fsync']) {
+        for (const batch of [1, ...BATCHES]) {
+            const file = path.join(dir, 'db.json')
+            fs.copyFileSync(`${__dirname}/../db.json`, file)
+
+            const store = persistence.startsWith('oplog') && oplog({ dir: fs.mkdtempSync(path.join(dir, 'log-')) })
+            const listener = app(file, store).listen(0)
+            const throughput = await measure(listener.address().port, batch)
+
+            listener.close()
+            if (store) {
+                store.close()
+            }
+
+            const writes = batch === 1 ? `POST, ${CONCURRENCY} in flight` : `_bulk of ${batch}`
+            console.log(`${persistence.padEnd(20)}${writes.padEnd(28)}${throughput.toFixed(0).padStart(12)}`)
+        }
+    }
+
+    fs.rmSync(dir, { recursive: true, force: true })
+}
+
+main()
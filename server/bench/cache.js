@@ -0,0 +1,86 @@
+// Throughput of `GET /:collection/:id` through json-server with and without
+// the response cache (middleware/cache.js). Run with `npm run bench:cache`.
+//
+// Clients keep `concurrency` requests in flight over keep-alive connections,
+// reading random entities of db.json, so after the first round every read is
+// a hit.
+const fs = require('fs')
+const http = require('http')
+const express = require('express')
+const jsonServer = require('json-server')
+const cache = require('../middleware/cache')
+const jsonapi = require('../middleware/jsonapi')
+
+const DURATION_MS = 2000
+const CONCURRENCY = 32
+
+const app = (withCache) => {
+    const router = jsonServer.router(JSON.parse(fs.readFileSync(`${__dirname}/../db.json`, 'utf8')))
+    const documents = jsonapi(router.db)
+    const server = express()
+    const responses = cache(router.db)
+
+    server.use(express.json())
+
+    if (withCache) {
+        server.use(responses)
+    }
+
+    server.use(documents)
+    router.render = documents.render
+    server.use(router)
+
+    return { server, responses, db: router.db }
+}
+
+const measure = (port, urls) => new Promise((resolve) => {
+    const agent = new http.Agent({ keepAlive: true, maxSockets: CONCURRENCY })
+    const start = Date.now()
+    let requests = 0
+
+    const client = () => new Promise((done) => {
+        const next = () => {
+            if (Date.now() - start >= DURATION_MS) {
+                done()
+                return
+            }
+
+            const url = urls[Math.floor(Math.random() * urls.length)]
+            http.get({ port, path: url, agent }, (res) => {
+                res.resume()
+                res.on('end', () => {
+                    requests++
+                    next()
+                })
+            })
+        }
+
+        next()
+    })
+
+    Promise.all(Array.from({ length: CONCURRENCY }, client)).then(() => {
+        agent.destroy()
+        resolve(requests * 1000 / (Date.now() - start))
+    })
+})
+
+const main = async () => {
+    console.log(`${'cache'.padEnd(10)}${'requests/s'.padStart(12)}${'hit ratio'.padStart(12)}`)
+
+    for (const withCache of [false, true]) {
+        const { server, responses, db } = app(withCache)
+        const state = db.getState()
+        const urls = Object.keys(state)
+            .filter(name => Array.isArray(state[name]))
+            .flatMap(name => state[name].map(item => `/${name}/${item.id}`))
+
+        const listener = server.listen(0)
+        const throughput = await measure(listener.address().port, urls)
+        listener.close()
+
+        const ratio = withCache ? responses.stats().hitRatio.toFixed(3) : '-'
+        console.log(`${(withCache ? 'on' : 'off').padEnd(10)}${throughput.toFixed(0).padStart(12)}${ratio.padStart(12)}`)
+    }
+}
+
+main()
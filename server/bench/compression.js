@@ -0,0 +1,138 @@
+// What compression (middleware/compression.js) costs and saves for `/people`
+// and `/db`, on db.json and on a fixture 100 times its size (or the file given,
+// e.g. one written by org.example.data.DatasetGenerator). Run with
+// `npm run bench:compression [-- <db.json>]`.
+//
+// For each encoding it reports the bytes on the wire, the CPU time to compress
+// and decompress the body once, and the median end-to-end latency of a request
+// through json-server, decompression included, with the compressed bytes
+// cached (`warm`) and with the data changed before each request (`cold`).
+const fs = require('fs')
+const http = require('http')
+const zlib = require('zlib')
+const express = require('express')
+const jsonServer = require('json-server')
+const compression = require('../middleware/compression')
+
+const ENCODINGS = ['identity', 'gzip', 'br']
+const PATHS = ['/people', '/db']
+const REQUESTS = 30
+const SCALE = 100
+
+const codecs = {
+    identity: { compress: (body) => body, decompress: (body) => body },
+    gzip: { compress: (body) => zlib.gzipSync(body), decompress: (body) => zlib.gunzipSync(body) },
+    br: {
+        compress: (body) => zlib.brotliCompressSync(body, { params: { [zlib.constants.BROTLI_PARAM_QUALITY]: 5 } }),
+        decompress: (body) => zlib.brotliDecompressSync(body)
+    }
+}
+
+const scaled = (db, factor) => {
+    const result = {}
+
+    for (const [name, items] of Object.entries(db)) {
+        if (!Array.isArray(items)) {
+            result[name] = items
+            continue
+        }
+
+        result[name] = []
+        for (let copy = 0; copy < factor; copy++) {
+            items.forEach(item => result[name].push({ ...item, id: copy * items.length + item.id }))
+        }
+    }
+
+    return result
+}
+
+// Milliseconds per call, over at least 10 calls and 200ms
+const cpu = (fn) => {
+    let calls = 0
+    const start = process.hrtime.bigint()
+    let elapsed = 0
+
+    while (calls < 10 || elapsed < 200) {
+        fn()
+        calls++
+        elapsed = Number(process.hrtime.bigint() - start) / 1e6
+    }
+
+    return elapsed / calls
+}
+
+const get = (port, path, encoding) => new Promise((resolve, reject) => {
+    const start = process.hrtime.bigint()
+    const headers = encoding === 'identity' ? {} : { 'accept-encoding': encoding }
+
+    http.get({ port, path, headers }, (res) => {
+        const chunks = []
+        res.on('data', chunk => chunks.push(chunk))
+        res.on('end', () => {
+            const body = codecs[res.headers['content-encoding'] || 'identity'].decompress(Buffer.concat(chunks))
+            resolve({ body, bytes: Buffer.concat(chunks).length, ms: Number(process.hrtime.bigint() - start) / 1e6 })
+        })
+    }).on('error', reject)
+})
+
+const median = (values) => values.sort((a, b) => a - b)[Math.floor(values.length / 2)]
+
+const pad = (value, width) => String(value).padStart(width)
+
+const run = async (label, db) => {
+    const router = jsonServer.router(db)
+    const compressor = compression()
+    const server = express()
+
+    server.use(compressor)
+    server.use(router)
+
+    const listener = server.listen(0)
+    const port = listener.address().port
+    const state = router.db.getState()
+
+    for (const path of PATHS) {
+        // As json-server formats it
+        const { body } = await get(port, path, 'identity')
+
+        for (const encoding of ENCODINGS) {
+            const compressed = codecs[encoding].compress(body)
+            const compressMs = cpu(() => codecs[encoding].compress(body))
+            const decompressMs = cpu(() => codecs[encoding].decompress(compressed))
+
+            const latencies = { cold: [], warm: [] }
+            let bytes = 0
+
+            for (const phase of ['cold', 'warm']) {
+                for (let i = 0; i < REQUESTS; i++) {
+                    if (phase === 'cold') {
+                        // A change to the data changes the ETag, so nothing is found in the cache
+                        state.people[0].edited = `${Date.now()}-${i}`
+                    }
+
+                    const result = await get(port, path, encoding)
+                    latencies[phase].push(result.ms)
+                    bytes = result.bytes
+                }
+            }
+
+            console.log(`${label.padEnd(10)}${path.padEnd(10)}${encoding.padEnd(10)}${pad(body.length, 12)}${pad(bytes, 12)}` +
+                `${pad(compressMs.toFixed(2), 12)}${pad(decompressMs.toFixed(2), 14)}${pad(median(latencies.cold).toFixed(2), 10)}${pad(median(latencies.warm).toFixed(2), 10)}`)
+        }
+    }
+
+    listener.close()
+}
+
+const main = async () => {
+    const small = JSON.parse(fs.readFileSync(`${__dirname}/../db.json`, 'utf8'))
+    const large = process.argv[2] ? JSON.parse(fs.readFileSync(process.argv[2], 'utf8')) : scaled(small, SCALE)
+
+    console.log(`${'fixture'.padEnd(10)}${'path'.padEnd(10)}${'encoding'.padEnd(10)}${pad('json bytes', 12)}${pad('wire bytes', 12)}` +
+        `${pad('compress ms', 12)}${pad('decompress ms', 14)}${pad('cold ms', 10)}${pad('warm ms', 10)}`)
+
+    await run('small', small)
+    await run('large', large)
+}
+
+main()
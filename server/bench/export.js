@@ -0,0 +1,98 @@
+// Time and server heap for reading a whole collection as one JSON array
+// (`GET /people`) and as an NDJSON export (`GET /export/people`, see
+// middleware/export.js), on a fixture 1000 times the size of db.json or the
+// file given, e.g. one written by org.example.data.DatasetGenerator. Run with
+// `npm run bench:export [-- <db.json>]`.
+//
+// The export is read once as fast as possible and once by a client that
+// pauses 10ms after every 64 KB, which the server has to wait for. The heap is
+// the highest `heapUsed` seen while the request ran, above what it was before.
+const fs = require('fs')
+const http = require('http')
+const express = require('express')
+const jsonServer = require('json-server')
+const exporter = require('../middleware/export')
+
+const SCALE = 1000
+const COLLECTION = 'people'
+
+const scaled = (db, factor) => {
+    const result = {}
+
+    for (const [name, items] of Object.entries(db)) {
+        if (!Array.isArray(items)) {
+            result[name] = items
+            continue
+        }
+
+        result[name] = []
+        for (let copy = 0; copy < factor; copy++) {
+            items.forEach(item => result[name].push({ ...item, id: copy * items.length + item.id }))
+        }
+    }
+
+    return result
+}
+
+const get = (port, path, pauseMs) => new Promise((resolve, reject) => {
+    const start = process.hrtime.bigint()
+    const before = process.memoryUsage().heapUsed
+    let peak = before
+    let bytes = 0
+    let lines = 0
+
+    const sampler = setInterval(() => { peak = Math.max(peak, process.memoryUsage().heapUsed) }, 5)
+
+    http.get({ port, path }, (res) => {
+        res.on('data', (chunk) => {
+            bytes += chunk.length
+            lines += chunk.toString().split('\n').length - 1
+
+            if (pauseMs > 0) {
+                res.pause()
+                setTimeout(() => res.resume(), pauseMs)
+            }
+        })
+        res.on('end', () => {
+            clearInterval(sampler)
+            resolve({ bytes, lines, ms: Number(process.hrtime.bigint() - start) / 1e6, heap: peak - before })
+        })
+    }).on('error', reject)
+})
+
+const mb = (bytes) => (bytes / 1024 / 1024).toFixed(1)
+
+const main = async () => {
+    const small = JSON.parse(fs.readFileSync(`${__dirname}/../db.json`, 'utf8'))
+    const db = process.argv[2] ? JSON.parse(fs.readFileSync(process.argv[2], 'utf8')) : scaled(small, SCALE)
+
+    const router = jsonServer.router(db)
+    const server = express()
+
+    server.use(exporter(exporter.fromDb(router.db)))
+    server.use(router)
+
+    const listener = server.listen(0)
+    const port = listener.address().port
+
+    console.log(`${'read'.padEnd(24)}${'entities'.padStart(10)}${'MB'.padStart(10)}${'ms'.padStart(10)}${'heap MB'.padStart(10)}`)
+
+    const runs = [
+        ['array', `/${COLLECTION}`, 0],
+        ['export', `/export/${COLLECTION}`, 0],
+        ['export, slow client', `/export/${COLLECTION}`, 10]
+    ]
+
+    for (const [label, path, pauseMs] of runs) {
+        global.gc && global.gc()
+        const result = await get(port, path, pauseMs)
+        const entities = label === 'array' ? db[COLLECTION].length : result.lines
+
+        console.log(`${label.padEnd(24)}${String(entities).padStart(10)}${mb(result.bytes).padStart(10)}` +
+            `${result.ms.toFixed(0).padStart(10)}${mb(result.heap).padStart(10)}`)
+    }
+
+    listener.close()
+}
+
+main()
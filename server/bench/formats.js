@@ -0,0 +1,55 @@
+// Size and encoding cost of each collection of db.json (or the file given,
+// e.g. one written by org.example.data.DatasetGenerator) in the formats of
+// middleware/formats.js, next to JSON. Run with
+// `npm run bench:formats [-- <db.json>]`.
+//
+// For each collection and format it reports the bytes of the whole collection,
+// the bytes once gzipped and brotli compressed the way middleware/compression.js
+// does it, and the CPU time to encode the collection once. The decoding side is
+// measured in Java, by org.example.benchmarks.WireFormatBenchmark.
+const fs = require('fs')
+const zlib = require('zlib')
+const { FORMATS } = require('../middleware/formats')
+
+const json = { mediaType: 'application/json', encode: (value) => Buffer.from(JSON.stringify(value)) }
+
+// Milliseconds per call, over at least 10 calls and 200ms
+const cpu = (fn) => {
+    let calls = 0
+    const start = process.hrtime.bigint()
+    let elapsed = 0
+
+    while (calls < 10 || elapsed < 200) {
+        fn()
+        calls++
+        elapsed = Number(process.hrtime.bigint() - start) / 1e6
+    }
+
+    return elapsed / calls
+}
+
+const pad = (value, width) => String(value).padStart(width)
+
+const main = () => {
+    const db = JSON.parse(fs.readFileSync(process.argv[2] || `${__dirname}/../db.json`, 'utf8'))
+
+    console.log(`${'collection'.padEnd(12)}${'format'.padEnd(30)}${pad('bytes', 10)}${pad('gzip', 10)}${pad('br', 10)}${pad('encode ms', 12)}`)
+
+    for (const [name, items] of Object.entries(db)) {
+        if (!Array.isArray(items)) {
+            continue
+        }
+
+        for (const format of [json, ...FORMATS]) {
+            const body = format.encode(items)
+            const gzipped = zlib.gzipSync(body, { level: 6 })
+            const brotli = zlib.brotliCompressSync(body, { params: { [zlib.constants.BROTLI_PARAM_QUALITY]: 5 } })
+            const encodeMs = cpu(() => format.encode(items))
+
+            console.log(`${name.padEnd(12)}${format.mediaType.padEnd(30)}${pad(body.length, 10)}${pad(gzipped.length, 10)}` +
+                `${pad(brotli.length, 10)}${pad(encodeMs.toFixed(3), 12)}`)
+        }
+    }
+}
+
+main()
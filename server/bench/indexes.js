@@ -0,0 +1,87 @@
+// Lookup cost of the secondary indexes against json-server's linear scan as
+// the collection grows. Run with `npm run bench:indexes`.
+//
+// Each query matches about the same number of entities at every size, so a
+// scan grows with the collection while an index lookup should not.
+const indexes = require('../middleware/indexes')
+
+const SIZES = [1000, 10000, 100000, 1000000]
+const CLIMATES = ['arid', 'temperate', 'tropical', 'frozen', 'murky']
+
+const QUERIES = {
+    'name=planet-42': { name: 'planet-42' },
+    'diameter_gte&diameter_lte': { diameter_gte: '500000', diameter_lte: '500010' },
+    'climate&diameter_gte': { climate: 'arid', diameter_gte: '999990' },
+    '_sort=diameter&_limit=10': { _sort: 'diameter', _order: 'desc' }
+}
+
+const planets = (size) => Array.from({ length: size }, (_, i) => ({
+    id: i + 1,
+    name: `planet-${i}`,
+    climate: CLIMATES[i % CLIMATES.length],
+    // Scaled so a range of 10 keeps matching about 10 planets
+    diameter: Math.floor(i * 1000000 / size)
+}))
+
+// What json-server does for the same query: filter every entity, then sort
+const scan = (items, query) => {
+    const conditions = Object.entries(query).filter(([key]) => !key.startsWith('_'))
+    let result = items.filter(item => conditions.every(([key, value]) => {
+        const [, field, range] = /^(.+?)(?:_(gte|lte))?$/.exec(key)
+        const actual = item[field]
+
+        if (range === 'gte') {
+            return value <= actual
+        }
+
+        return range === 'lte' ? value >= actual : value === String(actual)
+    }))
+
+    if (query._sort) {
+        result = [...result].sort((a, b) => b[query._sort] - a[query._sort])
+    }
+
+    return result.slice(0, 10)
+}
+
+const time = (run) => {
+    // Warm up, then run for about 200ms
+    for (let i = 0; i < 5; i++) {
+        run()
+    }
+
+    let iterations = 0
+    const start = process.hrtime.bigint()
+    const deadline = start + 200000000n
+
+    while (process.hrtime.bigint() < deadline) {
+        run()
+        iterations++
+    }
+
+    return Number(process.hrtime.bigint() - start) / 1000 / iterations
+}
+
+const pad = (value, width) => String(value).padStart(width)
+
+console.log(`${'query'.padEnd(28)}${pad('rows', 10)}${pad('scan us', 14)}${pad('index us', 14)}${pad('speedup', 10)}`)
+
+for (const size of SIZES) {
+    const state = { planets: planets(size) }
+    const db = { getState: () => state }
+    const lookup = indexes(db, { planets: { name: 'hash', climate: 'hash', diameter: 'sorted' } })
+
+    // The first query builds the indexes
+    const built = process.hrtime.bigint()
+    lookup.select('planets', { name: 'planet-0' })
+    const building = Number(process.hrtime.bigint() - built) / 1e6
+
+    for (const [name, query] of Object.entries(QUERIES)) {
+        const scanned = time(() => scan(state.planets, query))
+        const indexed = time(() => lookup.select('planets', query).slice(0, 10))
+
+        console.log(`${name.padEnd(28)}${pad(size, 10)}${pad(scanned.toFixed(1), 14)}${pad(indexed.toFixed(1), 14)}${pad((scanned / indexed).toFixed(0) + 'x', 10)}`)
+    }
+
+    console.log(`${'(building the indexes)'.padEnd(28)}${pad(size, 10)}${pad('', 14)}${pad(`${building.toFixed(0)} ms`, 14)}`)
+}
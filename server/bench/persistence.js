@@ -0,0 +1,95 @@
+// Write throughput of the operation log (persistence/oplog.js) against what
+// json-server does by default, rewriting the whole file after every write.
+// Run with `npm run bench:persistence`.
+//
+// Every write patches one entity of a collection of growing size. With the op
+// log, `concurrency` writers keep a write in flight each, so a group commit
+// can share one fsync between them.
+const fs = require('fs')
+const os = require('os')
+const path = require('path')
+const oplog = require('../persistence/oplog')
+
+const SIZES = [1000, 10000, 100000]
+const DURATION_MS = 1000
+
+const database = (size) => ({
+    planets: Array.from({ length: size }, (_, i) => ({
+        id: i + 1,
+        name: `planet-${i}`,
+        climate: 'arid',
+        terrain: 'desert',
+        population: String(i * 1000),
+        residents: [`/people/${i + 1}/`],
+        films: ['/films/1/']
+    }))
+})
+
+// Writes for DURATION_MS, at least a few times, and returns writes per second
+const measure = async (concurrency, write) => {
+    let writes = 0
+    const start = Date.now()
+
+    const writer = async () => {
+        while (Date.now() - start < DURATION_MS || writes < 3) {
+            await write(writes++)
+        }
+    }
+
+    await Promise.all(Array.from({ length: concurrency }, writer))
+    return writes * 1000 / (Date.now() - start)
+}
+
+// lowdb's FileSync adapter: pretty-printed and written in full, synchronously
+const rewrite = (state, file) => async (n) => {
+    const planet = state.planets[n % state.planets.length]
+    planet.population = String(n)
+    fs.writeFileSync(file, JSON.stringify(state, null, 2))
+}
+
+// The same patch through the op log, the way the router's render sees it
+const logged = (store, state) => (n) => new Promise((resolve, reject) => {
+    const planet = state.planets[n % state.planets.length]
+    planet.population = String(n)
+
+    const req = { method: 'PATCH', path: `/planets/${planet.id}` }
+    const res = { statusCode: 200, locals: { data: planet }, status: () => ({ json: reject }) }
+    store.render(resolve)(req, res)
+})
+
+const pad = (value, width) => String(value).padStart(width)
+
+const main = async () => {
+    const dir = fs.mkdtempSync(path.join(os.tmpdir(), 'oplog-bench-'))
+
+    console.log(`${'persistence'.padEnd(28)}${pad('rows', 10)}${pad('writers', 10)}${pad('writes/s', 12)}${pad('per fsync', 12)}`)
+
+    for (const size of SIZES) {
+        const state = database(size)
+        const file = path.join(dir, 'db.json')
+        fs.writeFileSync(file, JSON.stringify(state))
+
+        const rewrites = await measure(1, rewrite(state, file))
+        console.log(`${'rewrite db.json'.padEnd(28)}${pad(size, 10)}${pad(1, 10)}${pad(rewrites.toFixed(0), 12)}`)
+
+        for (const durability of ['fsync', 'write', 'none']) {
+            for (const concurrency of [1, 32]) {
+                const logDir = fs.mkdtempSync(path.join(dir, 'log-'))
+                const store = oplog({ dir: logDir, durability })
+                const loaded = store.load(file)
+                store.attach({ getState: () => loaded })
+
+                const throughput = await measure(concurrency, logged(store, loaded))
+                const { operations, syncs } = store.stats()
+                store.close()
+
+                const perSync = syncs > 0 ? (operations / syncs).toFixed(1) : '-'
+                console.log(`${`oplog, ${durability}`.padEnd(28)}${pad(size, 10)}${pad(concurrency, 10)}${pad(throughput.toFixed(0), 12)}${pad(perSync, 12)}`)
+            }
+        }
+    }
+
+    fs.rmSync(dir, { recursive: true, force: true })
+}
+
+main()
@@ -0,0 +1,64 @@
+const output = require('./output')
+
+// CBOR (RFC 8949) for JSON values, served as `application/cbor`. Integers are
+// written in the shortest form that holds them, other numbers as doubles.
+const head = (out, major, value) => {
+    const type = major << 5
+
+    if (value < 24) {
+        out.byte(type | value)
+    } else if (value < 0x100) {
+        out.byte(type | 24)
+        out.byte(value)
+    } else if (value < 0x10000) {
+        out.byte(type | 25)
+        out.uint16(value)
+    } else if (value < 0x100000000) {
+        out.byte(type | 26)
+        out.uint32(value)
+    } else {
+        out.byte(type | 27)
+        out.uint64(value)
+    }
+}
+
+const write = (out, value) => {
+    if (value === null || value === undefined) {
+        out.byte(0xf6)
+    } else if (value === false) {
+        out.byte(0xf4)
+    } else if (value === true) {
+        out.byte(0xf5)
+    } else if (typeof value === 'number') {
+        if (Number.isSafeInteger(value)) {
+            head(out, value < 0 ? 1 : 0, value < 0 ? -1 - value : value)
+        } else {
+            out.byte(0xfb)
+            out.float64(value)
+        }
+    } else if (typeof value === 'string') {
+        const size = Buffer.byteLength(value, 'utf8')
+        head(out, 3, size)
+        out.utf8(value, size)
+    } else if (Array.isArray(value)) {
+        head(out, 4, value.length)
+        value.forEach(item => write(out, item))
+    } else {
+        const entries = Object.entries(value).filter(([, item]) => item !== undefined)
+        head(out, 5, entries.length)
+
+        for (const [key, item] of entries) {
+            write(out, key)
+            write(out, item)
+        }
+    }
+}
+
+module.exports = {
+    mediaType: 'application/cbor',
+    encode: (value) => {
+        const out = output()
+        write(out, value)
+        return out.result()
+    }
+}
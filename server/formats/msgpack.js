@@ -0,0 +1,94 @@
+const output = require('./output')
+
+// MessagePack for JSON values, served as `application/msgpack`. Integers are
+// written in the shortest form that holds them, other numbers as doubles.
+const integer = (out, value) => {
+    if (value >= 0) {
+        if (value < 0x80) {
+            out.byte(value)
+        } else if (value < 0x100) {
+            out.byte(0xcc)
+            out.byte(value)
+        } else if (value < 0x10000) {
+            out.byte(0xcd)
+            out.uint16(value)
+        } else if (value < 0x100000000) {
+            out.byte(0xce)
+            out.uint32(value)
+        } else {
+            out.byte(0xcf)
+            out.uint64(value)
+        }
+    } else if (value >= -32) {
+        out.byte(value & 0xff)
+    } else if (value >= -0x80) {
+        out.byte(0xd0)
+        out.byte(value & 0xff)
+    } else if (value >= -0x8000) {
+        out.byte(0xd1)
+        out.uint16(value & 0xffff)
+    } else if (value >= -0x80000000) {
+        out.byte(0xd2)
+        out.uint32(value >>> 0)
+    } else {
+        out.byte(0xd3)
+        out.int64(value)
+    }
+}
+
+// fixstr/fixarray/fixmap, then the 8 (strings only), 16 and 32 bit forms
+const head = (out, fix, fixLimit, codes, size) => {
+    if (size < fixLimit) {
+        out.byte(fix | size)
+    } else if (codes[0] && size < 0x100) {
+        out.byte(codes[0])
+        out.byte(size)
+    } else if (size < 0x10000) {
+        out.byte(codes[1])
+        out.uint16(size)
+    } else {
+        out.byte(codes[2])
+        out.uint32(size)
+    }
+}
+
+const write = (out, value) => {
+    if (value === null || value === undefined) {
+        out.byte(0xc0)
+    } else if (value === false) {
+        out.byte(0xc2)
+    } else if (value === true) {
+        out.byte(0xc3)
+    } else if (typeof value === 'number') {
+        if (Number.isSafeInteger(value)) {
+            integer(out, value)
+        } else {
+            out.byte(0xcb)
+            out.float64(value)
+        }
+    } else if (typeof value === 'string') {
+        const size = Buffer.byteLength(value, 'utf8')
+        head(out, 0xa0, 32, [0xd9, 0xda, 0xdb], size)
+        out.utf8(value, size)
+    } else if (Array.isArray(value)) {
+        head(out, 0x90, 16, [undefined, 0xdc, 0xdd], value.length)
+        value.forEach(item => write(out, item))
+    } else {
+        const entries = Object.entries(value).filter(([, item]) => item !== undefined)
+        head(out, 0x80, 16, [undefined, 0xde, 0xdf], entries.length)
+
+        for (const [key, item] of entries) {
+            write(out, key)
+            write(out, item)
+        }
+    }
+}
+
+module.exports = {
+    mediaType: 'application/msgpack',
+    encode: (value) => {
+        const out = output()
+        write(out, value)
+        return out.result()
+    }
+}
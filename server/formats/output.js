@@ -0,0 +1,55 @@
+// A growable byte buffer for the binary encoders
+module.exports = (initialSize = 4096) => {
+    let buffer = Buffer.allocUnsafe(initialSize)
+    let length = 0
+
+    const ensure = (size) => {
+        if (length + size <= buffer.length) {
+            return
+        }
+
+        const grown = Buffer.allocUnsafe(Math.max(buffer.length * 2, length + size))
+        buffer.copy(grown, 0, 0, length)
+        buffer = grown
+    }
+
+    return {
+        byte: (value) => {
+            ensure(1)
+            buffer[length++] = value
+        },
+        bytes: (values) => {
+            ensure(values.length)
+            values.copy(buffer, length)
+            length += values.length
+        },
+        // `size` is the string's Buffer.byteLength, which the caller needs anyway
+        // for the length in front of it
+        utf8: (value, size) => {
+            ensure(size)
+            length += buffer.write(value, length, size, 'utf8')
+        },
+        uint16: (value) => {
+            ensure(2)
+            length = buffer.writeUInt16BE(value, length)
+        },
+        uint32: (value) => {
+            ensure(4)
+            length = buffer.writeUInt32BE(value, length)
+        },
+        uint64: (value) => {
+            ensure(8)
+            length = buffer.writeBigUInt64BE(BigInt(value), length)
+        },
+        int64: (value) => {
+            ensure(8)
+            length = buffer.writeBigInt64BE(BigInt(value), length)
+        },
+        float64: (value) => {
+            ensure(8)
+            length = buffer.writeDoubleBE(value, length)
+        },
+        // A copy, so the buffer can be used again
+        result: () => Buffer.from(buffer.subarray(0, length))
+    }
+}
@@ -0,0 +1,174 @@
+const output = require('./output')
+
+// Smile (Jackson's binary JSON) for JSON values, served as
+// `application/x-jackson-smile`. Property names are shared: after its first
+// occurrence a name is written as a one or two byte reference to it, which is
+// what makes a collection smaller than in CBOR or MessagePack. String values
+// are written out every time, so the header has shared names on and shared
+// values off.
+const HEADER = Buffer.from([0x3a, 0x29, 0x0a, 0x01])
+const END_OF_STRING = 0xfc
+// Readers keep every non-empty name written in full, and start over once
+// they have this many
+const MAX_SHARED_NAMES = 1024
+
+// 7 bits per byte, most significant first, with the last byte holding 6 bits
+// and the high bit set
+const vint = (out, value) => {
+    let big = BigInt(value)
+    const bytes = [0x80 | Number(big & 0x3fn)]
+    big >>= 6n
+
+    while (big > 0n) {
+        bytes.unshift(Number(big & 0x7fn))
+        big >>= 7n
+    }
+
+    bytes.forEach(out.byte)
+}
+
+const zigzag = (value) => {
+    const big = BigInt(value)
+    return big < 0n ? (-big << 1n) - 1n : big << 1n
+}
+
+const isAscii = (size, text) => size === text.length
+
+const number = (out, value) => {
+    if (Number.isSafeInteger(value)) {
+        if (value >= -16 && value <= 15) {
+            out.byte(0xc0 + Number(zigzag(value)))
+        } else {
+            out.byte(value >= -0x80000000 && value <= 0x7fffffff ? 0x24 : 0x25)
+            vint(out, zigzag(value))
+        }
+        return
+    }
+
+    // The 64 bits of the double, 7 per byte
+    const view = Buffer.allocUnsafe(8)
+    view.writeDoubleBE(value)
+    const bits = view.readBigUInt64BE()
+
+    out.byte(0x29)
+    for (let shift = 63n; shift >= 0n; shift -= 7n) {
+        out.byte(Number((bits >> shift) & 0x7fn))
+    }
+}
+
+const string = (out, value) => {
+    if (value.length === 0) {
+        out.byte(0x20)
+        return
+    }
+
+    const size = Buffer.byteLength(value, 'utf8')
+
+    if (isAscii(size, value)) {
+        if (size <= 32) {
+            out.byte(0x40 + size - 1)
+        } else if (size <= 64) {
+            out.byte(0x60 + size - 33)
+        } else {
+            out.byte(0xe0)
+            out.utf8(value, size)
+            out.byte(END_OF_STRING)
+            return
+        }
+    } else if (size <= 33) {
+        out.byte(0x80 + size - 2)
+    } else if (size <= 65) {
+        out.byte(0xa0 + size - 34)
+    } else {
+        out.byte(0xe4)
+        out.utf8(value, size)
+        out.byte(END_OF_STRING)
+        return
+    }
+
+    out.utf8(value, size)
+}
+
+const share = (names, key) => {
+    if (names.size === MAX_SHARED_NAMES) {
+        names.clear()
+    }
+
+    names.set(key, names.size)
+}
+
+// `names` maps the names written so far to their index
+const name = (out, key, names) => {
+    if (key.length === 0) {
+        out.byte(0x20)
+        return
+    }
+
+    const index = names.get(key)
+
+    if (index !== undefined) {
+        if (index < 64) {
+            out.byte(0x40 + index)
+        } else {
+            out.byte(0x30 + (index >> 8))
+            out.byte(index & 0xff)
+        }
+        return
+    }
+
+    const size = Buffer.byteLength(key, 'utf8')
+
+    if (isAscii(size, key) && size <= 64) {
+        out.byte(0x80 + size - 1)
+    } else if (!isAscii(size, key) && size <= 57) {
+        out.byte(0xc0 + size - 2)
+    } else {
+        out.byte(0x34)
+        out.utf8(key, size)
+        out.byte(END_OF_STRING)
+        share(names, key)
+        return
+    }
+
+    out.utf8(key, size)
+    share(names, key)
+}
+
+const write = (out, value, names) => {
+    if (value === null || value === undefined) {
+        out.byte(0x21)
+    } else if (value === false) {
+        out.byte(0x22)
+    } else if (value === true) {
+        out.byte(0x23)
+    } else if (typeof value === 'number') {
+        number(out, value)
+    } else if (typeof value === 'string') {
+        string(out, value)
+    } else if (Array.isArray(value)) {
+        out.byte(0xf8)
+        value.forEach(item => write(out, item, names))
+        out.byte(0xf9)
+    } else {
+        out.byte(0xfa)
+
+        for (const [key, item] of Object.entries(value)) {
+            if (item !== undefined) {
+                name(out, key, names)
+                write(out, item, names)
+            }
+        }
+
+        out.byte(0xfb)
+    }
+}
+
+module.exports = {
+    mediaType: 'application/x-jackson-smile',
+    encode: (value) => {
+        const out = output()
+        out.bytes(HEADER)
+        write(out, value, new Map())
+        return out.result()
+    }
+}
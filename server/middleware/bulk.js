@@ -0,0 +1,189 @@
+const express = require('express')
+
+const MAX_OPERATIONS = 10000
+const OPERATIONS = ['create', 'replace', 'update', 'delete']
+
+const isObject = (value) => value !== null && typeof value === 'object' && !Array.isArray(value)
+
+// The checked operation, or a failed result. `present` holds the ids of the
+// collection as of the operation, and is kept up to date. `assign(data)` is
+// called for every create, see middleware/sequence.js.
+const check = (present, operation, assign) => {
+    if (!isObject(operation) || !OPERATIONS.includes(operation.op)) {
+        return { status: 400, message: `op must be one of ${OPERATIONS.join(', ')}` }
+    }
+
+    const { op, id } = operation
+
+    if (op !== 'delete' && !isObject(operation.data)) {
+        return { status: 400, message: 'data must be an object' }
+    }
+
+    if (op === 'create') {
+        const data = { ...operation.data }
+
+        if (data.id === null) {
+            delete data.id
+        }
+
+        assign(data)
+
+        if (data.id === undefined) {
+            return { status: 400, message: 'data.id is missing' }
+        }
+
+        if (present.has(String(data.id))) {
+            return { status: 409, id: data.id, message: `Duplicate id: ${data.id}` }
+        }
+
+        present.add(String(data.id))
+        return { op, id: data.id, data }
+    }
+
+    if (id === undefined || id === null) {
+        return { status: 400, message: 'id is missing' }
+    }
+
+    if (!present.has(String(id))) {
+        return { status: 404, id, message: `Unknown id: ${id}` }
+    }
+
+    if (op === 'delete') {
+        present.delete(String(id))
+    }
+
+    return { op, id, data: operation.data }
+}
+
+// The results of a batch whose operation `failed` was the first to fail: the
+// ones that failed keep their own, the others were not applied
+const rejected = (results, failed) => results.map(result => result.status !== undefined
+    ? result
+    : { status: 424, message: `Not applied, operation ${failed} failed` })
+
+// `POST /:collection/_bulk`: many writes to one collection in one request,
+// applied together or not at all. The body is an array of operations, carried
+// out in order:
+//
+//   { "op": "create", "data": { ... } }            like POST /:collection
+//   { "op": "replace", "id": 3, "data": { ... } }  like PUT /:collection/3
+//   { "op": "update", "id": 3, "data": { ... } }   like PATCH /:collection/3
+//   { "op": "delete", "id": 3 }                    like DELETE /:collection/3
+//
+// The response holds one result per operation, e.g. `{ "status": 201, "id": 12 }`.
+// When an operation cannot be carried out (no data, an unknown or duplicate
+// id) none is: the response has the status of the first one that failed, the
+// failed ones their own status and a message, and the others 424.
+//
+// Every operation is checked before anything is written, and then all of them
+// are written in one go, with one `db.write()` and one call to
+// `persist(operations)` with the operations as persistence/oplog.js logs them.
+// The response waits for `persist`. Entities are changed in place, like
+// json-server does. The routers around this one never see bulk writes, so
+// `record(collection, ids, { removing })` is called before they are applied,
+// for the undo logs of middleware/snapshot.js, and `onWrite(collection, ids)`
+// after.
+//
+// `assign(collection, data)` gives a created entity without an id the next one
+// of the sequence, see middleware/sequence.js. middleware/mongo.js serves the
+// same route with `check` and `rejected`.
+module.exports = (db, { assign = () => {}, record = () => {}, onWrite = () => {}, persist = () => Promise.resolve() } = {}) => {
+    const router = express.Router()
+
+    // Changes the collection in place and returns the operations to persist
+    const apply = (collection, items, checked) => {
+        const positions = new Map(items.map((item, position) => [String(item.id), position]))
+        const deleted = new Set()
+        const logged = []
+
+        for (const { op, id, data } of checked) {
+            if (op === 'create') {
+                positions.set(String(id), items.push(data) - 1)
+                logged.push({ op: 'put', collection, id, data })
+                continue
+            }
+
+            const position = positions.get(String(id))
+
+            if (op === 'delete') {
+                deleted.add(position)
+                positions.delete(String(id))
+                logged.push({ op: 'delete', collection, id })
+                continue
+            }
+
+            const item = items[position]
+
+            if (op === 'replace') {
+                Object.keys(item).filter(key => key !== 'id').forEach(key => delete item[key])
+            }
+
+            Object.assign(item, data, { id: item.id })
+            logged.push({ op: 'put', collection, id: item.id, data: item })
+        }
+
+        if (deleted.size > 0) {
+            let kept = 0
+
+            items.forEach((item, position) => {
+                if (!deleted.has(position)) {
+                    items[kept++] = item
+                }
+            })
+
+            items.length = kept
+        }
+
+        return logged
+    }
+
+    router.post('/:collection/_bulk', (req, res) => {
+        const { collection } = req.params
+        const items = db.getState()[collection]
+        const operations = req.body
+
+        if (!Array.isArray(items)) {
+            res.status(404).json({ message: `Unknown collection: ${collection}` })
+            return
+        }
+
+        if (!Array.isArray(operations)) {
+            res.status(400).json({ message: 'The body must be an array of operations' })
+            return
+        }
+
+        if (operations.length > MAX_OPERATIONS) {
+            res.status(413).json({ message: `At most ${MAX_OPERATIONS} operations per request` })
+            return
+        }
+
+        // Ids as of the operation being checked
+        const present = new Set(items.map(item => String(item.id)))
+        const checked = operations.map(operation => check(present, operation, data => assign(collection, data)))
+        const failed = checked.findIndex(result => result.status !== undefined)
+
+        if (failed >= 0) {
+            res.status(checked[failed].status).json(rejected(checked, failed))
+            return
+        }
+
+        record(collection, checked.map(({ id }) => id))
+        record(collection, checked.filter(({ op }) => op === 'delete').map(({ id }) => id), { removing: true })
+
+        const logged = apply(collection, items, checked)
+
+        db.write()
+        onWrite(collection, checked.map(({ id }) => id))
+
+        persist(logged).then(
+            () => res.json(checked.map(({ op, id }) => ({ status: op === 'create' ? 201 : 200, id }))),
+            (err) => res.status(500).json({ message: `The write was not persisted: ${err.message}` }))
+    })
+
+    return router
+}
+
+// Shared with the bulk writes of middleware/mongo.js
+module.exports.check = check
+module.exports.rejected = rejected
+module.exports.MAX_OPERATIONS = MAX_OPERATIONS
@@ -0,0 +1,253 @@
+const express = require('express')
+
+const MAX_BYTES = 64 * 1024 * 1024
+const WRITES = ['POST', 'PUT', 'PATCH', 'DELETE']
+// Query parameters that pull other entities into the response
+const EMBEDDING = ['include', '_embed', '_expand']
+
+// Response cache for single entities (`GET /planets/1`). The first response
+// for a URL is captured as it is sent, with its body serialized, and later
+// requests for the same URL and Accept header get those bytes back without
+// going through the routers again. Requests still have to pass auth, which
+// runs first. Hits keep the ETag of the response they copy, so compression
+// (middleware/compression.js) finds their compressed bytes as well.
+//
+// The cache holds at most `maxBytes` of bodies, dropping the least recently
+// used ones first. Writes drop exactly what they change:
+//
+//   PUT, PATCH, DELETE /planets/1   every cached variant of planets/1
+//   POST /planets                   the id in the body, or all of planets
+//   POST /planets/1/people          all of people
+//   DELETE /planets/1               also every collection json-server deletes
+//                                   dependents from
+//
+// Utility routes (`/_...`) that write to the database directly call
+// `router.invalidate(collection, id)` instead. A response rendered while its
+// collection was invalidated is not stored.
+module.exports = (db, { maxBytes = MAX_BYTES } = {}) => {
+    const router = express.Router()
+
+    // key -> { collection, id, body, type, etag, bytes }, least recently used first
+    const entries = new Map()
+    // collection -> Map(id -> Set(key)), to find every variant of an entity
+    const keysOf = {}
+    // collection -> number of invalidations
+    const generations = {}
+    let epoch = 0
+    let bytes = 0
+
+    const stats = { hits: 0, misses: 0, stores: 0, evictions: 0, invalidations: 0 }
+
+    const isCollection = (name) => Array.isArray(db.getState()[name])
+
+    const generation = (collection) => `${epoch}:${generations[collection] || 0}`
+
+    const remove = (key) => {
+        const entry = entries.get(key)
+
+        if (entry === undefined) {
+            return
+        }
+
+        entries.delete(key)
+        bytes -= entry.bytes
+
+        const ids = keysOf[entry.collection]
+        const keys = ids.get(entry.id)
+
+        keys.delete(key)
+        if (keys.size === 0) {
+            ids.delete(entry.id)
+        }
+    }
+
+    const store = (key, entry) => {
+        if (entry.bytes > maxBytes) {
+            return
+        }
+
+        remove(key)
+        entries.set(key, entry)
+        bytes += entry.bytes
+        stats.stores++
+
+        const ids = keysOf[entry.collection] || (keysOf[entry.collection] = new Map())
+        const keys = ids.get(entry.id) || ids.set(entry.id, new Set()).get(entry.id)
+        keys.add(key)
+
+        while (bytes > maxBytes) {
+            remove(entries.keys().next().value)
+            stats.evictions++
+        }
+    }
+
+    // An undefined id drops the whole collection, and an undefined collection
+    // everything
+    router.invalidate = (collection, id) => {
+        stats.invalidations++
+
+        if (collection === undefined) {
+            epoch++
+            entries.clear()
+            Object.keys(keysOf).forEach(name => delete keysOf[name])
+            bytes = 0
+            return
+        }
+
+        generations[collection] = (generations[collection] || 0) + 1
+
+        const ids = keysOf[collection]
+
+        if (ids === undefined) {
+            return
+        }
+
+        const affected = id === undefined ? [...ids.values()] : [ids.get(String(id)) || []]
+        affected.forEach(keys => [...keys].forEach(remove))
+    }
+
+    router.stats = () => ({
+        ...stats,
+        hitRatio: stats.hits + stats.misses > 0 ? stats.hits / (stats.hits + stats.misses) : 0,
+        entries: entries.size,
+        bytes,
+        maxBytes
+    })
+
+    router.get('/_cache', (req, res) => {
+        res.json(router.stats())
+    })
+
+    router.delete('/_cache', (req, res) => {
+        router.invalidate()
+        res.json(router.stats())
+    })
+
+    const hit = (req, res, entry) => {
+        res.status(200)
+        res.set('X-Cache', 'HIT')
+        res.set('Content-Type', entry.type)
+
+        if (entry.etag) {
+            res.set('ETag', entry.etag)
+        }
+
+        if (req.fresh) {
+            res.status(304).end()
+            return
+        }
+
+        res.set('Content-Length', entry.body.length)
+        res.end(entry.body)
+    }
+
+    // Keeps a copy of what the routers send, and stores it once it is complete
+    const capture = (key, collection, id, res) => {
+        const before = generation(collection)
+        const chunks = []
+        const { write, end } = res
+
+        const collect = (chunk, encoding) => {
+            if (chunk && typeof chunk !== 'function') {
+                chunks.push(Buffer.isBuffer(chunk) ? chunk : Buffer.from(chunk, typeof encoding === 'string' ? encoding : 'utf8'))
+            }
+        }
+
+        res.write = function (chunk, encoding, ...rest) {
+            collect(chunk, encoding)
+            return write.call(this, chunk, encoding, ...rest)
+        }
+
+        res.end = function (chunk, encoding, ...rest) {
+            collect(chunk, encoding)
+
+            if (res.statusCode === 200 && generation(collection) === before && !res.getHeader('Content-Encoding')) {
+                const body = Buffer.concat(chunks)
+
+                store(key, {
+                    collection,
+                    id,
+                    body,
+                    type: res.getHeader('Content-Type'),
+                    etag: res.getHeader('ETag'),
+                    bytes: key.length + body.length
+                })
+            }
+
+            return end.call(this, chunk, encoding, ...rest)
+        }
+    }
+
+    const read = (req, res, collection, id, rest) => {
+        if (id === undefined || rest.length > 0 || !isCollection(collection) ||
+            EMBEDDING.some(parameter => req.query[parameter] !== undefined)) {
+            return false
+        }
+
+        const key = `${req.headers.accept || ''} ${req.originalUrl}`
+        const entry = entries.get(key)
+
+        if (entry !== undefined) {
+            entries.delete(key)
+            entries.set(key, entry)
+            stats.hits++
+            hit(req, res, entry)
+            return true
+        }
+
+        stats.misses++
+        res.set('X-Cache', 'MISS')
+        capture(key, collection, String(id), res)
+        return false
+    }
+
+    const written = (req, collection, id, rest) => {
+        if (collection === undefined || collection.startsWith('_')) {
+            return
+        }
+
+        if (rest.length === 1) {
+            router.invalidate(rest[0])
+        } else if (rest.length > 1) {
+            router.invalidate()
+        } else if (!isCollection(collection)) {
+            return
+        } else if (id !== undefined) {
+            router.invalidate(collection, id)
+        } else if (req.method === 'POST' && req.body && req.body.id !== undefined) {
+            router.invalidate(collection, req.body.id)
+        } else {
+            router.invalidate(collection)
+        }
+    }
+
+    router.use((req, res, next) => {
+        const [collection, id, ...rest] = req.path.split('/').filter(Boolean)
+
+        if (req.method === 'GET') {
+            if (read(req, res, collection, id, rest)) {
+                return
+            }
+        } else if (WRITES.includes(req.method)) {
+            const state = db.getState()
+            const sizes = req.method === 'DELETE'
+                ? Object.keys(state).filter(isCollection).map(name => [name, state[name].length])
+                : []
+
+            // Before the write, and again once it is done for the reads that
+            // were rendered in between
+            written(req, collection, id, rest)
+            res.on('finish', () => {
+                written(req, collection, id, rest)
+
+                const after = db.getState()
+                sizes.filter(([name, size]) => name !== collection && Array.isArray(after[name]) && after[name].length !== size)
+                    .forEach(([name]) => router.invalidate(name))
+            })
+        }
+
+        next()
+    })
+
+    return router
+}
@@ -0,0 +1,160 @@
+const express = require('express')
+const zlib = require('zlib')
+const { promisify } = require('util')
+
+const THRESHOLD = 1024
+const CACHE_BYTES = 32 * 1024 * 1024
+// The binary formats of middleware/formats.js still repeat every field name
+const COMPRESSIBLE = /json|text|javascript|xml|cbor|msgpack|smile/
+
+const brotli = promisify(zlib.brotliCompress)
+const gzip = promisify(zlib.gzip)
+
+// Brotli or gzip for whole responses above `threshold`, whichever the client
+// prefers (`Accept-Encoding`), with the compressed bytes kept for as long as
+// the data does not change.
+//
+// The compressed bytes are cached by encoding and ETag, which express derives
+// from the body, so `/db` or `/people` are compressed once per change instead
+// of once per request, and equal bodies under different URLs share them. The
+// cache holds at most `cacheBytes`, dropping the least recently used first.
+//
+// Responses written in chunks are left to json-server's compression middleware,
+// which gzips them as they stream.
+module.exports = ({ threshold = THRESHOLD, cacheBytes = CACHE_BYTES, brotliQuality = 5, gzipLevel = 6 } = {}) => {
+    const router = express.Router()
+
+    // `${encoding} ${etag}` -> compressed body, least recently used first
+    const cache = new Map()
+    let bytes = 0
+
+    const stats = { responses: 0, compressed: 0, hits: 0, misses: 0, evictions: 0, bytesIn: 0, bytesOut: 0, compressMs: 0 }
+
+    const compressors = {
+        br: (body) => brotli(body, {
+            params: {
+                [zlib.constants.BROTLI_PARAM_MODE]: zlib.constants.BROTLI_MODE_TEXT,
+                [zlib.constants.BROTLI_PARAM_QUALITY]: brotliQuality,
+                [zlib.constants.BROTLI_PARAM_SIZE_HINT]: body.length
+            }
+        }),
+        gzip: (body) => gzip(body, { level: gzipLevel })
+    }
+
+    const remember = (key, body) => {
+        if (body.length > cacheBytes) {
+            return
+        }
+
+        cache.set(key, body)
+        bytes += body.length
+
+        while (bytes > cacheBytes) {
+            const [oldest, evicted] = cache.entries().next().value
+
+            cache.delete(oldest)
+            bytes -= evicted.length
+            stats.evictions++
+        }
+    }
+
+    const compressed = async (encoding, etag, body) => {
+        const key = etag && `${encoding} ${etag}`
+        const cached = key && cache.get(key)
+
+        if (cached) {
+            cache.delete(key)
+            cache.set(key, cached)
+            stats.hits++
+            return cached
+        }
+
+        stats.misses++
+
+        const start = process.hrtime.bigint()
+        const result = await compressors[encoding](body)
+        stats.compressMs += Number(process.hrtime.bigint() - start) / 1e6
+
+        if (key) {
+            remember(key, result)
+        }
+
+        return result
+    }
+
+    router.stats = () => ({
+        ...stats,
+        ratio: stats.bytesIn > 0 ? stats.bytesOut / stats.bytesIn : 1,
+        hitRatio: stats.hits + stats.misses > 0 ? stats.hits / (stats.hits + stats.misses) : 0,
+        entries: cache.size,
+        bytes,
+        cacheBytes
+    })
+
+    router.get('/_compression', (req, res) => {
+        res.json(router.stats())
+    })
+
+    router.use((req, res, next) => {
+        if (req.method === 'HEAD') {
+            next()
+            return
+        }
+
+        const { write, end } = res
+        let streamed = false
+
+        res.write = function (...args) {
+            streamed = true
+            return write.apply(this, args)
+        }
+
+        res.end = function (chunk, encoding, callback) {
+            res.write = write
+            res.end = end
+
+            const type = res.getHeader('Content-Type') || ''
+
+            if (streamed || !chunk || typeof chunk === 'function' || res.statusCode < 200 || [204, 304].includes(res.statusCode) ||
+                res.getHeader('Content-Encoding') || !COMPRESSIBLE.test(type) || /no-transform/.test(res.getHeader('Cache-Control') || '')) {
+                return end.call(this, chunk, encoding, callback)
+            }
+
+            const body = Buffer.isBuffer(chunk) ? chunk : Buffer.from(chunk, typeof encoding === 'string' ? encoding : 'utf8')
+            stats.responses++
+
+            if (body.length < threshold) {
+                return end.call(this, body, callback)
+            }
+
+            res.vary('Accept-Encoding')
+
+            const accepted = req.acceptsEncodings('br', 'gzip')
+
+            if (!accepted || accepted === 'identity') {
+                return end.call(this, body, callback)
+            }
+
+            compressed(accepted, res.getHeader('ETag'), body).then(
+                (result) => {
+                    stats.compressed++
+                    stats.bytesIn += body.length
+                    stats.bytesOut += result.length
+
+                    res.setHeader('Content-Encoding', accepted)
+                    res.setHeader('Content-Length', result.length)
+                    end.call(res, result, callback)
+                },
+                (err) => {
+                    console.error(err)
+                    end.call(res, body, callback)
+                })
+
+            return res
+        }
+
+        next()
+    })
+
+    return router
+}
@@ -0,0 +1,90 @@
+const express = require('express')
+
+const CHUNK_BYTES = 64 * 1024
+
+// `GET /export/:collection`: every entity of a collection as newline-delimited
+// JSON, one entity per line (`application/x-ndjson`), sent with chunked
+// transfer encoding while it is being read instead of as one array.
+//
+// Lines are gathered into chunks of about `chunkBytes`, and once the socket
+// stops taking them (`res.write` returns false) nothing more is read until it
+// drains. A slow client therefore holds the export back instead of having the
+// rest of the collection buffered for it, and the memory an export takes does
+// not grow with the collection. An export stops when the client goes away.
+//
+// `source(collection)` returns the entities as an iterable or async iterable,
+// or undefined for an unknown collection, see `fromDb` and `fromModels`.
+module.exports = (source, { chunkBytes = CHUNK_BYTES } = {}) => {
+    const router = express.Router()
+
+    router.get('/export/:collection', async (req, res, next) => {
+        const items = source(req.params.collection)
+
+        if (items === undefined) {
+            res.status(404).json({ message: `Unknown collection: ${req.params.collection}` })
+            return
+        }
+
+        let closed = false
+        let resume = () => {}
+
+        // One listener each for the whole export; compression wraps `drain`
+        res.on('drain', () => resume())
+        res.on('close', () => {
+            closed = true
+            resume()
+        })
+
+        res.status(200)
+        res.type('application/x-ndjson')
+
+        try {
+            let chunk = ''
+
+            for await (const item of items) {
+                if (closed) {
+                    break
+                }
+
+                chunk += `${JSON.stringify(item)}\n`
+
+                if (chunk.length >= chunkBytes) {
+                    const flushed = res.write(chunk)
+                    chunk = ''
+
+                    if (!flushed && !closed) {
+                        await new Promise(resolve => { resume = resolve })
+                    }
+                }
+            }
+
+            if (!closed) {
+                res.end(chunk)
+            }
+        } catch (err) {
+            if (res.headersSent) {
+                // Too late for a status, the client sees a truncated stream
+                console.error(err)
+                res.destroy(err)
+            } else {
+                next(err)
+            }
+        }
+    })
+
+    return router
+}
+
+// The lowdb collections. The export reads the collection as it was when it
+// started: entities added or removed during it are left out or still sent.
+module.exports.fromDb = (db) => (collection) => {
+    const items = db.getState()[collection]
+    return Array.isArray(items) ? items.slice() : undefined
+}
+
+// The mongoose models of model/entities.js, read with a cursor in insertion
+// order
+module.exports.fromModels = (models) => (collection) => {
+    const model = models[collection]
+    return model && model.find({}, { _id: 0 }).sort({ _id: 1 }).lean().cursor()
+}
@@ -0,0 +1,334 @@
+const express = require('express')
+const crypto = require('crypto')
+
+const HISTORY_SIZE = 32
+
+const sha1 = (text) => crypto.createHash('sha1').update(text).digest('hex')
+
+// Keys are sorted so the hash only depends on the content of an entity
+const canonical = (value) => {
+    if (Array.isArray(value)) {
+        return `[${value.map(canonical).join(',')}]`
+    }
+
+    if (value && typeof value === 'object') {
+        return `{${Object.keys(value).sort().map(key => `${JSON.stringify(key)}:${canonical(value[key])}`).join(',')}}`
+    }
+
+    return JSON.stringify(value)
+}
+
+// The hash of a collection is the sum of one term per entity, modulo 2^160 (the
+// width of sha1), so a changed entity only has to have its old term subtracted
+// and its new one added. The term hashes the id with the content, which keeps
+// equal entities under different ids apart.
+const WIDTH = 1n << 160n
+
+const term = (id, hash) => BigInt(`0x${sha1(`${id}:${hash}`)}`)
+
+const hex = (sum) => sum.toString(16).padStart(40, '0')
+
+// Merkle-style fingerprint of the database: entity hashes roll up into one
+// hash per collection, and the collection hashes into a single root hash.
+// Writes only mark the entities they touch as dirty, so a fingerprint request
+// rehashes just those entities and updates the collection hash with them,
+// instead of walking the whole collection.
+//
+// json-server also writes behind this router's back: a DELETE removes the
+// entities of other collections that refer to the deleted one. Such a
+// collection no longer has as many entities as its tree and is rehashed whole.
+module.exports = (db) => {
+    const router = express.Router()
+
+    // collection -> { items, entities: Map(id -> hash), sum, hash, dirty }
+    // where items is the array the tree was built from and dirty a
+    // Map(id -> entity, null when it was removed, or undefined when it has to
+    // be looked up), or null when the whole collection has to be rehashed
+    const trees = {}
+    // collection -> [{ hash, before: Map(id -> hash) }], oldest first: every
+    // hash the collection had and what the entities it changed had hashed
+    // to before (undefined for an added entity). Diffs are computed from them.
+    const history = {}
+
+    const isCollection = (name) => Array.isArray(db.getState()[name])
+
+    const remember = (collection, hash, before) => {
+        const versions = history[collection] || (history[collection] = [])
+
+        versions.push({ hash, before })
+
+        if (versions.length > HISTORY_SIZE) {
+            versions.shift()
+        }
+    }
+
+    const build = (collection, items, cached) => {
+        const entities = new Map()
+        let sum = 0n
+
+        for (const item of items) {
+            const id = String(item.id)
+            const hash = sha1(canonical(item))
+
+            entities.set(id, hash)
+            sum = (sum + term(id, hash)) % WIDTH
+        }
+
+        const before = new Map()
+
+        if (cached) {
+            for (const [id, hash] of cached.entities) {
+                if (entities.get(id) !== hash) {
+                    before.set(id, hash)
+                }
+            }
+
+            for (const id of entities.keys()) {
+                if (!cached.entities.has(id)) {
+                    before.set(id, undefined)
+                }
+            }
+        }
+
+        return { items, entities, sum, before }
+    }
+
+    // Applies the dirty entities to the tree and returns what they hashed to before
+    const update = (cached) => {
+        const { items, entities, dirty } = cached
+        const lookups = [...dirty].filter(([, item]) => item === undefined).map(([id]) => id)
+
+        if (lookups.length > 0) {
+            const wanted = new Set(lookups)
+            lookups.forEach(id => dirty.set(id, null))
+
+            for (const item of items) {
+                const id = String(item.id)
+
+                if (wanted.has(id)) {
+                    dirty.set(id, item)
+                }
+            }
+        }
+
+        const before = new Map()
+        let sum = cached.sum
+
+        for (const [id, item] of dirty) {
+            const previous = entities.get(id)
+            const hash = item ? sha1(canonical(item)) : undefined
+
+            if (previous === hash) {
+                continue
+            }
+
+            if (!before.has(id)) {
+                before.set(id, previous)
+            }
+
+            if (previous !== undefined) {
+                sum = (sum - term(id, previous) + WIDTH) % WIDTH
+                entities.delete(id)
+            }
+
+            if (hash !== undefined) {
+                sum = (sum + term(id, hash)) % WIDTH
+                entities.set(id, hash)
+            }
+        }
+
+        cached.sum = sum
+        return before
+    }
+
+    const tree = (collection) => {
+        const items = db.getState()[collection]
+        const cached = trees[collection]
+
+        if (cached && cached.items === items && cached.dirty && cached.dirty.size === 0 &&
+            cached.entities.size === items.length) {
+            return cached
+        }
+
+        let before = cached && cached.items === items && cached.dirty ? update(cached) : null
+        let result = cached
+
+        if (!before || result.entities.size !== items.length) {
+            const built = build(collection, items, cached)
+
+            // What the updated entities hashed to before the update comes first
+            result = { items, entities: built.entities, sum: built.sum }
+            before = new Map([...built.before, ...(before || [])])
+        }
+
+        result.hash = hex(result.sum)
+        result.dirty = new Map()
+        trees[collection] = result
+
+        if (!cached || before.size > 0) {
+            remember(collection, result.hash, before)
+        }
+
+        return result
+    }
+
+    // The ids added, removed and changed since the collection had the hash
+    // `from`, or null when that hash is no longer remembered
+    const diff = (collection, from) => {
+        const current = tree(collection)
+        const versions = history[collection] || []
+        let position = versions.length - 1
+
+        while (position >= 0 && versions[position].hash !== from) {
+            position--
+        }
+
+        if (position < 0) {
+            return null
+        }
+
+        // What each entity changed since hashed to back then
+        const then = new Map()
+        for (const { before } of versions.slice(position + 1)) {
+            for (const [id, hash] of before) {
+                if (!then.has(id)) {
+                    then.set(id, hash)
+                }
+            }
+        }
+
+        const result = { added: [], removed: [], changed: [] }
+        for (const [id, hash] of then) {
+            const now = current.entities.get(id)
+
+            if (hash === undefined && now !== undefined) {
+                result.added.push(id)
+            } else if (hash !== undefined && now === undefined) {
+                result.removed.push(id)
+            } else if (hash !== now) {
+                result.changed.push(id)
+            }
+        }
+
+        return { to: current.hash, ...result }
+    }
+
+    const root = () => {
+        const collections = {}
+        let rollup = ''
+
+        for (const name of Object.keys(db.getState()).filter(isCollection).sort()) {
+            const { hash, entities } = tree(name)
+
+            collections[name] = { hash, count: entities.size }
+            rollup += `${name}:${hash}\n`
+        }
+
+        return { hash: sha1(rollup), collections }
+    }
+
+    // Exposed so other middlewares that write to the database directly can keep
+    // the fingerprint accurate. `item` is the entity as it is now, null if it
+    // was removed, or left out to have it looked up; an undefined id
+    // invalidates the whole collection.
+    router.invalidate = (collection, id, item) => {
+        const cached = trees[collection]
+
+        if (!cached || !cached.dirty) {
+            return
+        }
+
+        if (id === undefined) {
+            cached.dirty = null
+        } else {
+            cached.dirty.set(String(id), item)
+        }
+    }
+
+    router.use((req, res, next) => {
+        if (['GET', 'HEAD', 'OPTIONS'].includes(req.method)) {
+            next()
+            return
+        }
+
+        const [collection, id, ...rest] = req.path.split('/').filter(Boolean)
+
+        if (!isCollection(collection)) {
+            next()
+            return
+        }
+
+        // `POST /films/1/people` creates a person; the count catches it until
+        // the response names it
+        const nested = rest.length > 0
+        const target = nested ? rest[0] : collection
+        // POSTs carry the id in the body (the sequence middleware fills it in)
+        const marked = nested ? undefined : req.method === 'POST' ? (req.body || {}).id : id
+
+        if (marked !== undefined) {
+            router.invalidate(collection, marked)
+        }
+
+        // Once written the entity is known, which saves looking it up, unless
+        // something else marked it since
+        res.on('finish', () => {
+            const cached = trees[target]
+            const data = res.locals.data
+
+            if (res.statusCode >= 300 || !cached || !cached.dirty || !isCollection(target)) {
+                return
+            }
+
+            if (req.method === 'DELETE' && !nested && marked !== undefined) {
+                if (cached.dirty.has(String(marked)) && cached.dirty.get(String(marked)) === undefined) {
+                    cached.dirty.set(String(marked), null)
+                }
+            } else if (data && !Array.isArray(data) && data.id !== undefined) {
+                const key = String(data.id)
+
+                if (!cached.dirty.has(key) || cached.dirty.get(key) === undefined) {
+                    cached.dirty.set(key, data)
+                }
+            }
+        })
+
+        next()
+    })
+
+    router.get('/_fingerprint', (req, res) => {
+        res.json(root())
+    })
+
+    router.get('/_fingerprint/:collection', (req, res) => {
+        const { collection } = req.params
+
+        if (!isCollection(collection)) {
+            res.status(404).json({ message: `Unknown collection: ${collection}` })
+            return
+        }
+
+        const { hash, entities } = tree(collection)
+        res.json({ collection, hash, entities: Object.fromEntries(entities) })
+    })
+
+    router.get('/_fingerprint/:collection/diff', (req, res) => {
+        const { collection } = req.params
+        const { from } = req.query
+
+        if (!isCollection(collection)) {
+            res.status(404).json({ message: `Unknown collection: ${collection}` })
+            return
+        }
+
+        const result = diff(collection, from)
+
+        if (!result) {
+            res.status(410).json({ message: `Fingerprint ${from} of ${collection} is no longer known` })
+            return
+        }
+
+        res.json({ collection, from, ...result })
+    })
+
+    return router
+}
@@ -0,0 +1,41 @@
+const express = require('express')
+const cbor = require('../formats/cbor')
+const msgpack = require('../formats/msgpack')
+const smile = require('../formats/smile')
+
+const FORMATS = [cbor, msgpack, smile]
+// JSON comes first, so `*/*` and a missing Accept header still get JSON
+const ACCEPTABLE = ['application/json', 'application/vnd.api+json', 'application/x-msgpack', ...FORMATS.map(format => format.mediaType)]
+
+// Binary renderings of the JSON responses: CBOR, MessagePack or Smile for
+// clients that ask for them with `Accept`, e.g. `Accept: application/cbor`.
+// They hold the same values as the JSON would, so clients can decode them
+// into the same models without parsing text.
+//
+// Every route answering with `res.json` or `res.jsonp` is covered, which takes
+// in json-server's routes, the indexed and Mongo collections and the utility
+// routes. JSON:API documents stay JSON.
+module.exports = () => {
+    const router = express.Router()
+
+    router.use((req, res, next) => {
+        const accepted = req.get('Accept') && req.accepts(ACCEPTABLE)
+        const format = FORMATS.find(candidate => candidate.mediaType === (accepted === 'application/x-msgpack' ? msgpack.mediaType : accepted))
+
+        if (format !== undefined) {
+            res.json = res.jsonp = (body) => {
+                res.vary('Accept')
+                res.type(format.mediaType)
+                return res.send(format.encode(body))
+            }
+        } else {
+            res.vary('Accept')
+        }
+
+        next()
+    })
+
+    return router
+}
+
+module.exports.FORMATS = FORMATS
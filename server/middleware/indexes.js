@@ -0,0 +1,556 @@
+const express = require('express')
+
+// Query parameters json-server reads itself instead of filtering on them
+const CONTROLS = ['_start', '_end', '_page', '_limit', '_sort', '_order']
+const WRITES = ['POST', 'PUT', 'PATCH', 'DELETE']
+const RANGE = /^(.+)_(gte|lte)$/
+
+// Secondary indexes over the lowdb collections, configured per collection and
+// field:
+//
+//   indexes(db, { planets: { climate: 'hash', diameter: 'sorted' } })
+//
+// A hash index maps every value to the ids holding it and answers equality
+// filters (`?climate=arid`). A sorted index keeps the entities ordered by the
+// field and answers equality too, plus ranges (`?diameter_gte=10000`) and
+// `_sort=diameter`, walking only the part of the order it needs.
+//
+// A list request is answered here when its filters only use indexed fields and
+// its sort, if any, a sorted one: the most selective index picks the
+// candidates, the remaining filters are checked on those alone, and paging
+// works like json-server's, X-Total-Count and Link headers included. Anything
+// else (`q`, `_like`, `_embed`, dotted paths, ...) falls through to json-server
+// and its linear scan.
+//
+// Writes only mark the ids they touch, along with the entity once they are
+// done, and the next query re-indexes just those. A collection that was
+// swapped out (snapshot restore, copy-on-write) or changed size behind our
+// back (cascading deletes) is rebuilt.
+module.exports = (db, config = {}, { render = (req, res) => res.jsonp(res.locals.data) } = {}) => {
+    const router = express.Router()
+
+    // collection -> { array, entries: Map(id -> { item, seq, values }), indexes: { field: index },
+    // dirty: Map(id -> entity, null once deleted, undefined when not known yet), seq }
+    const collections = {}
+
+    const hash = () => ({ type: 'hash', values: new Map() })
+
+    // Entries are { value, seq, id } ordered by value, then by position in
+    // the collection like json-server's stable sort. Only values of one type
+    // can be searched and sorted the way json-server compares them.
+    const sorted = () => ({ type: 'sorted', entries: [], numbers: 0, strings: 0, others: 0, missing: 0 })
+
+    const kindOf = (value) => {
+        if (value === undefined || value === null) {
+            return 'missing'
+        }
+
+        if (typeof value === 'number' && !Number.isNaN(value)) {
+            return 'numbers'
+        }
+
+        return typeof value === 'string' ? 'strings' : 'others'
+    }
+
+    const searchable = (index) => index.others === 0 && (index.numbers === 0 || index.strings === 0)
+
+    const compare = (a, b) => a.value < b.value ? -1 : a.value > b.value ? 1 : a.seq - b.seq
+
+    // First position whose entry is not before `probe`
+    const lowerBound = (entries, probe, before = (entry) => compare(entry, probe) < 0) => {
+        let low = 0
+        let high = entries.length
+
+        while (low < high) {
+            const middle = (low + high) >>> 1
+
+            if (before(entries[middle])) {
+                low = middle + 1
+            } else {
+                high = middle
+            }
+        }
+
+        return low
+    }
+
+    const firstAtLeast = (entries, value) => lowerBound(entries, null, entry => entry.value < value)
+
+    const firstAbove = (entries, value) => lowerBound(entries, null, entry => entry.value <= value)
+
+    const add = (indexed, id, entry, bulk) => {
+        entry.values = {}
+
+        for (const [field, index] of indexed.fields) {
+            const value = entry.item[field]
+            entry.values[field] = value
+
+            if (index.type === 'hash') {
+                if (value === undefined || value === null) {
+                    continue
+                }
+
+                const key = String(value)
+                const ids = index.values.get(key)
+
+                if (ids) {
+                    ids.add(id)
+                } else {
+                    index.values.set(key, new Set([id]))
+                }
+
+                continue
+            }
+
+            const kind = kindOf(value)
+            index[kind]++
+
+            if (kind === 'missing') {
+                continue
+            }
+
+            const sortable = { value, seq: entry.seq, id }
+
+            if (bulk) {
+                index.entries.push(sortable)
+            } else {
+                index.entries.splice(lowerBound(index.entries, sortable), 0, sortable)
+            }
+        }
+
+        indexed.entries.set(id, entry)
+    }
+
+    const remove = (indexed, id) => {
+        const entry = indexed.entries.get(id)
+
+        if (entry === undefined) {
+            return undefined
+        }
+
+        for (const [field, index] of indexed.fields) {
+            const value = entry.values[field]
+
+            if (index.type === 'hash') {
+                const key = value === undefined || value === null ? undefined : String(value)
+                const ids = key !== undefined && index.values.get(key)
+
+                if (ids && ids.delete(id) && ids.size === 0) {
+                    index.values.delete(key)
+                }
+
+                continue
+            }
+
+            const kind = kindOf(value)
+            index[kind]--
+
+            if (kind !== 'missing') {
+                const position = lowerBound(index.entries, { value, seq: entry.seq })
+
+                if (index.entries[position] && index.entries[position].id === id) {
+                    index.entries.splice(position, 1)
+                }
+            }
+        }
+
+        indexed.entries.delete(id)
+        return entry
+    }
+
+    const build = (collection, array) => {
+        const indexed = { array, entries: new Map(), indexes: {}, dirty: new Map(), seq: array.length }
+
+        for (const [field, type] of Object.entries(config[collection])) {
+            indexed.indexes[field] = type === 'sorted' ? sorted() : hash()
+        }
+
+        indexed.fields = Object.entries(indexed.indexes)
+
+        array.forEach((item, seq) => add(indexed, String(item.id), { item, seq }, true))
+
+        for (const index of Object.values(indexed.indexes)) {
+            if (index.type === 'sorted') {
+                index.entries.sort(compare)
+            }
+        }
+
+        collections[collection] = indexed
+        return indexed
+    }
+
+    // Writes keep the position of what they update, and POST appends, so an
+    // entity keeps its seq and a new one gets the next. Only the dirty ids
+    // whose entity is not known are looked up, several in one pass over the
+    // collection.
+    const refresh = (indexed) => {
+        const unknown = [...indexed.dirty.values()].filter(item => item === undefined).length
+        const items = unknown > 1 ? new Map(indexed.array.map(item => [String(item.id), item])) : undefined
+
+        for (const [id, known] of indexed.dirty) {
+            const previous = remove(indexed, id)
+            const item = known !== undefined ? known
+                : items ? items.get(id) : indexed.array.find(item => String(item.id) === id)
+
+            if (item !== undefined && item !== null) {
+                add(indexed, id, { item, seq: previous ? previous.seq : indexed.seq++ })
+            }
+        }
+
+        indexed.dirty.clear()
+    }
+
+    const indexesOf = (collection) => {
+        const array = db.getState()[collection]
+
+        if (config[collection] === undefined || !Array.isArray(array)) {
+            return undefined
+        }
+
+        const indexed = collections[collection]
+
+        if (indexed === undefined || indexed.array !== array) {
+            return build(collection, array)
+        }
+
+        refresh(indexed)
+
+        return indexed.entries.size === array.length ? indexed : build(collection, array)
+    }
+
+    // The filters of a query as { field, range, values }, or undefined when
+    // json-server has to answer it
+    const conditionsOf = (indexed, query) => {
+        const conditions = []
+
+        for (const [key, raw] of Object.entries(query)) {
+            if (CONTROLS.includes(key)) {
+                continue
+            }
+
+            const values = [].concat(raw)
+
+            if (values.some(value => typeof value !== 'string')) {
+                return undefined
+            }
+
+            const match = RANGE.exec(key)
+            const field = match ? match[1] : key
+
+            if (indexed.indexes[field] === undefined || (match && indexed.indexes[field].type !== 'sorted')) {
+                return undefined
+            }
+
+            conditions.push({ field, range: match && match[2], values })
+        }
+
+        return conditions
+    }
+
+    // Same comparisons as json-server's filter, on the raw field value
+    const matches = (item, { field, range, values }) => {
+        const value = item[field]
+
+        if (value === undefined || value === null) {
+            return false
+        }
+
+        if (range === 'gte') {
+            return values.some(bound => bound <= value)
+        }
+
+        if (range === 'lte') {
+            return values.some(bound => bound >= value)
+        }
+
+        return values.some(wanted => wanted === value.toString())
+    }
+
+    const probeOf = (index, value) => index.numbers > 0 ? Number(value) : value
+
+    // The part of a sorted index that holds the values a condition accepts;
+    // both bounds of a range on the same field narrow down one span
+    const spanOf = (index, { range, values, bounds }) => {
+        const { entries } = index
+
+        if (bounds) {
+            const low = firstAtLeast(entries, probeOf(index, bounds.gte))
+            return [low, Math.max(low, firstAbove(entries, probeOf(index, bounds.lte)))]
+        }
+
+        if (range === 'gte') {
+            return [firstAtLeast(entries, probeOf(index, values[0])), entries.length]
+        }
+
+        return [0, firstAbove(entries, probeOf(index, values[0]))]
+    }
+
+    // How many ids candidatesOf would return, without collecting them
+    const sizeOf = (index, condition) => {
+        const { range, values } = condition
+
+        if (index.type === 'hash') {
+            return values.reduce((size, value) => size + (index.values.has(value) ? index.values.get(value).size : 0), 0)
+        }
+
+        if (!searchable(index) || (range && values.length > 1)) {
+            return Infinity
+        }
+
+        if (range || condition.bounds) {
+            const [low, high] = spanOf(index, condition)
+            return high - low
+        }
+
+        return values.reduce((size, value) => {
+            const probe = probeOf(index, value)
+            return size + firstAbove(index.entries, probe) - firstAtLeast(index.entries, probe)
+        }, 0)
+    }
+
+    // The ids an index narrows a condition down to
+    const candidatesOf = (index, condition) => {
+        const { range, values } = condition
+
+        if (index.type === 'hash') {
+            return values.flatMap(value => [...(index.values.get(value) || [])])
+        }
+
+        if (range || condition.bounds) {
+            return index.entries.slice(...spanOf(index, condition)).map(entry => entry.id)
+        }
+
+        return values.flatMap(value => {
+            const probe = probeOf(index, value)
+            return index.entries.slice(firstAtLeast(index.entries, probe), firstAbove(index.entries, probe)).map(entry => entry.id)
+        })
+    }
+
+    // The conditions an index could answer, plus one span per field that has
+    // both a single _gte and a single _lte
+    const lookupsOf = (conditions) => {
+        const ranges = {}
+
+        for (const { field, range, values } of conditions) {
+            if (range && values.length === 1) {
+                (ranges[field] = ranges[field] || {})[range] = values[0]
+            }
+        }
+
+        const spans = Object.entries(ranges)
+            .filter(([, bounds]) => bounds.gte !== undefined && bounds.lte !== undefined)
+            .map(([field, bounds]) => ({ field, bounds }))
+
+        return [...conditions, ...spans]
+    }
+
+    // `start` to `end` of the whole collection in descending order, walking
+    // the sorted entries backwards one run of equal values at a time, since
+    // ties stay in collection order either way
+    const descending = (entries, start, end) => {
+        const result = []
+        let skipped = 0
+        let high = entries.length
+
+        while (high > 0 && result.length < end - start) {
+            const low = firstAtLeast(entries, entries[high - 1].value)
+
+            if (skipped + high - low <= start) {
+                skipped += high - low
+            } else {
+                for (let i = Math.max(low, low + start - skipped); i < high && result.length < end - start; i++) {
+                    result.push(entries[i])
+                }
+
+                skipped = start
+            }
+
+            high = low
+        }
+
+        return result
+    }
+
+    // { total, slice(start, end) } over the entities matching the query in
+    // the order json-server would list them, or undefined if it can't be
+    // answered from the indexes
+    const select = (collection, query) => {
+        const indexed = indexesOf(collection)
+        const conditions = indexed && conditionsOf(indexed, query)
+
+        if (conditions === undefined) {
+            return undefined
+        }
+
+        let sort
+
+        if (query._sort !== undefined) {
+            const index = indexed.indexes[query._sort]
+
+            if (!index || index.type !== 'sorted' || !searchable(index) || index.missing > 0) {
+                return undefined
+            }
+
+            sort = { index, descending: String(query._order || '').toLowerCase() === 'desc' }
+        }
+
+        if (conditions.length === 0) {
+            if (sort === undefined) {
+                return undefined
+            }
+
+            const { entries } = sort.index
+            const entity = (entry) => indexed.entries.get(entry.id).item
+
+            return {
+                total: entries.length,
+                slice: (start, end) => (sort.descending ? descending(entries, start, end) : entries.slice(start, end)).map(entity)
+            }
+        }
+
+        let best
+
+        for (const condition of lookupsOf(conditions)) {
+            const size = sizeOf(indexed.indexes[condition.field], condition)
+
+            if (best === undefined || size < best.size) {
+                best = { condition, size }
+            }
+        }
+
+        if (best.size === Infinity) {
+            return undefined
+        }
+
+        const entries = [...new Set(candidatesOf(indexed.indexes[best.condition.field], best.condition))]
+            .map(id => indexed.entries.get(id))
+            .filter(entry => conditions.every(condition => matches(entry.item, condition)))
+
+        if (sort === undefined) {
+            entries.sort((a, b) => a.seq - b.seq)
+        } else {
+            const field = query._sort
+            const direction = sort.descending ? -1 : 1
+
+            entries.sort((a, b) => a.values[field] < b.values[field] ? -direction
+                : a.values[field] > b.values[field] ? direction
+                : a.seq - b.seq)
+        }
+
+        return { total: entries.length, slice: (start, end) => entries.slice(start, end).map(entry => entry.item) }
+    }
+
+    // json-server's paging: _page and _limit, or _start with _end or _limit
+    const page = (req, res, selection) => {
+        let { _start, _end, _page, _limit } = req.query
+        const { total } = selection
+
+        if (_end || _limit || _page) {
+            res.setHeader('X-Total-Count', total)
+            res.setHeader('Access-Control-Expose-Headers', `X-Total-Count${_page ? ', Link' : ''}`)
+        }
+
+        if (_page) {
+            _page = Math.max(parseInt(_page, 10) || 1, 1)
+            _limit = parseInt(_limit, 10) || 10
+
+            const items = selection.slice((_page - 1) * _limit, _page * _limit)
+
+            if (items.length > 0 && items.length !== total) {
+                const url = `${req.protocol}://${req.get('host')}${req.originalUrl}`
+                const link = (to) => url.replace(`page=${_page}`, `page=${to}`)
+                const last = Math.ceil(total / _limit)
+                const links = { first: link(1) }
+
+                if (_page > 1) {
+                    links.prev = link(_page - 1)
+                }
+
+                if (_page * _limit < total) {
+                    links.next = link(_page + 1)
+                }
+
+                links.last = link(last)
+                res.links(links)
+            }
+
+            return items
+        }
+
+        if (_end) {
+            return selection.slice(parseInt(_start, 10) || 0, parseInt(_end, 10))
+        }
+
+        if (_limit) {
+            _start = parseInt(_start, 10) || 0
+            return selection.slice(_start, _start + parseInt(_limit, 10))
+        }
+
+        return selection.slice(0, total)
+    }
+
+    // Exposed for writes that bypass json-server, like bulk writes. `item` is
+    // the entity as written, or null when it was removed; without it the
+    // entity is looked up, and without an id the indexes of the whole
+    // collection are rebuilt.
+    router.invalidate = (collection, id, item) => {
+        const indexed = collections[collection]
+
+        if (indexed && id !== undefined) {
+            indexed.dirty.set(String(id), item)
+        } else if (indexed) {
+            delete collections[collection]
+        }
+    }
+
+    router.use((req, res, next) => {
+        if (!WRITES.includes(req.method)) {
+            next()
+            return
+        }
+
+        // Nested routes (`POST /films/1/people`) write to the last collection,
+        // under an id only known once it is done
+        const [collection, id, ...rest] = req.path.split('/').filter(Boolean)
+        const target = rest.length > 0 ? rest[0] : collection
+        const marked = rest.length > 0 ? undefined : id !== undefined ? id : req.body && req.body.id
+
+        if (marked !== undefined) {
+            router.invalidate(collection, marked)
+        }
+
+        res.on('finish', () => {
+            const data = res.locals.data
+
+            if (res.statusCode >= 400) {
+                return
+            }
+
+            if (req.method === 'DELETE') {
+                if (marked !== undefined) {
+                    router.invalidate(collection, marked, null)
+                }
+            } else if (data && data.id !== undefined) {
+                router.invalidate(target, data.id, data)
+            }
+        })
+
+        next()
+    })
+
+    router.get('/:collection', (req, res, next) => {
+        const selection = select(req.params.collection, req.query)
+
+        if (selection === undefined) {
+            next()
+            return
+        }
+
+        res.locals.data = page(req, res, selection)
+        render(req, res)
+    })
+
+    router.select = select
+
+    return router
+}
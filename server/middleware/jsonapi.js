@@ -0,0 +1,280 @@
+const express = require('express')
+
+const MEDIA_TYPE = 'application/vnd.api+json'
+const LINK = /^\/(\w+)\/([^/]+)\/?$/
+
+// The @Type of the Java models; other collections use their own name
+const TYPES = {
+    people: 'person',
+    planets: 'planet',
+    films: 'film',
+    species: 'species',
+    vehicles: 'vehicle',
+    starships: 'starship'
+}
+
+// JSON:API documents for clients that send `Accept: application/vnd.api+json`.
+//
+// Fields holding links such as `/people/1/` become relationships, everything
+// else stays an attribute. `include=residents,films` adds the linked resources
+// to `included`, and dotted paths (`include=characters.homeworld`) follow the
+// links of the included resources too, so a whole graph comes back in one
+// response.
+//
+// Sparse fieldsets (`fields[starship]=name,hyperdrive_rating`) trim the
+// resources of that type to the listed fields, in JSON:API documents and in
+// plain JSON responses alike; the id always stays.
+//
+// json-server still does the querying: the middleware only takes these
+// parameters out of the query, and `render` replaces the router's renderer to
+// project its result or turn it into a document.
+module.exports = (db) => {
+    const router = express.Router()
+
+    // field -> linked collection, per collection. Learnt from the data, since
+    // an empty list or a blank link on its own does not tell, and learnt again
+    // after the collection was written to
+    const schemas = {}
+
+    const typeOf = (collection) => TYPES[collection] || collection
+
+    const collectionOf = (type) => Object.keys(TYPES).find(collection => TYPES[collection] === type) || type
+
+    const schema = (collection) => {
+        if (schemas[collection] === undefined) {
+            const fields = {}
+
+            for (const item of db.getState()[collection] || []) {
+                for (const [field, value] of Object.entries(item)) {
+                    const link = (Array.isArray(value) ? value : [value])
+                        .map(parseLink)
+                        .find(Boolean)
+
+                    if (link) {
+                        fields[field] = link.collection
+                    }
+                }
+            }
+
+            schemas[collection] = fields
+        }
+
+        return schemas[collection]
+    }
+
+    const parseLink = (value) => {
+        const match = typeof value === 'string' && LINK.exec(value)
+        return match && Array.isArray(db.getState()[match[1]]) ? { collection: match[1], id: match[2] } : null
+    }
+
+    // Finds entities by id through one Map per collection, built the first
+    // time a request looks into that collection and dropped with the request
+    const finder = () => {
+        const entities = {}
+
+        return (collection, id) => {
+            if (entities[collection] === undefined) {
+                entities[collection] = new Map((db.getState()[collection] || []).map(item => [String(item.id), item]))
+            }
+
+            return entities[collection].get(String(id))
+        }
+    }
+
+    const identifier = (link) => link && { type: typeOf(link.collection), id: String(link.id) }
+
+    const resource = (collection, item) => {
+        const fields = schema(collection)
+        const attributes = {}
+        const relationships = {}
+
+        for (const [field, value] of Object.entries(item)) {
+            if (field === 'id') {
+                continue
+            }
+
+            if (fields[field] === undefined) {
+                attributes[field] = value
+            } else if (Array.isArray(value)) {
+                relationships[field] = { data: value.map(parseLink).filter(Boolean).map(identifier) }
+            } else {
+                relationships[field] = { data: identifier(parseLink(value)) }
+            }
+        }
+
+        return {
+            type: typeOf(collection),
+            id: String(item.id),
+            attributes,
+            relationships,
+            links: { self: `/${collection}/${item.id}` }
+        }
+    }
+
+    // Walks every include path from the primary resources, adding each linked
+    // resource once. Links to missing entities stay in the relationship data
+    // but have nothing to include.
+    const include = (primary, paths) => {
+        const find = finder()
+        const resources = new Map(primary.map(item => [`${item.type}:${item.id}`, item]))
+        const included = []
+
+        for (const path of paths) {
+            let level = primary
+
+            for (const field of path.split('.')) {
+                const next = new Set()
+
+                for (const { type, relationships } of level) {
+                    const relationship = relationships[field]
+
+                    if (relationship === undefined) {
+                        throw new Error(`${type} has no relationship named ${field}`)
+                    }
+
+                    const data = Array.isArray(relationship.data) ? relationship.data : [relationship.data]
+
+                    for (const link of data.filter(Boolean)) {
+                        const key = `${link.type}:${link.id}`
+                        let linked = resources.get(key)
+
+                        if (linked === undefined) {
+                            const collection = collectionOf(link.type)
+                            const item = find(collection, link.id)
+
+                            if (item === undefined) {
+                                continue
+                            }
+
+                            linked = resource(collection, item)
+                            resources.set(key, linked)
+                            included.push(linked)
+                        }
+
+                        next.add(linked)
+                    }
+                }
+
+                level = [...next]
+            }
+        }
+
+        return included
+    }
+
+    const pick = (object, fields) => Object.fromEntries(Object.entries(object).filter(([field]) => fields.has(field)))
+
+    const project = (resource, fields) => {
+        const wanted = fields ? fields[resource.type] : undefined
+
+        if (wanted === undefined) {
+            return resource
+        }
+
+        return {
+            ...resource,
+            attributes: pick(resource.attributes, wanted),
+            relationships: pick(resource.relationships, wanted)
+        }
+    }
+
+    // `fields[starship]=a,b` arrives either parsed into an object or as a flat
+    // key, depending on the query parser
+    const takeFields = (query) => {
+        const fields = {}
+
+        for (const key of Object.keys(query)) {
+            const match = /^fields\[(\w+)\]$/.exec(key)
+
+            if (match) {
+                fields[match[1]] = query[key]
+                delete query[key]
+            } else if (key === 'fields' && typeof query.fields === 'object') {
+                Object.assign(fields, query.fields)
+                delete query.fields
+            }
+        }
+
+        const entries = Object.entries(fields)
+            .map(([type, names]) => [type, new Set(String(names).split(',').filter(Boolean))])
+
+        return entries.length > 0 ? Object.fromEntries(entries) : null
+    }
+
+    // Exposed for writes that bypass json-server, like bulk writes and
+    // restoring a snapshot
+    router.invalidate = (collection) => {
+        delete schemas[collection]
+    }
+
+    router.use((req, res, next) => {
+        if (req.method !== 'GET') {
+            // Nested routes (`POST /films/1/people`) write to the last collection
+            req.path.split('/').filter(Boolean).forEach(router.invalidate)
+            next()
+            return
+        }
+
+        // Anything left in the query would be taken as a filter by json-server
+        const fields = takeFields(req.query)
+
+        if ((req.get('Accept') || '').includes(MEDIA_TYPE)) {
+            const { include } = req.query
+            delete req.query.include
+
+            req.jsonapi = {
+                include: include ? String(include).split(',').filter(Boolean) : [],
+                fields
+            }
+        } else if (fields) {
+            req.fields = fields
+        }
+
+        next()
+    })
+
+    router.render = (req, res) => {
+        const data = res.locals.data
+
+        if (!req.jsonapi) {
+            const [collection] = req.path.split('/').filter(Boolean)
+            const wanted = req.fields && res.statusCode === 200 && req.fields[typeOf(collection)]
+
+            if (!wanted) {
+                res.jsonp(data)
+                return
+            }
+
+            const fields = new Set([...wanted, 'id'])
+            res.jsonp(Array.isArray(data) ? data.map(item => pick(item, fields)) : pick(data, fields))
+            return
+        }
+
+        res.type(MEDIA_TYPE)
+
+        const [collection, id] = req.path.split('/').filter(Boolean)
+
+        if (res.statusCode === 404 || !Array.isArray(db.getState()[collection])) {
+            res.status(404).send(JSON.stringify({ errors: [{ status: '404', title: 'Not Found' }] }))
+            return
+        }
+
+        const primary = (Array.isArray(data) ? data : [data]).map(item => resource(collection, item))
+
+        try {
+            const { fields } = req.jsonapi
+            const projected = primary.map(resource => project(resource, fields))
+            const document = { data: id === undefined ? projected : projected[0] }
+
+            if (req.jsonapi.include.length > 0) {
+                document.included = include(primary, req.jsonapi.include).map(resource => project(resource, fields))
+            }
+
+            res.send(JSON.stringify(document))
+        } catch (e) {
+            res.status(400).send(JSON.stringify({ errors: [{ status: '400', title: 'Bad include', detail: e.message }] }))
+        }
+    }
+
+    return router
+}
@@ -0,0 +1,340 @@
+const express = require('express')
+const Counter = require('../model/counter')
+const { check, rejected, MAX_OPERATIONS } = require('./bulk')
+
+const MAX_RESERVATION = 10000
+const PROJECTION = { _id: 0 }
+
+// Query parameters that are not filters, as in json-server
+const CONTROLS = ['_start', '_end', '_page', '_limit', '_sort', '_order', '_embed', '_expand', 'q', 'callback', '_']
+// Query parameters json-server supports and this router does not
+const UNSUPPORTED = ['q', '_embed', '_expand']
+const OPERATOR = /^(.+)_(gte|lte|ne|like)$/
+
+// One filter clause per query parameter. Repeated values are alternatives,
+// except for _ne, where none of them may match, like in json-server.
+const clauseOf = (key, values) => {
+    const [, field, operator] = OPERATOR.exec(key) || [key, key]
+
+    if (operator === 'ne') {
+        return { [field]: { $nin: values } }
+    }
+
+    const alternatives = values.map(value => {
+        if (operator === 'gte' || operator === 'lte') {
+            return { [field]: { [`$${operator}`]: value } }
+        }
+
+        return { [field]: operator === 'like' ? { $regex: value, $options: 'i' } : value }
+    })
+
+    return alternatives.length === 1 ? alternatives[0] : { $or: alternatives }
+}
+
+// json-server's list parameters as a Mongo filter, sort and page. Lists match
+// a value by holding it, so `/people?films=/films/1/` finds the cast of a film.
+// `q`, `_embed` and `_expand` are answered with 400 before they get here.
+const queryOf = (query) => {
+    const clauses = Object.entries(query)
+        .filter(([key]) => !CONTROLS.includes(key))
+        .map(([key, value]) => clauseOf(key, [].concat(value).map(String)))
+
+    const fields = query._sort ? String(query._sort).split(',') : []
+    const orders = String(query._order || '').toLowerCase().split(',')
+    const sort = Object.fromEntries(fields.map((field, i) => [field, orders[i] === 'desc' ? -1 : 1]))
+
+    // Insertion order, which is also json-server's tie-breaker
+    sort._id = 1
+
+    const result = { filter: clauses.length > 0 ? { $and: clauses } : {}, sort, skip: 0, limit: undefined, counted: false }
+    const { _start, _end, _page, _limit } = query
+
+    if (_page) {
+        result.page = Math.max(parseInt(_page, 10) || 1, 1)
+        result.limit = parseInt(_limit, 10) || 10
+        result.skip = (result.page - 1) * result.limit
+    } else if (_end) {
+        result.skip = parseInt(_start, 10) || 0
+        result.limit = Math.max(parseInt(_end, 10) - result.skip, 0)
+    } else if (_limit) {
+        result.skip = parseInt(_start, 10) || 0
+        result.limit = parseInt(_limit, 10)
+    }
+
+    result.counted = Boolean(_end || _limit || _page)
+    return result
+}
+
+// json-server's routes for the SWAPI collections, served from Mongo (see
+// model/entities.js) instead of db.json, plus the `_count` and `_seq` utility
+// routes of middleware/sequence.js. Queries are lean and only ever read the
+// page they return; counts and id sequences are done by Mongo too, so several
+// servers can share one database.
+//
+// Results go through `render` like the router's, so sparse fieldsets still
+// apply. Anything that is not one of the collections falls through.
+module.exports = (models, { render = (req, res) => res.jsonp(res.locals.data) } = {}) => {
+    const router = express.Router()
+    const seeded = new Set()
+
+    // Includes would be looked up in db.json
+    router.use((req, res, next) => {
+        if (req.jsonapi && req.jsonapi.include.length > 0) {
+            res.status(400).type('application/vnd.api+json')
+                .send(JSON.stringify({ errors: [{ status: '400', title: 'include is not supported with ENTITY_STORE=mongo' }] }))
+            return
+        }
+
+        next()
+    })
+
+    // Rather than answering them with the whole collection
+    router.use((req, res, next) => {
+        const [collection] = req.path.split('/').filter(Boolean)
+        const unsupported = UNSUPPORTED.filter(key => req.query[key] !== undefined)
+
+        if (models[collection] !== undefined && unsupported.length > 0) {
+            res.status(400).json({ message: `${unsupported.join(', ')} ${unsupported.length === 1 ? 'is' : 'are'} not supported with ENTITY_STORE=mongo` })
+            return
+        }
+
+        next()
+    })
+
+    const handle = (route) => (req, res, next) => {
+        const model = models[req.params.collection]
+
+        if (model === undefined) {
+            next()
+            return
+        }
+
+        route(model, req, res).catch(e => failed(res, e))
+    }
+
+    const failed = (res, e) => {
+        if (e.code === 11000) {
+            res.status(409).json({ message: `Duplicate id: ${JSON.stringify(e.keyValue)}` })
+        } else if (['ValidationError', 'CastError', 'StrictModeError'].includes(e.name)) {
+            res.status(400).json({ message: e.message })
+        } else {
+            console.error(e)
+            res.status(500).json({ message: e.message })
+        }
+    }
+
+    const done = (req, res, status, data) => {
+        res.status(status)
+        res.locals.data = data
+        render(req, res)
+    }
+
+    const plain = (document) => {
+        const object = document.toObject()
+        delete object._id
+        return object
+    }
+
+    // The counter starts at the highest id the first time it is used, and
+    // only ever moves forward
+    const raise = async (collection, model, id) => {
+        if (!seeded.has(collection)) {
+            const last = await model.findOne({}, { id: 1 }).sort({ id: -1 }).lean()
+            await Counter.updateOne({ _id: collection }, { $max: { seq: last ? last.id : 0 } }, { upsert: true })
+            seeded.add(collection)
+        }
+
+        if (id !== undefined) {
+            await Counter.updateOne({ _id: collection }, { $max: { seq: id } })
+        }
+    }
+
+    const reserve = async (collection, model, size) => {
+        await raise(collection, model)
+
+        const { seq } = await Counter.findOneAndUpdate({ _id: collection }, { $inc: { seq: size } }, { new: true }).lean()
+        return { collection, from: seq - size + 1, to: seq }
+    }
+
+    router.get('/_count/:collection', handle(async (model, req, res) => {
+        const { collection } = req.params
+        res.json({ collection, count: await model.estimatedDocumentCount() })
+    }))
+
+    router.post('/_seq/:collection', handle(async (model, req, res) => {
+        const { collection } = req.params
+        const size = Number(req.query.size || 1)
+
+        if (!Number.isInteger(size) || size < 1 || size > MAX_RESERVATION) {
+            res.status(400).json({ message: `size must be an integer between 1 and ${MAX_RESERVATION}` })
+            return
+        }
+
+        res.status(201).json(await reserve(collection, model, size))
+    }))
+
+    const writeOf = ({ op, id, data }) => {
+        if (op === 'create') {
+            return { insertOne: { document: data } }
+        }
+
+        if (op === 'replace') {
+            return { replaceOne: { filter: { id }, replacement: { ...data, id } } }
+        }
+
+        if (op === 'update') {
+            const { id: ignored, ...changes } = data
+            return { updateOne: { filter: { id }, update: { $set: changes } } }
+        }
+
+        return { deleteOne: { filter: { id } } }
+    }
+
+    // Bulk writes (middleware/bulk.js), checked the same way against the ids
+    // they name and then written in order with one bulkWrite. They are only
+    // atomic as far as the checks go: a write that fails all the same, say
+    // because another client created the id in between, stops the batch with
+    // the writes before it done, and a write to an entity deleted in between
+    // does nothing.
+    router.post('/:collection/_bulk', handle(async (model, req, res) => {
+        const { collection } = req.params
+        const operations = req.body
+
+        if (!Array.isArray(operations)) {
+            res.status(400).json({ message: 'The body must be an array of operations' })
+            return
+        }
+
+        if (operations.length > MAX_OPERATIONS) {
+            res.status(413).json({ message: `At most ${MAX_OPERATIONS} operations per request` })
+            return
+        }
+
+        const creates = operations.filter(operation => operation && operation.op === 'create' && operation.data)
+        const named = operations
+            .map(operation => operation && (operation.op === 'create' ? operation.data && operation.data.id : operation.id))
+            .filter(id => id !== undefined && id !== null)
+        const unnumbered = creates.filter(({ data }) => data.id === undefined || data.id === null).length
+
+        // Ids as of the operation being checked
+        const present = new Set((await model.find({ id: { $in: named } }, { id: 1, _id: 0 }).lean()).map(({ id }) => String(id)))
+        let next = unnumbered > 0 ? (await reserve(collection, model, unnumbered)).from : 0
+
+        const checked = operations.map(operation => check(present, operation, data => {
+            if (data.id === undefined) {
+                data.id = next++
+            }
+        }))
+        const failed = checked.findIndex(result => result.status !== undefined)
+
+        if (failed >= 0) {
+            res.status(checked[failed].status).json(rejected(checked, failed))
+            return
+        }
+
+        const created = checked.filter(({ op }) => op === 'create').map(({ id }) => Number(id)).filter(Number.isFinite)
+
+        if (created.length > 0) {
+            await raise(collection, model, Math.max(...created))
+        }
+
+        const results = checked.map(({ op, id }) => ({ status: op === 'create' ? 201 : 200, id }))
+
+        try {
+            await model.bulkWrite(checked.map(writeOf), { ordered: true })
+        } catch (e) {
+            if (e.writeErrors === undefined) {
+                throw e
+            }
+
+            const { index, code, errmsg } = [].concat(e.writeErrors)[0]
+
+            results[index] = code === 11000
+                ? { status: 409, id: results[index].id, message: `Duplicate id: ${results[index].id}` }
+                : { status: 500, id: results[index].id, message: errmsg }
+
+            res.status(results[index].status).json(results.map((result, i) => i > index
+                ? { status: 424, message: `Not applied, operation ${index} failed` }
+                : result))
+            return
+        }
+
+        res.json(results)
+    }))
+
+    router.get('/:collection', handle(async (model, req, res) => {
+        const { filter, sort, skip, limit, page, counted } = queryOf(req.query)
+
+        let find = model.find(filter, PROJECTION).sort(sort).skip(skip)
+
+        if (limit !== undefined) {
+            find = find.limit(limit)
+        }
+
+        const [items, total] = await Promise.all([find.lean(), counted ? model.countDocuments(filter) : undefined])
+
+        if (counted) {
+            res.setHeader('X-Total-Count', total)
+            res.setHeader('Access-Control-Expose-Headers', `X-Total-Count${page ? ', Link' : ''}`)
+        }
+
+        if (page && items.length > 0 && items.length < total) {
+            const url = `${req.protocol}://${req.get('host')}${req.originalUrl}`
+            const link = (to) => url.replace(`page=${page}`, `page=${to}`)
+            const links = { first: link(1) }
+
+            if (page > 1) {
+                links.prev = link(page - 1)
+            }
+
+            if (page * limit < total) {
+                links.next = link(page + 1)
+            }
+
+            links.last = link(Math.ceil(total / limit))
+            res.links(links)
+        }
+
+        done(req, res, 200, items)
+    }))
+
+    router.get('/:collection/:id', handle(async (model, req, res) => {
+        const item = await model.findOne({ id: req.params.id }, PROJECTION).lean()
+        done(req, res, item ? 200 : 404, item || {})
+    }))
+
+    router.post('/:collection', handle(async (model, req, res) => {
+        const { collection } = req.params
+        const body = { ...req.body }
+
+        if (body.id === undefined || body.id === null) {
+            body.id = (await reserve(collection, model, 1)).from
+        } else {
+            await raise(collection, model, Number(body.id))
+        }
+
+        done(req, res, 201, plain(await model.create(body)))
+    }))
+
+    router.put('/:collection/:id', handle(async (model, req, res) => {
+        const item = await model.findOneAndReplace({ id: req.params.id }, { ...req.body, id: req.params.id },
+            { new: true, projection: PROJECTION, runValidators: true }).lean()
+        done(req, res, item ? 200 : 404, item || {})
+    }))
+
+    router.patch('/:collection/:id', handle(async (model, req, res) => {
+        const { id, ...changes } = req.body || {}
+        const item = await model.findOneAndUpdate({ id: req.params.id }, { $set: changes },
+            { new: true, projection: PROJECTION, runValidators: true }).lean()
+        done(req, res, item ? 200 : 404, item || {})
+    }))
+
+    router.delete('/:collection/:id', handle(async (model, req, res) => {
+        const { deletedCount } = await model.deleteOne({ id: req.params.id })
+        done(req, res, deletedCount > 0 ? 200 : 404, {})
+    }))
+
+    router.queryOf = queryOf
+
+    return router
+}
@@ -0,0 +1,87 @@
+const express = require('express')
+
+const MAX_RESERVATION = 10000
+
+// Per-collection id sequences and counts, so clients never have to download a
+// whole collection to pick the next id. Node runs one handler at a time, which
+// makes the plain counters below atomic.
+module.exports = (db) => {
+    const router = express.Router()
+    const sequences = {}
+
+    const isCollection = (name) => Array.isArray(db.getState()[name])
+
+    // Seeded lazily from the highest numeric id, then only ever moves forward,
+    // so ids of deleted entities are never handed out again
+    const current = (collection) => {
+        if (sequences[collection] === undefined) {
+            sequences[collection] = db.getState()[collection]
+                .map(item => Number(item.id))
+                .filter(Number.isFinite)
+                .reduce((max, id) => Math.max(max, id), 0)
+        }
+
+        return sequences[collection]
+    }
+
+    const reserve = (collection, size) => {
+        const from = current(collection) + 1
+        sequences[collection] = from + size - 1
+
+        return { collection, from, to: sequences[collection] }
+    }
+
+    router.get('/_count/:collection', (req, res) => {
+        const { collection } = req.params
+
+        if (!isCollection(collection)) {
+            res.status(404).json({ message: `Unknown collection: ${collection}` })
+            return
+        }
+
+        res.json({ collection, count: db.getState()[collection].length })
+    })
+
+    router.post('/_seq/:collection', (req, res) => {
+        const { collection } = req.params
+        const size = Number(req.query.size || 1)
+
+        if (!isCollection(collection)) {
+            res.status(404).json({ message: `Unknown collection: ${collection}` })
+            return
+        }
+
+        if (!Number.isInteger(size) || size < 1 || size > MAX_RESERVATION) {
+            res.status(400).json({ message: `size must be an integer between 1 and ${MAX_RESERVATION}` })
+            return
+        }
+
+        res.status(201).json(reserve(collection, size))
+    })
+
+    // Gives an entity about to be created the next id, or moves the sequence
+    // past the id it has
+    router.assign = (collection, item) => {
+        const id = Number(item.id)
+
+        if (item.id === undefined) {
+            item.id = reserve(collection, 1).from
+        } else if (Number.isFinite(id) && id > current(collection)) {
+            sequences[collection] = id
+        }
+    }
+
+    // Creations go through the same sequence, so a POST without an id can never
+    // be given an id another client has already reserved
+    router.post('/:collection', (req, res, next) => {
+        const { collection } = req.params
+
+        if (isCollection(collection) && req.body && typeof req.body === 'object') {
+            router.assign(collection, req.body)
+        }
+
+        next()
+    })
+
+    return router
+}
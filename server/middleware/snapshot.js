@@ -0,0 +1,340 @@
+const express = require('express')
+
+// Named snapshots of the lowdb state, kept as undo logs.
+//
+// Taking a snapshot records nothing. The first write to an entity after that
+// records, in every snapshot that has not seen it yet, a copy of the entity
+// and its position as of the snapshot, or that it did not exist. Restoring
+// writes those entities back at their positions, cuts the ones created since
+// off the end, and leaves the rest of the collection alone, so it costs as
+// much as was written since the snapshot rather than as much as the database
+// holds. The arrays stay the same, so the routers that keep indexes over them
+// only rework the entities `onRestore(collection, changes)` names: a Map(id ->
+// entity, or null when it was removed).
+//
+// Once entities were removed since the snapshot, restoring puts them back in
+// the middle of the collection, which moves everything after them: then the
+// whole collection is rebuilt, and changes is null.
+//
+// Positions work because json-server changes entities in place and appends
+// new ones: an entity nobody has touched since the snapshot is still where it
+// was, except for the removed entities before it. A snapshot that cannot keep
+// that up, because another one was restored in the middle of it, keeps a copy
+// of the collection instead.
+//
+// Bulk writes (middleware/bulk.js) come after this router and are recorded
+// through `router.record`.
+module.exports = (db, { onRestore = () => {} } = {}) => {
+    const router = express.Router()
+    // name -> Map(collection -> log)
+    const snapshots = new Map()
+
+    // { entries: Map(id -> { item, position, removed }), removed: [position],
+    // copy }: item is null for an entity created since the snapshot, removed
+    // holds the sorted positions of the recorded entities removed since, and
+    // copy replaces all of it once the collection had to be copied
+    const logOf = (snapshot, collection) => {
+        let log = snapshot.get(collection)
+
+        if (log === undefined) {
+            log = { entries: new Map(), removed: [], copy: null }
+            snapshot.set(collection, log)
+        }
+
+        return log
+    }
+
+    // Where an untouched entity now at `position` was when the snapshot was
+    // taken: one further on for each removed entity that was before it
+    const originalPosition = (log, position) => {
+        let original = position
+
+        for (const removed of log.removed) {
+            if (removed > original) {
+                break
+            }
+
+            original++
+        }
+
+        return original
+    }
+
+    const positionsOf = (items, ids) => {
+        const positions = new Map()
+
+        if (ids.length === 1) {
+            const position = items.findIndex(item => String(item.id) === ids[0])
+            positions.set(ids[0], position)
+            return positions
+        }
+
+        const wanted = new Set(ids)
+        items.forEach((item, position) => {
+            if (wanted.has(String(item.id))) {
+                positions.set(String(item.id), position)
+            }
+        })
+
+        return positions
+    }
+
+    // Records the entities a write is about to change, in every snapshot.
+    // `removing` marks writes that take them out of the collection, `created`
+    // writes that have already added them. `known` holds their positions when
+    // the caller has them already.
+    const record = (collection, ids, { removing = false, created = false, known = null } = {}, into = [...snapshots.values()]) => {
+        const items = db.getState()[collection]
+
+        if (into.length === 0 || !Array.isArray(items) || ids.length === 0) {
+            return
+        }
+
+        const keys = ids.map(String)
+        let positions = null
+
+        for (const snapshot of into) {
+            const log = logOf(snapshot, collection)
+
+            if (log.copy) {
+                continue
+            }
+
+            for (const key of keys) {
+                let entry = log.entries.get(key)
+
+                if (entry === undefined) {
+                    positions = positions || known || (created ? new Map() : positionsOf(items, keys))
+
+                    const position = positions.has(key) ? positions.get(key) : -1
+                    entry = position < 0
+                        ? { item: null }
+                        : { item: structuredClone(items[position]), position: originalPosition(log, position), removed: false }
+
+                    log.entries.set(key, entry)
+                }
+
+                if (removing && entry.item && !entry.removed) {
+                    entry.removed = true
+
+                    const at = log.removed.findIndex(position => position > entry.position)
+                    log.removed.splice(at < 0 ? log.removed.length : at, 0, entry.position)
+                }
+            }
+        }
+    }
+
+    // The collection as it was when the snapshot was taken
+    const original = (log, items) => {
+        if (log.copy) {
+            return log.copy
+        }
+
+        const untouched = items.filter(item => !log.entries.has(String(item.id)))
+        const recorded = [...log.entries.values()]
+            .filter(({ item }) => item)
+            .sort((a, b) => a.position - b.position)
+        const result = []
+        let next = 0
+
+        for (const { item, position } of recorded) {
+            while (result.length < position && next < untouched.length) {
+                result.push(untouched[next++])
+            }
+
+            result.push(item)
+        }
+
+        while (next < untouched.length) {
+            result.push(untouched[next++])
+        }
+
+        return result
+    }
+
+    // Entities were removed and put back, which moves everything after them
+    const isReordered = (log) => log.copy !== null || log.removed.length > 0
+
+    // The entities json-server deletes along with `collection/id`: those whose
+    // foreign key (`planetId`) no longer finds anything. It scans the whole
+    // database for them after every DELETE, and so does this.
+    const dependents = (collection, id) => {
+        if (!db._ || !db._.getRemovable) {
+            return []
+        }
+
+        const state = db.getState()
+        const without = { ...state, [collection]: state[collection].filter(item => String(item.id) !== String(id)) }
+
+        return db._.getRemovable(without, { foreignKeySuffix: 'Id' })
+    }
+
+    const restore = (snapshot) => {
+        const state = db.getState()
+        const restored = []
+
+        for (const [collection, log] of snapshot) {
+            const items = state[collection]
+
+            if (!Array.isArray(items) || (!log.copy && log.entries.size === 0)) {
+                continue
+            }
+
+            const reordered = isReordered(log)
+            const changes = new Map()
+            // id -> position now, of the entities the restore writes
+            const positions = new Map()
+            let length = items.length
+
+            if (!reordered) {
+                log.entries.forEach(({ item, position }, id) => {
+                    changes.set(id, item)
+
+                    if (item) {
+                        positions.set(id, position)
+                    }
+                })
+
+                // With nothing removed, the entities created since are the
+                // ones after those the snapshot has
+                while (length > 0) {
+                    const id = String(items[length - 1].id)
+                    const entry = log.entries.get(id)
+
+                    if (entry === undefined || entry.item) {
+                        break
+                    }
+
+                    positions.set(id, --length)
+                }
+            }
+
+            // The other snapshots see the restore as writes of their own, unless
+            // it moves entities about
+            for (const other of snapshots.values()) {
+                const otherLog = other !== snapshot && logOf(other, collection)
+
+                if (!otherLog || otherLog.copy) {
+                    continue
+                }
+
+                if (reordered) {
+                    otherLog.copy = structuredClone(original(otherLog, items))
+                    otherLog.entries.clear()
+                    otherLog.removed = []
+                } else {
+                    const ids = (created) => [...changes].filter(([, item]) => (item === null) === created).map(([id]) => id)
+
+                    record(collection, ids(false), { known: positions }, [other])
+                    record(collection, ids(true), { removing: true, known: positions }, [other])
+                }
+            }
+
+            if (reordered) {
+                const result = original(log, items)
+
+                items.length = 0
+                result.forEach(item => items.push(item))
+            } else {
+                log.entries.forEach(({ item, position }) => {
+                    if (item) {
+                        items[position] = item
+                    }
+                })
+
+                items.length = length
+            }
+
+            snapshot.delete(collection)
+            restored.push({ collection, changes: reordered ? null : changes })
+        }
+
+        return restored
+    }
+
+    router.use((req, res, next) => {
+        if (['GET', 'HEAD', 'OPTIONS'].includes(req.method) || snapshots.size === 0) {
+            next()
+            return
+        }
+
+        const [collection, id, ...rest] = req.path.split('/').filter(Boolean)
+
+        if (!Array.isArray(db.getState()[collection]) || id === '_bulk') {
+            next()
+            return
+        }
+
+        // `POST /films/1/people` creates a person, whose id is only known once
+        // it exists
+        const nested = rest.length > 0 ? rest[0] : undefined
+        const body = req.body || {}
+
+        if (nested !== undefined || (req.method === 'POST' && body.id === undefined)) {
+            const target = nested !== undefined ? nested : collection
+
+            res.on('finish', () => {
+                const data = res.locals.data
+
+                if (res.statusCode === 201 && data && data.id !== undefined) {
+                    record(target, [data.id], { created: true })
+                }
+            })
+        } else if (req.method === 'POST') {
+            record(collection, [body.id])
+        } else if (req.method === 'DELETE' && id !== undefined) {
+            record(collection, [id], { removing: true })
+            dependents(collection, id).forEach(({ name, id }) => record(name, [id], { removing: true }))
+        } else if (id !== undefined) {
+            record(collection, [id])
+        }
+
+        next()
+    })
+
+    router.get('/_snapshots', (req, res) => {
+        res.json([...snapshots.keys()])
+    })
+
+    router.post('/_snapshots/:name', (req, res) => {
+        const { name } = req.params
+
+        snapshots.set(name, new Map())
+        res.status(201).json({ name })
+    })
+
+    router.post('/_snapshots/:name/restore', (req, res) => {
+        const { name } = req.params
+        const snapshot = snapshots.get(name)
+
+        if (!snapshot) {
+            res.status(404).json({ message: `Unknown snapshot: ${name}` })
+            return
+        }
+
+        const restored = restore(snapshot)
+
+        if (restored.length > 0) {
+            db.write()
+        }
+
+        restored.forEach(({ collection, changes }) => onRestore(collection, changes))
+
+        res.json({ name, restored: restored.map(({ collection }) => collection) })
+    })
+
+    router.delete('/_snapshots/:name', (req, res) => {
+        const { name } = req.params
+
+        if (!snapshots.delete(name)) {
+            res.status(404).json({ message: `Unknown snapshot: ${name}` })
+            return
+        }
+
+        res.json({ name })
+    })
+
+    router.record = record
+
+    return router
+}
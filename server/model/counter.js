@@ -0,0 +1,9 @@
+const mongoose = require('mongoose')
+
+// Id sequences of the entity collections, one document per collection
+const counterSchema = new mongoose.Schema({
+    _id: { type: String },
+    seq: { type: Number }
+}, { versionKey: false })
+
+module.exports = mongoose.model("counter", counterSchema)
@@ -0,0 +1,150 @@
+const mongoose = require('mongoose')
+
+const text = { type: String }
+const links = { type: [String], default: undefined }
+
+// The six SWAPI collections, field for field like org.example.models. Ids
+// stay numeric like in db.json, and `_id` only serves as the insertion order
+// json-server lists entities in.
+//
+// Every collection has a unique index on `id`. `sorted` fields get indexes
+// ending in `_id` for either direction, so sorting on them keeps ties in
+// insertion order without sorting in memory, and `hash` fields a plain one.
+// Relationship fields that are looked up the other way round
+// (`/people?homeworld=/planets/1/`) are indexed too, as multikey indexes for
+// the lists.
+const COLLECTIONS = {
+    planets: {
+        fields: {
+            name: text,
+            rotation_period: text,
+            orbital_period: text,
+            diameter: text,
+            climate: text,
+            gravity: text,
+            terrain: text,
+            surface_water: text,
+            population: text,
+            residents: links,
+            films: links
+        },
+        indexes: { climate: 'hash', terrain: 'hash', name: 'sorted', residents: 'hash' }
+    },
+    people: {
+        fields: {
+            name: text,
+            height: text,
+            mass: text,
+            hair_color: text,
+            skin_color: text,
+            eye_color: text,
+            birth_year: text,
+            gender: text,
+            homeworld: text,
+            films: links,
+            species: links,
+            vehicles: links,
+            starships: links
+        },
+        indexes: { homeworld: 'hash', gender: 'hash', name: 'sorted', films: 'hash' }
+    },
+    films: {
+        fields: {
+            title: text,
+            episode_id: { type: Number },
+            opening_crawl: text,
+            director: text,
+            producer: text,
+            release_date: text,
+            characters: links,
+            planets: links,
+            starships: links,
+            vehicles: links,
+            species: links
+        },
+        indexes: { director: 'hash', episode_id: 'sorted', release_date: 'sorted', characters: 'hash' }
+    },
+    species: {
+        fields: {
+            name: text,
+            classification: text,
+            designation: text,
+            average_height: text,
+            skin_colors: text,
+            hair_colors: text,
+            eye_colors: text,
+            average_lifespan: text,
+            homeworld: text,
+            language: text,
+            people: links,
+            films: links
+        },
+        indexes: { homeworld: 'hash', classification: 'hash', name: 'sorted' }
+    },
+    vehicles: {
+        fields: {
+            name: text,
+            model: text,
+            manufacturer: text,
+            cost_in_credits: text,
+            length: text,
+            max_atmosphering_speed: text,
+            crew: text,
+            passengers: text,
+            cargo_capacity: text,
+            consumables: text,
+            vehicle_class: text,
+            pilots: links,
+            films: links
+        },
+        indexes: { vehicle_class: 'hash', name: 'sorted', pilots: 'hash' }
+    },
+    starships: {
+        fields: {
+            name: text,
+            model: text,
+            manufacturer: text,
+            cost_in_credits: text,
+            length: text,
+            max_atmosphering_speed: text,
+            crew: text,
+            passengers: text,
+            cargo_capacity: text,
+            consumables: text,
+            hyperdrive_rating: text,
+            MGLT: text,
+            starship_class: text,
+            pilots: links,
+            films: links
+        },
+        indexes: { starship_class: 'hash', name: 'sorted', pilots: 'hash' }
+    }
+}
+
+const model = (collection, { fields, indexes }) => {
+    const schema = new mongoose.Schema({
+        id: { type: Number, required: true, unique: true },
+        ...fields,
+        created: text,
+        edited: text
+    }, {
+        // `id` is a real field here, not mongoose's virtual for `_id`
+        id: false,
+        versionKey: false,
+        strict: 'throw'
+    })
+
+    for (const [field, type] of Object.entries(indexes)) {
+        if (type === 'sorted') {
+            // Descending sorts keep ties in ascending insertion order too
+            schema.index({ [field]: 1, _id: 1 })
+            schema.index({ [field]: -1, _id: 1 })
+        } else {
+            schema.index({ [field]: 1 })
+        }
+    }
+
+    return mongoose.model(collection, schema, collection)
+}
+
+module.exports = Object.fromEntries(Object.entries(COLLECTIONS).map(([collection, definition]) => [collection, model(collection, definition)]))
@@ -0,0 +1,362 @@
+const fs = require('fs')
+const path = require('path')
+
+const WRITES = ['POST', 'PUT', 'PATCH', 'DELETE']
+const DURABILITY = ['fsync', 'write', 'none']
+
+// Persistence for json-server that appends every write to an operation log
+// instead of rewriting the whole of db.json each time.
+//
+// The database lives in `<dir>/snapshot.json` plus `<dir>/oplog.ndjson`, one
+// JSON operation per line:
+//
+//   { "op": "put", "collection": "planets", "id": 12, "data": { ... } }
+//   { "op": "delete", "collection": "planets", "id": 12 }
+//   { "op": "replace", "collection": "planets", "data": [ ... ] }
+//   { "op": "batch", "operations": [ ... ] }
+//
+// A batch holds the operations of one bulk write (middleware/bulk.js), or a
+// DELETE and the entities json-server deleted with it, on one line, so a crash
+// leaves all of them in the log or none.
+//
+// On startup the snapshot (or the source file, the first time) is loaded and
+// the log replayed over it. Operations are idempotent, so replaying one that
+// is already in the snapshot does no harm, and a torn line at the end of the
+// log is cut off. Once the log outgrows `compactBytes` the state is written to
+// a new snapshot and the log starts over.
+//
+// Writes arriving while the log is being flushed wait for the next flush, so
+// concurrent writes share one write and one fsync (group commit).
+// `durability` decides when the response is sent:
+//
+//   fsync  after the batch holding the write is on disk (the default)
+//   write  after it is written to the OS, which survives the process crashing
+//          but not the machine
+//   none   straight away, the batch following shortly after
+module.exports = ({ dir = 'data', durability = 'fsync', groupCommitMs = 0, compactBytes = 64 * 1024 * 1024 } = {}) => {
+    if (!DURABILITY.includes(durability)) {
+        throw new Error(`durability must be one of ${DURABILITY.join(', ')}, not ${durability}`)
+    }
+
+    const snapshotFile = path.join(dir, 'snapshot.json')
+    const logFile = path.join(dir, 'oplog.ndjson')
+
+    const stats = { operations: 0, batches: 0, syncs: 0, bytes: 0, compactions: 0 }
+
+    let db
+    let fd
+    let logBytes = 0
+    // { line, resolve, reject } waiting for the next flush
+    let pending = []
+    let flushing = false
+    let scheduled = false
+
+    // Replays into one Map per collection, so every operation costs the same
+    // however large the collection is. Maps keep insertion order, like
+    // json-server keeps the order of the array.
+    const replay = (state, operations) => {
+        const collections = {}
+
+        const collection = (name) => {
+            if (collections[name] === undefined) {
+                collections[name] = new Map((state[name] || []).map(item => [String(item.id), item]))
+            }
+
+            return collections[name]
+        }
+
+        const apply = ({ op, collection: name, id, data, operations }) => {
+            if (op === 'put') {
+                collection(name).set(String(id), data)
+            } else if (op === 'delete') {
+                collection(name).delete(String(id))
+            } else if (op === 'replace') {
+                delete collections[name]
+
+                if (data === null) {
+                    delete state[name]
+                } else {
+                    state[name] = data
+                }
+            } else if (op === 'batch') {
+                operations.forEach(apply)
+            }
+        }
+
+        operations.forEach(apply)
+
+        for (const [name, items] of Object.entries(collections)) {
+            state[name] = [...items.values()]
+        }
+
+        return state
+    }
+
+    // The operations of the log, cutting off whatever follows the last
+    // complete one
+    const readLog = () => {
+        if (!fs.existsSync(logFile)) {
+            return []
+        }
+
+        const text = fs.readFileSync(logFile, 'utf8')
+        const operations = []
+        let offset = 0
+
+        while (offset < text.length) {
+            const end = text.indexOf('\n', offset)
+
+            if (end < 0) {
+                break
+            }
+
+            try {
+                operations.push(JSON.parse(text.slice(offset, end)))
+            } catch (e) {
+                break
+            }
+
+            offset = end + 1
+        }
+
+        if (offset < text.length) {
+            console.warn(`Cutting ${text.length - offset} characters off the end of ${logFile}`)
+            fs.truncateSync(logFile, Buffer.byteLength(text.slice(0, offset)))
+        }
+
+        return operations
+    }
+
+    // The state to hand to jsonServer.router(), read from the snapshot and
+    // the log, or from `source` when there are none yet
+    const load = (source) => {
+        fs.mkdirSync(dir, { recursive: true })
+
+        const state = JSON.parse(fs.readFileSync(fs.existsSync(snapshotFile) ? snapshotFile : source, 'utf8'))
+        const operations = readLog()
+
+        fd = fs.openSync(logFile, 'a')
+        logBytes = fs.fstatSync(fd).size
+
+        console.log(`Replayed ${operations.length} operations from ${logFile}`)
+        return replay(state, operations)
+    }
+
+    // The lowdb instance of the router, whose state is the one to persist
+    const attach = (instance) => {
+        db = instance
+    }
+
+    const writeAll = (buffer, offset, callback) => {
+        fs.write(fd, buffer, offset, buffer.length - offset, null, (err, written) => {
+            if (err || offset + written === buffer.length) {
+                callback(err)
+                return
+            }
+
+            writeAll(buffer, offset + written, callback)
+        })
+    }
+
+    const schedule = () => {
+        if (flushing || scheduled || pending.length === 0) {
+            return
+        }
+
+        scheduled = true
+
+        if (groupCommitMs > 0) {
+            setTimeout(flush, groupCommitMs)
+        } else {
+            setImmediate(flush)
+        }
+    }
+
+    const flush = () => {
+        scheduled = false
+        flushing = true
+
+        const batch = pending
+        pending = []
+
+        const buffer = Buffer.from(batch.map(entry => entry.line).join(''))
+
+        writeAll(buffer, 0, (err) => {
+            if (err || durability !== 'fsync') {
+                flushed(batch, buffer, err)
+                return
+            }
+
+            fs.fdatasync(fd, (err) => {
+                stats.syncs++
+                flushed(batch, buffer, err)
+            })
+        })
+    }
+
+    const flushed = (batch, buffer, err) => {
+        logBytes += buffer.length
+        stats.batches++
+        stats.bytes += buffer.length
+        batch.forEach(entry => err ? entry.reject(err) : entry.resolve())
+        flushing = false
+
+        if (logBytes > compactBytes) {
+            compact()
+        } else {
+            schedule()
+        }
+    }
+
+    // Written to a temporary file and renamed over the old snapshot, so a
+    // crash leaves either snapshot in place with a log that still applies
+    const compact = () => {
+        flushing = true
+
+        const json = JSON.stringify(db.getState())
+        const temporary = `${snapshotFile}.tmp`
+
+        fs.open(temporary, 'w', (err, snapshot) => {
+            const fail = (err) => {
+                console.error(`Compaction failed, keeping the log: ${err.message}`)
+                compactBytes *= 2
+                flushing = false
+                schedule()
+            }
+
+            if (err) {
+                fail(err)
+                return
+            }
+
+            fs.writeFile(snapshot, json, (err) => {
+                fs.fsync(snapshot, (syncErr) => {
+                    fs.close(snapshot, () => {
+                        if (err || syncErr) {
+                            fail(err || syncErr)
+                            return
+                        }
+
+                        fs.rename(temporary, snapshotFile, (err) => {
+                            if (err) {
+                                fail(err)
+                                return
+                            }
+
+                            fs.closeSync(fd)
+                            fd = fs.openSync(logFile, 'w')
+                            logBytes = 0
+                            stats.compactions++
+                            flushing = false
+                            schedule()
+                        })
+                    })
+                })
+            })
+        })
+    }
+
+    // Resolves once the operation is as durable as configured
+    const append = (operation) => new Promise((resolve, reject) => {
+        stats.operations++
+
+        if (durability === 'none') {
+            pending.push({ line: `${JSON.stringify(operation)}\n`, resolve: () => {}, reject: (err) => console.error(err) })
+            resolve()
+        } else {
+            pending.push({ line: `${JSON.stringify(operation)}\n`, resolve, reject })
+        }
+
+        schedule()
+    })
+
+    // Notes the entities json-server deletes along with `collection/id`, those
+    // whose foreign key (`planetId`) no longer finds anything, before they are
+    // gone. Goes in front of the router.
+    const cascades = (req, res, next) => {
+        const [collection, id, ...rest] = req.path.split('/').filter(Boolean)
+        const state = db.getState()
+
+        if (req.method === 'DELETE' && id !== undefined && rest.length === 0 && Array.isArray(state[collection]) && db._ && db._.getRemovable) {
+            const without = { ...state, [collection]: state[collection].filter(item => String(item.id) !== String(id)) }
+            res.locals.cascades = db._.getRemovable(without, { foreignKeySuffix: 'Id' })
+        }
+
+        next()
+    }
+
+    const replaceOf = (collection) => {
+        const data = db.getState()[collection]
+        return { op: 'replace', collection, data: data === undefined ? null : data }
+    }
+
+    // The operation json-server just carried out, read off the request and
+    // its result. Nested routes (`POST /films/1/people`) write to the last
+    // collection, and a DELETE takes the entities `cascades` noted with it.
+    // Writes to anything else (singular resources) are logged as the whole
+    // collection.
+    const operationOf = (req, res) => {
+        const [collection, id, ...rest] = req.path.split('/').filter(Boolean)
+        const target = rest.length > 0 ? rest[0] : collection
+        const data = res.locals.data
+
+        if (rest.length > 1 || !Array.isArray(db.getState()[target])) {
+            return replaceOf(target)
+        }
+
+        if (req.method === 'DELETE' && rest.length === 0 && id !== undefined) {
+            const deletes = [{ name: collection, id }, ...(res.locals.cascades || [])]
+                .map(({ name, id }) => ({ op: 'delete', collection: name, id }))
+
+            return deletes.length === 1 ? deletes[0] : { op: 'batch', operations: deletes }
+        }
+
+        if (data && data.id !== undefined) {
+            return { op: 'put', collection: target, id: data.id, data }
+        }
+
+        return replaceOf(target)
+    }
+
+    // Wraps the router's render, holding back the response to a successful
+    // write until the write is logged
+    const render = (inner) => (req, res) => {
+        if (!WRITES.includes(req.method) || res.statusCode >= 400) {
+            inner(req, res)
+            return
+        }
+
+        append(operationOf(req, res)).then(
+            () => inner(req, res),
+            (err) => res.status(500).json({ message: `The write was not persisted: ${err.message}` }))
+    }
+
+    // For writes that bypass json-server, like restoring a snapshot. With
+    // `changes`, a Map(id -> entity, or null when it was removed), only those
+    // entities are logged, as one batch; without, the whole collection.
+    const replaced = (collection, changes) => {
+        if (changes) {
+            return append({
+                op: 'batch',
+                operations: [...changes].map(([id, data]) => data
+                    ? { op: 'put', collection, id: data.id, data }
+                    : { op: 'delete', collection, id })
+            })
+        }
+
+        return append(replaceOf(collection))
+    }
+
+    // Writes out whatever is still pending, on shutdown
+    const close = () => {
+        const buffer = Buffer.from(pending.map(entry => entry.line).join(''))
+
+        fs.writeSync(fd, buffer)
+        fs.fsyncSync(fd)
+        fs.closeSync(fd)
+        pending.forEach(entry => entry.resolve())
+        pending = []
+    }
+
+    return { load, attach, cascades, append, render, replaced, close, stats: () => ({ ...stats, logBytes }) }
+}
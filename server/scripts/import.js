@@ -0,0 +1,53 @@
+// One-shot import of db.json (or another file in its shape, see
+// org.example.data.DatasetGenerator) into the Mongo collections of
+// model/entities.js, replacing what they held:
+//
+//   npm run import -- [file]
+//
+// Entities go in through the driver in unordered batches, and the indexes
+// are built once at the end instead of on every insert.
+require('dotenv').config()
+const fs = require('fs')
+const mongoose = require('mongoose')
+const entities = require('../model/entities')
+const Counter = require('../model/counter')
+
+const BATCH_SIZE = 1000
+
+const importFile = async (file) => {
+    const db = JSON.parse(fs.readFileSync(file, 'utf8'))
+
+    for (const [collection, model] of Object.entries(entities)) {
+        const items = db[collection] || []
+        const start = Date.now()
+
+        await model.collection.drop().catch(e => {
+            // Nothing to drop the first time
+            if (e.codeName !== 'NamespaceNotFound') {
+                throw e
+            }
+        })
+
+        for (let i = 0; i < items.length; i += BATCH_SIZE) {
+            await model.collection.insertMany(items.slice(i, i + BATCH_SIZE).map(item => ({ ...item, id: Number(item.id) })), { ordered: false })
+        }
+
+        await model.syncIndexes()
+        console.log(`Imported ${items.length} ${collection} in ${Date.now() - start} ms`)
+    }
+
+    // Sequences start over from the imported ids
+    await Counter.deleteMany({})
+}
+
+module.exports = importFile
+
+if (require.main === module) {
+    mongoose.connect(process.env.MONGO_URI)
+        .then(() => importFile(process.argv[2] || 'db.json'))
+        .then(() => mongoose.disconnect())
+        .catch(e => {
+            console.error(e)
+            process.exit(1)
+        })
+}
@@ -0,0 +1,36 @@
+// Runs the server with ENTITY_STORE=mongo against a throwaway in-memory Mongo
+// holding db.json and the `qli` user, so the Mongo mode can be tried and
+// tested without a database:
+//
+//   npm install --no-save mongodb-memory-server
+//   npm run serve:memory
+//
+// The data is gone when the server stops.
+let MongoMemoryServer
+
+try {
+    ({ MongoMemoryServer } = require('mongodb-memory-server'))
+} catch (e) {
+    console.error('mongodb-memory-server is not installed, run: npm install --no-save mongodb-memory-server')
+    process.exit(1)
+}
+
+const main = async () => {
+    const mongo = await MongoMemoryServer.create()
+
+    // dotenv leaves variables that are already set alone
+    process.env.MONGO_URI = mongo.getUri()
+    process.env.ENTITY_STORE = 'mongo'
+
+    const mongoose = require('mongoose')
+    await mongoose.connect(process.env.MONGO_URI)
+    await require('./import')(process.argv[2] || 'db.json')
+    await require('../model/user').create({ name: 'qli' })
+
+    require('../server')
+}
+
+main().catch(e => {
+    console.error(e)
+    process.exit(1)
+})
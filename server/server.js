@@ -1,52 +1,138 @@
 const jsonServer = require('json-server')
+require('dotenv').config()
+const oplog = require('./persistence/oplog')
 const server = jsonServer.create()
-const router = jsonServer.router('db.json')
+// PERSISTENCE=oplog logs writes instead of rewriting db.json on each of them,
+// see persistence/oplog.js
+const persistence = process.env.PERSISTENCE === 'oplog' && oplog({
+    dir: process.env.OPLOG_DIR,
+    durability: process.env.OPLOG_DURABILITY,
+    groupCommitMs: Number(process.env.OPLOG_GROUP_COMMIT_MS || 0)
+})
+const router = jsonServer.router(persistence ? persistence.load('db.json') : 'db.json')
 const middlewares = jsonServer.defaults()
-require('dotenv').config()
 require('./config/database').connect()
 const express = require('express')
 const User = require('./model/user')
-const jwt = require('jsonwebtoken')
+const auth = require('./middleware/auth')
+const sequence = require('./middleware/sequence')
+const fingerprint = require('./middleware/fingerprint')
+const snapshot = require('./middleware/snapshot')
+const jsonapi = require('./middleware/jsonapi')
+const indexes = require('./middleware/indexes')
+const mongo = require('./middleware/mongo')
+const cache = require('./middleware/cache')
+const compression = require('./middleware/compression')
+const formats = require('./middleware/formats')
+const exporter = require('./middleware/export')
+const bulk = require('./middleware/bulk')
 
 const PORT = process.env.PORT
 
-let user
+// Secondary indexes per collection and field, see middleware/indexes.js
+const INDEXES = {
+    planets: { climate: 'hash', terrain: 'hash', name: 'sorted' },
+    people: { homeworld: 'hash', gender: 'hash', name: 'sorted' },
+    films: { director: 'hash', episode_id: 'sorted', release_date: 'sorted' },
+    species: { homeworld: 'hash', classification: 'hash', name: 'sorted' },
+    vehicles: { vehicle_class: 'hash', name: 'sorted' },
+    starships: { starship_class: 'hash', name: 'sorted' }
+}
 
 server.use(middlewares)
-server.use(express.json())
-
-// Auth
-server.get("/auth", async (req, res) => {
-    try {
-        user = await User.findOne({name: "qli"})
-        console.log
-
-        const token = jwt.sign(
-            { user_id: user._id },
-            process.env.TOKEN,
-            {
-                expiresIn: "5h"
+// Room for bulk writes of a few thousand entities
+server.use(express.json({ limit: '16mb' }))
+server.use(auth(User, { secret: process.env.TOKEN }))
+// Brotli or gzip above COMPRESSION_THRESHOLD bytes, see middleware/compression.js
+server.use(compression({ threshold: Number(process.env.COMPRESSION_THRESHOLD || 1024) }))
+// CBOR, MessagePack or Smile instead of JSON when asked for, see middleware/formats.js
+server.use(formats())
+
+const fingerprints = fingerprint(router.db)
+const documents = jsonapi(router.db)
+// Serialized responses for single entities, see middleware/cache.js.
+// RESPONSE_CACHE_BYTES=0 turns it off.
+const responses = cache(router.db, { maxBytes: Number(process.env.RESPONSE_CACHE_BYTES || 64 * 1024 * 1024) })
+
+if (process.env.ENTITY_STORE === 'mongo') {
+    // The collections are served from Mongo, see model/entities.js. Sequences
+    // come from Mongo too, while snapshots, fingerprints, indexes and the
+    // response cache only know db.json (or this server's writes) and are left out.
+    const entities = require('./model/entities')
+
+    server.use(exporter(exporter.fromModels(entities)))
+    server.use(documents)
+    server.use(mongo(entities, { render: documents.render }))
+} else {
+    const sequences = sequence(router.db)
+    const searches = indexes(router.db, INDEXES, { render: documents.render })
+
+    server.use(sequences)
+    // NDJSON exports of whole collections, see middleware/export.js
+    server.use(exporter(exporter.fromDb(router.db)))
+    server.use(fingerprints)
+    // Restores hand over the entities they put back, or null when the whole
+    // collection changed, see middleware/snapshot.js
+    const snapshots = snapshot(router.db, {
+        onRestore: (collection, changes) => {
+            documents.invalidate(collection)
+
+            if (changes) {
+                changes.forEach((item, id) => {
+                    fingerprints.invalidate(collection, id, item)
+                    responses.invalidate(collection, id)
+                    searches.invalidate(collection, id, item)
+                })
+            } else {
+                fingerprints.invalidate(collection)
+                responses.invalidate(collection)
+                searches.invalidate(collection)
             }
-        )
 
-        user.token = token
+            if (persistence) {
+                persistence.replaced(collection, changes).catch(err => console.error(err))
+            }
+        }
+    })
 
-        res.status(201).json(user)
-    } catch(e) {
-        console.log(e)
-    }
-})
+    server.use(snapshots)
+    // Many writes in one request, see middleware/bulk.js. The routers below
+    // do not see them, so they are told what changed.
+    server.use(bulk(router.db, {
+        assign: sequences.assign,
+        record: snapshots.record,
+        onWrite: (collection, ids) => {
+            documents.invalidate(collection)
 
-server.use(async (req, res, next) => {
-    const { token } = req.headers
+            ids.forEach(id => {
+                fingerprints.invalidate(collection, id)
+                responses.invalidate(collection, id)
+                searches.invalidate(collection, id)
+            })
+        },
+        persist: persistence ? operations => persistence.append({ op: 'batch', operations }) : undefined
+    }))
 
-    if (user.token != token) {
-        res.status(401).json({message: "Authentication failed"})
-        return
+    if (responses.stats().maxBytes > 0) {
+        server.use(responses)
     }
 
-    next()
-})
+    server.use(documents)
+    server.use(searches)
+}
+router.render = persistence ? persistence.render(documents.render) : documents.render
+
+if (persistence) {
+    persistence.attach(router.db)
+    server.use(persistence.cascades)
+
+    for (const signal of ['SIGINT', 'SIGTERM']) {
+        process.on(signal, () => {
+            persistence.close()
+            process.exit(0)
+        })
+    }
+}
 
 server.use(router)
 server.listen(PORT, () => {
@@ -0,0 +1,100 @@
+const fs = require('fs')
+const os = require('os')
+const path = require('path')
+const express = require('express')
+const jsonServer = require('json-server')
+const sequence = require('../middleware/sequence')
+const fingerprint = require('../middleware/fingerprint')
+const snapshot = require('../middleware/snapshot')
+const bulk = require('../middleware/bulk')
+const oplog = require('../persistence/oplog')
+
+// The db.json half of server.js, over a copy of db.json in a temporary
+// directory and on an ephemeral port, without auth, caches or indexes. With
+// `persistence` writes go to an op log in `<dir>/data`.
+const start = async ({ persistence = false } = {}) => {
+    const dir = fs.mkdtempSync(path.join(os.tmpdir(), 'server-test-'))
+    const file = path.join(dir, 'db.json')
+    fs.copyFileSync(path.join(__dirname, '..', 'db.json'), file)
+
+    const store = persistence && oplog({ dir: path.join(dir, 'data') })
+    const router = jsonServer.router(store ? store.load(file) : file)
+    const sequences = sequence(router.db)
+    const fingerprints = fingerprint(router.db)
+    const snapshots = snapshot(router.db, {
+        onRestore: (collection, changes) => {
+            if (changes) {
+                changes.forEach((item, id) => fingerprints.invalidate(collection, id, item))
+            } else {
+                fingerprints.invalidate(collection)
+            }
+
+            if (store) {
+                store.replaced(collection, changes)
+            }
+        }
+    })
+
+    const app = express()
+
+    app.use(express.json({ limit: '16mb' }))
+    app.use(sequences)
+    app.use(fingerprints)
+    app.use(snapshots)
+    app.use(bulk(router.db, {
+        assign: sequences.assign,
+        record: snapshots.record,
+        onWrite: (collection, ids) => ids.forEach(id => fingerprints.invalidate(collection, id)),
+        persist: store ? operations => store.append({ op: 'batch', operations }) : undefined
+    }))
+
+    if (store) {
+        store.attach(router.db)
+        app.use(store.cascades)
+        router.render = store.render((req, res) => res.jsonp(res.locals.data))
+    }
+
+    app.use(router)
+
+    const listener = await new Promise(resolve => {
+        const server = app.listen(0, () => resolve(server))
+    })
+    const base = `http://localhost:${listener.address().port}`
+    let closed = false
+
+    // { status, body } of a JSON request
+    const request = async (method, url, body) => {
+        const res = await fetch(base + url, {
+            method,
+            headers: body === undefined ? {} : { 'Content-Type': 'application/json' },
+            body: body === undefined ? undefined : JSON.stringify(body)
+        })
+        const text = await res.text()
+
+        return { status: res.status, body: text ? JSON.parse(text) : undefined }
+    }
+
+    // Stops serving, and writes out what is left of the op log
+    const close = async () => {
+        if (closed) {
+            return
+        }
+
+        closed = true
+        listener.closeAllConnections()
+        await new Promise(resolve => listener.close(resolve))
+
+        if (store) {
+            store.close()
+        }
+    }
+
+    const stop = async () => {
+        await close()
+        fs.rmSync(dir, { recursive: true, force: true })
+    }
+
+    return { request, close, stop, db: router.db, dir, file }
+}
+
+module.exports = { start }
@@ -0,0 +1,50 @@
+const test = require('node:test')
+const assert = require('node:assert')
+const { start } = require('./app')
+
+test('a batch is written in order', async (t) => {
+    const app = await start()
+    t.after(app.stop)
+
+    const response = await app.request('POST', '/planets/_bulk', [
+        { op: 'create', data: { name: 'Numbered' } },
+        { op: 'create', data: { id: 1000, name: 'Chosen' } },
+        { op: 'update', id: 1000, data: { climate: 'arid' } },
+        { op: 'replace', id: 1, data: { name: 'Replaced' } },
+        { op: 'delete', id: 2 }
+    ])
+
+    assert.equal(response.status, 200)
+    assert.deepEqual(response.body.map(({ status }) => status), [201, 201, 200, 200, 200])
+
+    const numbered = response.body[0].id
+    assert.equal((await app.request('GET', `/planets/${numbered}`)).body.name, 'Numbered')
+    assert.deepEqual((await app.request('GET', '/planets/1000')).body, { id: 1000, name: 'Chosen', climate: 'arid' })
+    assert.deepEqual((await app.request('GET', '/planets/1')).body, { id: 1, name: 'Replaced' })
+    assert.equal((await app.request('GET', '/planets/2')).status, 404)
+})
+
+test('a batch with a failed write writes nothing', async (t) => {
+    const app = await start()
+    t.after(app.stop)
+
+    const before = (await app.request('GET', '/planets')).body
+    const response = await app.request('POST', '/planets/_bulk', [
+        { op: 'update', id: 1, data: { name: 'Not written' } },
+        { op: 'create', data: { id: 1, name: 'Duplicate' } },
+        { op: 'delete', id: 99999 }
+    ])
+
+    assert.equal(response.status, 409)
+    assert.deepEqual(response.body.map(({ status }) => status), [424, 409, 404])
+    assert.deepEqual((await app.request('GET', '/planets')).body, before)
+})
+
+test('malformed batches are refused', async (t) => {
+    const app = await start()
+    t.after(app.stop)
+
+    assert.equal((await app.request('POST', '/planets/_bulk', { op: 'create' })).status, 400)
+    assert.equal((await app.request('POST', '/planets/_bulk', [{ op: 'upsert' }])).status, 400)
+    assert.equal((await app.request('POST', '/droids/_bulk', [])).status, 404)
+})
@@ -0,0 +1,64 @@
+const test = require('node:test')
+const assert = require('node:assert')
+const { start } = require('./app')
+
+test('the fingerprint follows the content', async (t) => {
+    const app = await start()
+    t.after(app.stop)
+
+    const before = (await app.request('GET', '/_fingerprint')).body
+    const tatooine = (await app.request('GET', '/planets/1')).body
+
+    await app.request('PATCH', '/planets/1', { name: 'Changed' })
+
+    const changed = (await app.request('GET', '/_fingerprint')).body
+    assert.notEqual(changed.hash, before.hash)
+    assert.notEqual(changed.collections.planets.hash, before.collections.planets.hash)
+    assert.equal(changed.collections.people.hash, before.collections.people.hash)
+
+    // Changing it back gives back the same hashes, whatever happened in between
+    await app.request('PATCH', '/planets/1', { name: tatooine.name })
+
+    const after = (await app.request('GET', '/_fingerprint')).body
+    assert.deepEqual(after, before)
+})
+
+test('the diff names the entities written since a hash', async (t) => {
+    const app = await start()
+    t.after(app.stop)
+
+    const from = (await app.request('GET', '/_fingerprint/planets')).body.hash
+
+    await app.request('PATCH', '/planets/1', { name: 'Changed' })
+    await app.request('DELETE', '/planets/2')
+    const created = (await app.request('POST', '/planets', { name: 'Created' })).body
+
+    const diff = await app.request('GET', `/_fingerprint/planets/diff?from=${from}`)
+
+    assert.equal(diff.status, 200)
+    assert.deepEqual(diff.body.changed, ['1'])
+    assert.deepEqual(diff.body.removed, ['2'])
+    assert.deepEqual(diff.body.added, [String(created.id)])
+})
+
+test('bulk writes and restores change the fingerprint', async (t) => {
+    const app = await start()
+    t.after(app.stop)
+
+    const before = (await app.request('GET', '/_fingerprint')).body
+    await app.request('POST', '/_snapshots/clean')
+
+    await app.request('POST', '/planets/_bulk', [{ op: 'update', id: 1, data: { name: 'Bulk' } }])
+    assert.notEqual((await app.request('GET', '/_fingerprint')).body.hash, before.hash)
+
+    await app.request('POST', '/_snapshots/clean/restore')
+    assert.deepEqual((await app.request('GET', '/_fingerprint')).body, before)
+})
+
+test('unknown hashes and collections are refused', async (t) => {
+    const app = await start()
+    t.after(app.stop)
+
+    assert.equal((await app.request('GET', '/_fingerprint/planets/diff?from=unknown')).status, 410)
+    assert.equal((await app.request('GET', '/_fingerprint/droids')).status, 404)
+})
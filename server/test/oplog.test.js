@@ -0,0 +1,66 @@
+const test = require('node:test')
+const assert = require('node:assert')
+const path = require('path')
+const { start } = require('./app')
+const oplog = require('../persistence/oplog')
+
+// The state a fresh server would start with from the log
+const reload = (app) => {
+    const store = oplog({ dir: path.join(app.dir, 'data') })
+    const state = store.load(app.file)
+
+    store.close()
+    return state
+}
+
+test('replaying the log gives back every write', async (t) => {
+    const app = await start({ persistence: true })
+    t.after(app.stop)
+
+    await app.request('PATCH', '/planets/1', { name: 'Changed' })
+    await app.request('PUT', '/people/1', { name: 'Replaced' })
+    await app.request('POST', '/planets', { name: 'Created' })
+    await app.request('DELETE', '/planets/2')
+    await app.request('POST', '/planets/_bulk', [
+        { op: 'create', data: { name: 'Bulk' } },
+        { op: 'delete', id: 3 }
+    ])
+
+    const expected = JSON.parse(JSON.stringify(app.db.getState()))
+    await app.close()
+
+    assert.deepEqual(reload(app), expected)
+})
+
+test('nested creates and cascading deletes are logged', async (t) => {
+    const app = await start({ persistence: true })
+    t.after(app.stop)
+
+    // json-server sets filmId on the person, and deletes it along with the film
+    const extra = (await app.request('POST', '/films/1/people', { name: 'Extra' })).body
+    assert.equal(extra.filmId, '1')
+
+    await app.request('DELETE', '/films/1')
+    assert.equal((await app.request('GET', `/people/${extra.id}`)).status, 404)
+
+    const expected = JSON.parse(JSON.stringify(app.db.getState()))
+    await app.close()
+
+    const state = reload(app)
+    assert.deepEqual(state, expected)
+    assert.equal(state.people.some(person => person.id === extra.id), false)
+})
+
+test('restoring a snapshot is logged', async (t) => {
+    const app = await start({ persistence: true })
+    t.after(app.stop)
+
+    const before = JSON.parse(JSON.stringify(app.db.getState()))
+    await app.request('POST', '/_snapshots/clean')
+    await app.request('PATCH', '/planets/1', { name: 'Changed' })
+    await app.request('DELETE', '/people/1')
+    await app.request('POST', '/_snapshots/clean/restore')
+    await app.close()
+
+    assert.deepEqual(reload(app), before)
+})
@@ -0,0 +1,30 @@
+const test = require('node:test')
+const assert = require('node:assert')
+const { start } = require('./app')
+
+test('creates without an id get the next id after the reserved ones', async (t) => {
+    const app = await start()
+    t.after(app.stop)
+
+    const before = await app.request('GET', '/_count/planets')
+    const reserved = await app.request('POST', '/_seq/planets?size=3')
+
+    assert.equal(reserved.status, 201)
+    assert.equal(reserved.body.to - reserved.body.from, 2)
+
+    const created = await app.request('POST', '/planets', { name: 'Sequenced' })
+
+    assert.equal(created.status, 201)
+    assert.equal(created.body.id, reserved.body.to + 1)
+    assert.equal((await app.request('GET', '/_count/planets')).body.count, before.body.count + 1)
+})
+
+test('reservations are checked', async (t) => {
+    const app = await start()
+    t.after(app.stop)
+
+    assert.equal((await app.request('POST', '/_seq/planets?size=0')).status, 400)
+    assert.equal((await app.request('POST', '/_seq/planets?size=10001')).status, 400)
+    assert.equal((await app.request('POST', '/_seq/droids')).status, 404)
+    assert.equal((await app.request('GET', '/_count/droids')).status, 404)
+})
@@ -0,0 +1,90 @@
+const test = require('node:test')
+const assert = require('node:assert')
+const { start } = require('./app')
+
+const collections = async (app) => ({
+    planets: (await app.request('GET', '/planets')).body,
+    people: (await app.request('GET', '/people')).body
+})
+
+test('restoring undoes updates and creates in place', async (t) => {
+    const app = await start()
+    t.after(app.stop)
+
+    const before = await collections(app)
+    assert.equal((await app.request('POST', '/_snapshots/clean')).status, 201)
+
+    await app.request('PATCH', '/planets/1', { name: 'Changed' })
+    await app.request('PUT', '/people/1', { name: 'Replaced' })
+    await app.request('POST', '/planets', { name: 'Created' })
+
+    const restore = await app.request('POST', '/_snapshots/clean/restore')
+
+    assert.equal(restore.status, 200)
+    assert.deepEqual(restore.body.restored.sort(), ['people', 'planets'])
+    assert.deepEqual(await collections(app), before)
+})
+
+test('restoring puts deleted entities back where they were', async (t) => {
+    const app = await start()
+    t.after(app.stop)
+
+    const before = await collections(app)
+    await app.request('POST', '/_snapshots/clean')
+
+    await app.request('DELETE', '/planets/2')
+    await app.request('PATCH', '/planets/3', { name: 'Changed' })
+    await app.request('POST', '/planets', { name: 'Created' })
+    await app.request('DELETE', '/planets/1')
+
+    await app.request('POST', '/_snapshots/clean/restore')
+    assert.deepEqual(await collections(app), before)
+})
+
+test('nested snapshots restore their own state', async (t) => {
+    const app = await start()
+    t.after(app.stop)
+
+    const first = await collections(app)
+    await app.request('POST', '/_snapshots/first')
+    await app.request('PATCH', '/planets/1', { name: 'First' })
+    await app.request('DELETE', '/people/2')
+
+    const second = await collections(app)
+    await app.request('POST', '/_snapshots/second')
+    await app.request('PATCH', '/planets/1', { name: 'Second' })
+    await app.request('POST', '/people', { name: 'Created' })
+
+    await app.request('POST', '/_snapshots/second/restore')
+    assert.deepEqual(await collections(app), second)
+
+    await app.request('POST', '/_snapshots/first/restore')
+    assert.deepEqual(await collections(app), first)
+})
+
+test('bulk writes are restored too', async (t) => {
+    const app = await start()
+    t.after(app.stop)
+
+    const before = await collections(app)
+    await app.request('POST', '/_snapshots/clean')
+
+    const written = await app.request('POST', '/planets/_bulk', [
+        { op: 'create', data: { name: 'Bulk' } },
+        { op: 'update', id: 1, data: { name: 'Bulk update' } },
+        { op: 'delete', id: 2 }
+    ])
+
+    assert.equal(written.status, 200)
+
+    await app.request('POST', '/_snapshots/clean/restore')
+    assert.deepEqual(await collections(app), before)
+})
+
+test('unknown snapshots are 404', async (t) => {
+    const app = await start()
+    t.after(app.stop)
+
+    assert.equal((await app.request('POST', '/_snapshots/missing/restore')).status, 404)
+    assert.equal((await app.request('DELETE', '/_snapshots/missing')).status, 404)
+})
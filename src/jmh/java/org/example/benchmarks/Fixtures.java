@@ -0,0 +1,110 @@
+package org.example.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.github.jasminb.jsonapi.annotations.Type;
+import io.restassured.common.mapper.DataToDeserialize;
+import io.restassured.mapper.ObjectMapperDeserializationContext;
+import org.example.models.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Payloads taken from {@code db.json} ({@code -Dapi.db=<path>} to use another fixture), in the shapes the
+ * benchmarks deserialize.
+ */
+final class Fixtures {
+    static final Map<String, Class<?>> MODELS = Map.of(
+            "planets", Planet.class,
+            "people", Person.class,
+            "films", Film.class,
+            "species", Species.class,
+            "vehicles", Vehicle.class,
+            "starships", Starship.class);
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private Fixtures() {
+    }
+
+    static ArrayNode collection(String name) throws IOException {
+        var db = mapper.readTree(Path.of(System.getProperty("api.db", "server/db.json")).toFile());
+        return (ArrayNode) db.get(name);
+    }
+
+    // json-server returns numeric ids, JSON:API wants them as strings outside of the attributes
+    static ObjectNode jsonApiResource(String name, JsonNode entity) {
+        var attributes = ((ObjectNode) entity).deepCopy();
+        attributes.remove("id");
+
+        var resource = mapper.createObjectNode()
+                .put("type", MODELS.get(name).getAnnotation(Type.class).value())
+                .put("id", entity.get("id").asText());
+        resource.set("attributes", attributes);
+        return resource;
+    }
+
+    static byte[] jsonApiDocument(String name, JsonNode entity) throws IOException {
+        var document = mapper.createObjectNode();
+        document.set("data", jsonApiResource(name, entity));
+        return mapper.writeValueAsBytes(document);
+    }
+
+    static byte[] jsonApiCollectionDocument(String name, ArrayNode entities) throws IOException {
+        var document = mapper.createObjectNode();
+        var data = document.putArray("data");
+        entities.forEach(entity -> data.add(jsonApiResource(name, entity)));
+        return mapper.writeValueAsBytes(document);
+    }
+
+    static String json(JsonNode node) throws IOException {
+        return mapper.writeValueAsString(node);
+    }
+
+    // What RestAssured hands its object mapper for a response with this body and Content-Type
+    static ObjectMapperDeserializationContext context(byte[] body, String contentType, java.lang.reflect.Type type) {
+        return new ObjectMapperDeserializationContext() {
+            @Override
+            public String getContentType() {
+                return contentType;
+            }
+
+            @Override
+            public DataToDeserialize getDataToDeserialize() {
+                return new DataToDeserialize() {
+                    @Override
+                    public String asString() {
+                        return new String(body, StandardCharsets.UTF_8);
+                    }
+
+                    @Override
+                    public byte[] asByteArray() {
+                        return body;
+                    }
+
+                    @Override
+                    public InputStream asInputStream() {
+                        return new ByteArrayInputStream(body);
+                    }
+                };
+            }
+
+            @Override
+            public java.lang.reflect.Type getType() {
+                return type;
+            }
+
+            @Override
+            public String getCharset() {
+                return "UTF-8";
+            }
+        };
+    }
+}
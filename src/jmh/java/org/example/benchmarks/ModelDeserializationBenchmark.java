@@ -0,0 +1,113 @@
+package org.example.benchmarks;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.jasminb.jsonapi.ResourceConverter;
+import io.restassured.internal.mapping.Jackson2Mapper;
+import io.restassured.mapper.ObjectMapperDeserializationContext;
+import io.restassured.path.json.mapper.factory.DefaultJackson2ObjectMapperFactory;
+import org.example.codec.CodecObjectMapper;
+import org.example.codec.ModelCodec;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning a response body into the models, for one entity ({@code /planets/1}) and for a whole collection
+ * ({@code /planets}), through:
+ * <ul>
+ *     <li>RestAssured's default mapper, i.e. what {@code response.as(Planet.class)} does</li>
+ *     <li>a shared Jackson {@link ObjectMapper}</li>
+ *     <li>jsonapi-converter's {@link ResourceConverter}, reading the same data as JSON:API documents</li>
+ *     <li>the generated {@link ModelCodec}s, through {@link CodecObjectMapper}</li>
+ * </ul>
+ * Run with {@code mvn -Pjmh compile exec:exec}; the gc profiler is on by default and reports the allocation rate.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ModelDeserializationBenchmark {
+    @Param({"planets", "people", "films", "species", "vehicles", "starships"})
+    public String collection;
+
+    private Class<?> model;
+    private JavaType listType;
+
+    private String single;
+    private String all;
+    private byte[] singleDocument;
+    private byte[] allDocument;
+
+    private Jackson2Mapper restAssuredMapper;
+    private ObjectMapper jackson;
+    private ResourceConverter converter;
+    private CodecObjectMapper codecMapper;
+
+    @Setup
+    public void setup() throws IOException {
+        model = Fixtures.MODELS.get(collection);
+
+        var entities = Fixtures.collection(collection);
+        single = Fixtures.json(entities.get(0));
+        all = Fixtures.json(entities);
+        singleDocument = Fixtures.jsonApiDocument(collection, entities.get(0));
+        allDocument = Fixtures.jsonApiCollectionDocument(collection, entities);
+
+        restAssuredMapper = new Jackson2Mapper(new DefaultJackson2ObjectMapperFactory());
+        jackson = new ObjectMapper();
+        listType = jackson.getTypeFactory().constructCollectionType(List.class, model);
+        converter = new ResourceConverter(Fixtures.MODELS.values().toArray(Class<?>[]::new));
+        codecMapper = new CodecObjectMapper();
+    }
+
+    @Benchmark
+    public Object restAssuredSingle() {
+        return restAssuredMapper.deserialize(context(single, model));
+    }
+
+    @Benchmark
+    public Object restAssuredCollection() {
+        return restAssuredMapper.deserialize(context(all, listType));
+    }
+
+    @Benchmark
+    public Object jacksonSingle() throws IOException {
+        return jackson.readValue(single, model);
+    }
+
+    @Benchmark
+    public Object jacksonCollection() throws IOException {
+        return jackson.readValue(all, listType);
+    }
+
+    @Benchmark
+    public Object jsonApiSingle() {
+        return converter.readDocument(singleDocument, model).get();
+    }
+
+    @Benchmark
+    public Object jsonApiCollection() {
+        return converter.readDocumentCollection(allDocument, model).get();
+    }
+
+    @Benchmark
+    public Object codecSingle() {
+        return codecMapper.deserialize(context(single, model));
+    }
+
+    @Benchmark
+    public Object codecCollection() {
+        return codecMapper.deserialize(context(all, listType));
+    }
+
+    private static ObjectMapperDeserializationContext context(String body, Type type) {
+        return Fixtures.context(body.getBytes(StandardCharsets.UTF_8), "application/json", type);
+    }
+}
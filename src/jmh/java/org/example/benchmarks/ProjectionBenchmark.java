@@ -0,0 +1,78 @@
+package org.example.benchmarks;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.example.codec.FieldMask;
+import org.example.codec.ModelCodecs;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What a sparse fieldset saves when reading a whole collection with the generated codecs, for a projection on the
+ * first two fields after the id (e.g. {@code fields[starship]=name,model}):
+ * <ul>
+ *     <li>{@code full}: the full payload, every field read</li>
+ *     <li>{@code masked}: the full payload, the other fields skipped by a {@link FieldMask}</li>
+ *     <li>{@code projected}: the payload the server sends for the projection, read with the same mask</li>
+ * </ul>
+ * The payload sizes are printed during setup.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProjectionBenchmark {
+    @Param({"planets", "people", "films", "species", "vehicles", "starships"})
+    public String collection;
+
+    private FieldMask<?> all;
+    private FieldMask<?> mask;
+    private byte[] full;
+    private byte[] projected;
+
+    @Setup
+    public void setup() throws IOException {
+        var model = Fixtures.MODELS.get(collection);
+        var fields = ModelCodecs.get(model).fields();
+
+        all = FieldMask.of(model, fields.toArray(String[]::new));
+        mask = FieldMask.of(model, fields.subList(1, 3).toArray(String[]::new));
+
+        var entities = Fixtures.collection(collection);
+        full = Fixtures.json(entities).getBytes(StandardCharsets.UTF_8);
+        projected = Fixtures.json(project(entities, mask.names())).getBytes(StandardCharsets.UTF_8);
+
+        System.out.printf("%n%s: %d bytes, %d bytes with %s=%s%n", collection, full.length, projected.length, mask.parameter(), mask.value());
+    }
+
+    @Benchmark
+    public Object full() {
+        return all.readList(full);
+    }
+
+    @Benchmark
+    public Object masked() {
+        return mask.readList(full);
+    }
+
+    @Benchmark
+    public Object projected() {
+        return mask.readList(projected);
+    }
+
+    private static ArrayNode project(ArrayNode entities, List<String> names) {
+        var fields = new HashSet<>(names);
+        fields.add("id");
+
+        var result = entities.deepCopy();
+        result.forEach(entity -> ((ObjectNode) entity).retain(fields));
+        return result;
+    }
+}
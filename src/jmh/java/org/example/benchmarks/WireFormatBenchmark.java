@@ -0,0 +1,71 @@
+package org.example.benchmarks;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.codec.CodecObjectMapper;
+import org.example.codec.WireFormat;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding one entity ({@code /planets/1}) and a whole collection ({@code /planets}) into the models with the
+ * generated codecs, from each {@link WireFormat} the server can send, as {@code response.as(...)} does through
+ * {@link CodecObjectMapper}. The payloads are written by Jackson, within a few bytes of what {@code server/formats}
+ * sends for the same data. Their sizes are printed during setup; see
+ * {@code npm run bench:formats} for the sizes once compressed and the cost of encoding them on the server.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WireFormatBenchmark {
+    @Param({"planets", "people", "films", "species", "vehicles", "starships"})
+    public String collection;
+
+    @Param({"JSON", "CBOR", "MESSAGE_PACK", "SMILE"})
+    public WireFormat format;
+
+    private Class<?> model;
+    private JavaType listType;
+
+    private byte[] single;
+    private byte[] all;
+
+    private CodecObjectMapper codecMapper;
+
+    @Setup
+    public void setup() throws IOException {
+        model = Fixtures.MODELS.get(collection);
+
+        var writer = new ObjectMapper(format.factory().copy());
+        var entities = Fixtures.collection(collection);
+        single = writer.writeValueAsBytes(entities.get(0));
+        all = writer.writeValueAsBytes(entities);
+
+        listType = writer.getTypeFactory().constructCollectionType(List.class, model);
+        codecMapper = new CodecObjectMapper();
+
+        System.out.printf("%n%s as %s: %d bytes for one, %d bytes for all (JSON: %d, %d)%n", collection, format.mediaType(),
+                single.length, all.length, json(entities.get(0)).length, json(entities).length);
+    }
+
+    @Benchmark
+    public Object single() {
+        return codecMapper.deserialize(Fixtures.context(single, format.mediaType(), model));
+    }
+
+    @Benchmark
+    public Object collection() {
+        return codecMapper.deserialize(Fixtures.context(all, format.mediaType(), listType));
+    }
+
+    private static byte[] json(JsonNode node) throws IOException {
+        return new ObjectMapper().writeValueAsBytes(node);
+    }
+}
@@ -0,0 +1,299 @@
+package org.example.client;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.restassured.http.ContentType;
+import io.restassured.specification.RequestSpecification;
+import org.example.codec.ModelCodec;
+import org.example.codec.ModelCodecs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+import static io.restassured.RestAssured.given;
+
+/**
+ * Coalesces single writes to one collection into bulk requests ({@code POST /:collection/_bulk}, see
+ * {@code server/middleware/bulk.js}):
+ * <pre>
+ * try (var planets = new BatchWriter&lt;&gt;(spec, "planets", Planet.class)) {
+ *     var ids = newPlanets.stream().map(planets::create).toList();
+ *     ...
+ * }
+ * </pre>
+ * A write waits until {@code maxBatch} writes are queued or it has waited {@code linger}, whichever comes first, and
+ * is then sent with the others. Only one batch is in flight at a time, and the writes queued while it is go out
+ * together as soon as it returns, so batches grow with the load and writes are applied in the order they were made.
+ * Callers that wait for every write before making the next get no batching, only the linger.
+ *
+ * <p>The server applies a batch all or nothing, or with {@code ENTITY_STORE=mongo} checks all of it before writing
+ * any. Writes it rejects fail their own future with an {@link IllegalStateException} naming the status; the writes
+ * that were only held back by them are sent again with the next batch, so one caller's bad write does not fail anyone
+ * else's. {@link #close()} waits for every write. Futures complete on the thread that sent the batch, so callbacks
+ * must not wait for the same writer, e.g. with {@link #flush()}; use the {@code ...Async} variants for that.
+ */
+public class BatchWriter<T> implements AutoCloseable {
+    public static final int DEFAULT_MAX_BATCH = 500;
+    public static final Duration DEFAULT_LINGER = Duration.ofMillis(5);
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final JsonFactory factory = mapper.getFactory();
+
+    private static final ExecutorService senders = Executors.newCachedThreadPool(runnable -> {
+        var thread = new Thread(runnable, "batch-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final ScheduledExecutorService timers = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        var thread = new Thread(runnable, "batch-writer-linger");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final RequestSpecification spec;
+    private final String collection;
+    private final ModelCodec<T> codec;
+    private final int maxBatch;
+    private final Duration linger;
+
+    // Guarded by this
+    private final Deque<Write<T>> queue = new ArrayDeque<>();
+    private List<Write<T>> inFlight = List.of();
+    private ScheduledFuture<?> timer;
+    private boolean closed;
+
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+
+    private record Write<T>(String op, String id, T data, CompletableFuture<String> result) {
+    }
+
+    private record Result(int status, String id, String message) {
+    }
+
+    /**
+     * @param spec what every request needs, e.g. the {@code token} header
+     */
+    public BatchWriter(RequestSpecification spec, String collection, Class<T> type) {
+        this(spec, collection, type, DEFAULT_MAX_BATCH, DEFAULT_LINGER);
+    }
+
+    public BatchWriter(RequestSpecification spec, String collection, Class<T> type, int maxBatch, Duration linger) {
+        if (maxBatch < 1)
+            throw new IllegalArgumentException("maxBatch must be positive: " + maxBatch);
+        if (linger.isNegative())
+            throw new IllegalArgumentException("linger must not be negative: " + linger);
+
+        this.spec = spec;
+        this.collection = collection;
+        this.codec = ModelCodecs.get(type);
+        this.maxBatch = maxBatch;
+        this.linger = linger;
+    }
+
+    /**
+     * Completes with the id the entity was created with, the next one of the collection's sequence if it has none.
+     */
+    public CompletableFuture<String> create(T entity) {
+        return submit(new Write<>("create", null, entity, new CompletableFuture<>()));
+    }
+
+    public CompletableFuture<String> replace(String id, T entity) {
+        return submit(new Write<>("replace", id, entity, new CompletableFuture<>()));
+    }
+
+    public CompletableFuture<String> delete(String id) {
+        return submit(new Write<>("delete", id, null, new CompletableFuture<>()));
+    }
+
+    /**
+     * Sends whatever is queued right away and waits until every write made so far has completed, successfully or
+     * not.
+     */
+    public void flush() {
+        List<CompletableFuture<String>> pending;
+        synchronized (this) {
+            pending = Stream.concat(inFlight.stream(), queue.stream()).map(Write::result).toList();
+            if (inFlight.isEmpty() && !queue.isEmpty())
+                send();
+        }
+
+        CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).handle((result, e) -> null).join();
+    }
+
+    /**
+     * Writes accepted so far.
+     */
+    public long writes() {
+        return writes.sum();
+    }
+
+    /**
+     * Bulk requests sent so far.
+     */
+    public long batches() {
+        return batches.sum();
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+
+        flush();
+    }
+
+    private CompletableFuture<String> submit(Write<T> write) {
+        synchronized (this) {
+            if (closed)
+                throw new IllegalStateException("The batch writer of " + collection + " is closed");
+
+            writes.increment();
+            queue.add(write);
+
+            if (!inFlight.isEmpty())
+                return write.result();
+
+            if (queue.size() >= maxBatch || linger.isZero())
+                send();
+            else if (timer == null)
+                timer = timers.schedule(this::lingered, linger.toNanos(), TimeUnit.NANOSECONDS);
+        }
+
+        return write.result();
+    }
+
+    private synchronized void lingered() {
+        timer = null;
+        if (inFlight.isEmpty() && !queue.isEmpty())
+            send();
+    }
+
+    // Called holding the lock, with nothing in flight
+    private void send() {
+        if (timer != null) {
+            timer.cancel(false);
+            timer = null;
+        }
+
+        var batch = new ArrayList<Write<T>>(Math.min(queue.size(), maxBatch));
+        while (batch.size() < maxBatch && !queue.isEmpty())
+            batch.add(queue.poll());
+
+        inFlight = batch;
+        batches.increment();
+        senders.execute(() -> post(batch));
+    }
+
+    private void post(List<Write<T>> batch) {
+        List<Write<T>> again;
+        try {
+            again = complete(batch, request(batch));
+        } catch (RuntimeException | IOException e) {
+            batch.forEach(write -> write.result().completeExceptionally(e));
+            again = List.of();
+        }
+
+        synchronized (this) {
+            inFlight = List.of();
+
+            // Ahead of the writes made since, to keep the order
+            for (var i = again.size() - 1; i >= 0; i--)
+                queue.addFirst(again.get(i));
+
+            // They have already waited for a whole request
+            if (!queue.isEmpty())
+                send();
+        }
+    }
+
+    private List<Result> request(List<Write<T>> batch) throws IOException {
+        var response = given()
+                .spec(spec)
+                .contentType(ContentType.JSON)
+                .body(body(batch))
+                .when()
+                .post("/" + collection + "/_bulk");
+
+        var bytes = response.asByteArray();
+        var contentType = response.contentType();
+        if (contentType == null || !contentType.startsWith("application/json") || bytes.length == 0 || bytes[0] != '[')
+            throw new IllegalStateException("POST /" + collection + "/_bulk returned " + response.statusCode());
+
+        List<Result> results = List.of(mapper.readValue(bytes, Result[].class));
+        if (results.size() != batch.size())
+            throw new IllegalStateException("POST /" + collection + "/_bulk returned " + results.size() + " results for " + batch.size() + " writes");
+
+        return results;
+    }
+
+    // Completes the futures of the writes that were applied or rejected, and returns the ones to send again
+    private List<Write<T>> complete(List<Write<T>> batch, List<Result> results) {
+        var again = new ArrayList<Write<T>>();
+        for (var i = 0; i < batch.size(); i++) {
+            var write = batch.get(i);
+            var result = results.get(i);
+
+            if (result.status() < 300)
+                write.result().complete(result.id());
+            else if (result.status() == 424)
+                again.add(write);
+            else
+                write.result().completeExceptionally(new IllegalStateException(
+                        write.op() + " of " + collection + (write.id() == null ? "" : "/" + write.id())
+                                + " returned " + result.status() + ": " + result.message()));
+        }
+
+        // Only possible if the server broke its own rules, but would otherwise send the same batch forever
+        if (again.size() == batch.size()) {
+            again.forEach(write -> write.result().completeExceptionally(
+                    new IllegalStateException("POST /" + collection + "/_bulk rejected every write without a reason")));
+            return List.of();
+        }
+
+        return again;
+    }
+
+    private byte[] body(List<Write<T>> batch) throws IOException {
+        var out = new ByteArrayOutputStream(batch.size() * 256);
+        try (var generator = factory.createGenerator(out)) {
+            generator.writeStartArray();
+            for (var write : batch) {
+                generator.writeStartObject();
+                generator.writeStringField("op", write.op());
+                if (write.id() != null)
+                    generator.writeStringField("id", write.id());
+                if (write.data() != null) {
+                    generator.writeFieldName("data");
+                    writeData(write.data(), generator);
+                }
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        }
+
+        return out.toByteArray();
+    }
+
+    private void writeData(T data, JsonGenerator generator) throws IOException {
+        if (codec != null)
+            codec.write(data, generator);
+        else
+            mapper.writeValue(generator, data);
+    }
+}
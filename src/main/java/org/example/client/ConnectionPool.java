@@ -0,0 +1,174 @@
+package org.example.client;
+
+import io.restassured.RestAssured;
+import io.restassured.config.HttpClientConfig;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.conn.ClientConnectionOperator;
+import org.apache.http.conn.OperatedClientConnection;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.entity.BufferedHttpEntity;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.DefaultClientConnectionOperator;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.impl.conn.SchemeRegistryFactory;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One pool of keep-alive connections shared by every RestAssured request, instead of the connection per request
+ * RestAssured's default client configuration ends up with. Idle connections are evicted before the server would
+ * close them (Node drops idle keep-alive connections after 5 seconds), and the pool counts how many requests were
+ * served on an already open connection. Responses are requested compressed, see {@link ResponseCompression}.
+ *
+ * <p>RestAssured 5 still builds on the HttpClient 4 {@code AbstractHttpClient} API, hence the deprecated classes.
+ */
+@SuppressWarnings("deprecation")
+public class ConnectionPool implements AutoCloseable {
+    public static final int DEFAULT_MAX_PER_ROUTE = 32;
+    public static final int DEFAULT_MAX_TOTAL = 64;
+    public static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofSeconds(4);
+    public static final int DEFAULT_SOCKET_BUFFER_SIZE = 64 * 1024;
+
+    private final PoolingClientConnectionManager manager;
+    private final DefaultHttpClient client;
+    private final ScheduledExecutorService evictor;
+    private final ResponseCompression compression = new ResponseCompression();
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder connectionsOpened = new LongAdder();
+
+    public ConnectionPool() {
+        this(DEFAULT_MAX_PER_ROUTE, DEFAULT_MAX_TOTAL, DEFAULT_IDLE_TIMEOUT, DEFAULT_SOCKET_BUFFER_SIZE);
+    }
+
+    public ConnectionPool(int maxPerRoute, int maxTotal, Duration idleTimeout, int socketBufferSize) {
+        manager = new PoolingClientConnectionManager(SchemeRegistryFactory.createDefault()) {
+            @Override
+            protected ClientConnectionOperator createConnectionOperator(SchemeRegistry schemes) {
+                return new CountingConnectionOperator(schemes);
+            }
+        };
+        manager.setDefaultMaxPerRoute(maxPerRoute);
+        manager.setMaxTotal(maxTotal);
+
+        HttpParams params = new BasicHttpParams();
+        HttpConnectionParams.setSocketBufferSize(params, socketBufferSize);
+        HttpConnectionParams.setTcpNoDelay(params, true);
+        HttpConnectionParams.setStaleCheckingEnabled(params, true);
+
+        client = new DefaultHttpClient(manager, params);
+        client.addRequestInterceptor((request, context) -> requests.increment());
+        // RestAssured reads bodies lazily (or not at all), which would keep every connection leased. Buffering the
+        // entity here, before the client wraps it, lets the connection go back to the pool as soon as it returns.
+        client.addResponseInterceptor((response, context) -> {
+            var entity = response.getEntity();
+            if (entity == null || !entity.isStreaming())
+                return;
+
+            // Except for exports, which are read as they arrive (see NdjsonPublisher). Their connection is closed
+            // when the stream is, so a subscriber cancelling halfway does not have to read the rest first
+            if (isStreamed(entity)) {
+                response.setHeader("Connection", "close");
+                return;
+            }
+
+            response.setEntity(new BufferedHttpEntity(entity));
+        });
+        // After the buffering, which then holds the compressed bytes in full; only the decoding is lazy
+        client.addRequestInterceptor(compression);
+        client.addResponseInterceptor(compression);
+
+        evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "connection-pool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        var period = Math.max(idleTimeout.toMillis() / 2, 100);
+        evictor.scheduleAtFixedRate(() -> {
+            manager.closeExpiredConnections();
+            manager.closeIdleConnections(idleTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * The client configuration that routes RestAssured through this pool.
+     */
+    public HttpClientConfig httpClientConfig() {
+        return HttpClientConfig.httpClientConfig()
+                .reuseHttpClientInstance()
+                .httpClientFactory(() -> client);
+    }
+
+    /**
+     * Makes every RestAssured request that uses the global configuration go through this pool.
+     */
+    public void install() {
+        RestAssured.config = RestAssured.config().httpClient(httpClientConfig());
+    }
+
+    private static boolean isStreamed(HttpEntity entity) {
+        var type = entity.getContentType();
+        return type != null && type.getValue().startsWith(NdjsonPublisher.MEDIA_TYPE);
+    }
+
+    public long requests() {
+        return requests.sum();
+    }
+
+    public long connectionsOpened() {
+        return connectionsOpened.sum();
+    }
+
+    /**
+     * Share of the requests that did not have to open a new connection.
+     */
+    public double reuseRate() {
+        var total = requests();
+        return total == 0 ? 0 : 1 - (double) Math.min(connectionsOpened(), total) / total;
+    }
+
+    public ResponseCompression compression() {
+        return compression;
+    }
+
+    public PoolStats stats() {
+        return manager.getTotalStats();
+    }
+
+    public String report() {
+        return String.format("Connection pool: %d requests over %d connections (%.1f%% reused), %s%n%s",
+                requests(), connectionsOpened(), reuseRate() * 100, stats(), compression.report());
+    }
+
+    @Override
+    public void close() {
+        evictor.shutdownNow();
+        manager.shutdown();
+    }
+
+    private class CountingConnectionOperator extends DefaultClientConnectionOperator {
+        CountingConnectionOperator(SchemeRegistry schemes) {
+            super(schemes);
+        }
+
+        @Override
+        public void openConnection(OperatedClientConnection connection, HttpHost target, InetAddress local,
+                                   HttpContext context, HttpParams params) throws IOException {
+            super.openConnection(connection, target, local, context, params);
+            connectionsOpened.increment();
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package org.example.client;
+
+import io.restassured.specification.RequestSpecification;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static io.restassured.RestAssured.given;
+
+/**
+ * Reads a whole collection one page at a time ({@code _page} and {@code _limit}), so that no more than two pages are
+ * ever held, however large the collection. The next page is requested as soon as the current one arrives and is
+ * downloaded and decoded while the current one is consumed, so a consumer that keeps up never waits for more than
+ * the first page.
+ * <pre>
+ * try (var people = EntityCursor.stream(spec, "people", Person.class, 500)) {
+ *     people.filter(person -&gt; person.homeworld.endsWith("/1/")).forEach(...);
+ * }
+ * </pre>
+ * Pages are decoded with {@code response.as(...)}, i.e. with the generated codecs once {@code CodecObjectMapper} is
+ * installed. Paging is by position, so entities created or deleted while a cursor runs can shift the pages after
+ * them by as many entities.
+ */
+public class EntityCursor<T> implements Iterator<T>, AutoCloseable {
+    public static final int DEFAULT_PAGE_SIZE = 100;
+
+    private static final ExecutorService prefetcher = Executors.newCachedThreadPool(runnable -> {
+        var thread = new Thread(runnable, "entity-cursor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final RequestSpecification spec;
+    private final String collection;
+    private final Type listType;
+    private final int pageSize;
+
+    private Iterator<T> current = Collections.emptyIterator();
+    // The page after the current one, null once there is none
+    private CompletableFuture<Page<T>> next;
+    private int pages;
+    private long total = -1;
+
+    private record Page<T>(int number, List<T> items, long total) {
+    }
+
+    private record ListOf(Type element) implements ParameterizedType {
+        @Override
+        public Type[] getActualTypeArguments() {
+            return new Type[] { element };
+        }
+
+        @Override
+        public Type getRawType() {
+            return List.class;
+        }
+
+        @Override
+        public Type getOwnerType() {
+            return null;
+        }
+    }
+
+    public EntityCursor(RequestSpecification spec, String collection, Class<T> type) {
+        this(spec, collection, type, DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * @param spec what every request needs, plus any filters, e.g. {@code queryParam("climate", "arid")}
+     */
+    public EntityCursor(RequestSpecification spec, String collection, Class<T> type, int pageSize) {
+        if (pageSize < 1)
+            throw new IllegalArgumentException("pageSize must be positive: " + pageSize);
+
+        this.spec = spec;
+        this.collection = collection;
+        this.listType = new ListOf(type);
+        this.pageSize = pageSize;
+
+        next = prefetch(1);
+    }
+
+    /**
+     * The entities of a cursor as a sequential stream; closing the stream closes the cursor.
+     */
+    public static <T> Stream<T> stream(RequestSpecification spec, String collection, Class<T> type, int pageSize) {
+        var cursor = new EntityCursor<>(spec, collection, type, pageSize);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(cursor, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(cursor::close);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!current.hasNext()) {
+            if (next == null)
+                return false;
+
+            var page = await(next);
+            pages++;
+            total = page.total();
+            current = page.items().iterator();
+            next = isLast(page) ? null : prefetch(page.number() + 1);
+        }
+
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+
+        return current.next();
+    }
+
+    /**
+     * Pages read so far.
+     */
+    public int pages() {
+        return pages;
+    }
+
+    /**
+     * The size of the collection as of the last page read (its {@code X-Total-Count}), or -1 before the first one.
+     */
+    public long total() {
+        return total;
+    }
+
+    @Override
+    public void close() {
+        if (next != null)
+            next.cancel(true);
+
+        next = null;
+        current = Collections.emptyIterator();
+    }
+
+    private CompletableFuture<Page<T>> prefetch(int number) {
+        return CompletableFuture.supplyAsync(() -> fetch(number), prefetcher);
+    }
+
+    private Page<T> fetch(int number) {
+        var response = given()
+                .spec(spec)
+                .queryParam("_page", number)
+                .queryParam("_limit", pageSize)
+                .when()
+                .get("/" + collection);
+
+        if (response.statusCode() != 200)
+            throw new IllegalStateException("GET /" + collection + " page " + number + " returned " + response.statusCode());
+
+        var total = response.header("X-Total-Count");
+        List<T> items = response.as(listType);
+        return new Page<>(number, items, total == null ? -1 : Long.parseLong(total));
+    }
+
+    // A short page is the last one, and so is a full page that reaches the total
+    private boolean isLast(Page<T> page) {
+        return page.items().size() < pageSize || (page.total() >= 0 && (long) page.number() * pageSize >= page.total());
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+}
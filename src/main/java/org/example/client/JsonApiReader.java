@@ -0,0 +1,36 @@
+package org.example.client;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.jasminb.jsonapi.ResourceConverter;
+import io.restassured.response.Response;
+import org.example.models.*;
+
+import java.util.List;
+
+/**
+ * Reads the JSON:API documents the server sends for {@code Accept: application/vnd.api+json} into linked model graphs
+ * with jsonapi-converter's {@link ResourceConverter}. Whatever the request asked to {@code include} (for instance
+ * {@code include=residents,films} or {@code include=characters.homeworld}) comes back in the {@code linked*} fields
+ * of the models, from the same response; relationships that were not included only carry the linked {@code id}.
+ */
+public class JsonApiReader {
+    public static final String MEDIA_TYPE = "application/vnd.api+json";
+
+    private final ResourceConverter converter;
+
+    public JsonApiReader() {
+        // Entities created through the API may carry fields the models do not know about
+        var mapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        converter = new ResourceConverter(mapper,
+                Planet.class, Person.class, Film.class, Species.class, Vehicle.class, Starship.class);
+    }
+
+    public <T> T read(Response response, Class<T> type) {
+        return converter.readDocument(response.asByteArray(), type).get();
+    }
+
+    public <T> List<T> readList(Response response, Class<T> type) {
+        return converter.readDocumentCollection(response.asByteArray(), type).get();
+    }
+}
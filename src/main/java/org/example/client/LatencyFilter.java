@@ -0,0 +1,125 @@
+package org.example.client;
+
+import io.restassured.filter.Filter;
+import io.restassured.filter.FilterContext;
+import io.restassured.response.Response;
+import io.restassured.specification.FilterableRequestSpecification;
+import io.restassured.specification.FilterableResponseSpecification;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RestAssured filter that records the latency of every request, in microseconds, into one HdrHistogram per route.
+ * Routes are the method and the path with the ids replaced, e.g. {@code GET /planets/{id}}, so the same endpoint
+ * always lands in the same histogram. Install it with
+ * <pre>
+ * RestAssured.filters(latencyFilter);
+ * </pre>
+ *
+ * <p>Recording only looks up the histogram and adds one value; the percentiles are computed by {@link #report()}.
+ * The latencies are the time each request took once it was sent, not corrected for coordinated omission: requests a
+ * stalled server kept from being sent are missing. The open profiles of {@code LoadRunner} measure every iteration
+ * from when it was due, so its report has the corrected numbers, per scenario rather than per route.
+ */
+public class LatencyFilter implements Filter {
+    private static final String ID = "{id}";
+
+    private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    @Override
+    public Response filter(FilterableRequestSpecification requestSpec, FilterableResponseSpecification responseSpec, FilterContext ctx) {
+        var start = System.nanoTime();
+        var response = ctx.next(requestSpec, responseSpec);
+        var elapsed = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+
+        histograms.computeIfAbsent(route(requestSpec.getMethod(), requestSpec.getURI()), key -> new ConcurrentHistogram(3))
+                .recordValue(elapsed);
+
+        return response;
+    }
+
+    /**
+     * A copy of the histograms recorded so far by route.
+     */
+    public Map<String, Histogram> histograms() {
+        var result = new TreeMap<String, Histogram>();
+        histograms.forEach((route, histogram) -> result.put(route, histogram.copy()));
+        return result;
+    }
+
+    public void reset() {
+        histograms.clear();
+    }
+
+    public String report() {
+        var out = new StringBuilder(String.format("%-40s %8s %10s %10s %10s %10s%n", "route", "count", "p50 us", "p99 us", "p999 us", "max us"));
+        histograms().forEach((route, histogram) -> out.append(String.format("%-40s %8d %10d %10d %10d %10d%n", route,
+                histogram.getTotalCount(), histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(99),
+                histogram.getValueAtPercentile(99.9), histogram.getMaxValue())));
+        return out.toString();
+    }
+
+    /**
+     * Writes the same percentiles as {@link #report()} as CSV.
+     */
+    public void export(Path file) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        try (var out = new PrintWriter(Files.newBufferedWriter(file))) {
+            out.println("route,count,p50_us,p99_us,p999_us,max_us");
+            histograms().forEach((route, histogram) -> out.printf("%s,%d,%d,%d,%d,%d%n", route,
+                    histogram.getTotalCount(), histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(99),
+                    histogram.getValueAtPercentile(99.9), histogram.getMaxValue()));
+        }
+    }
+
+    /**
+     * {@code GET /planets/{id}} for {@code GET http://localhost:3000/planets/1/}: integer and UUID segments become
+     * {@code {id}}, and the query and trailing slashes are dropped.
+     */
+    static String route(String method, String uri) {
+        var path = URI.create(uri).getRawPath();
+        var route = new StringBuilder(method.length() + path.length()).append(method).append(' ');
+
+        var start = 0;
+        while (start < path.length()) {
+            var end = path.indexOf('/', start);
+            if (end < 0)
+                end = path.length();
+
+            if (end > start) {
+                var segment = path.substring(start, end);
+                route.append('/').append(isId(segment) ? ID : segment);
+            }
+
+            start = end + 1;
+        }
+
+        if (route.charAt(route.length() - 1) == ' ')
+            route.append('/');
+
+        return route.toString();
+    }
+
+    private static boolean isId(String segment) {
+        var digits = true;
+        var hex = segment.length() == 36;
+
+        for (var i = 0; i < segment.length(); i++) {
+            var c = segment.charAt(i);
+            digits &= (c >= '0' && c <= '9') || (c == '-' && i == 0 && segment.length() > 1);
+            hex &= Character.digit(c, 16) >= 0 || (c == '-' && (i == 8 || i == 13 || i == 18 || i == 23));
+        }
+
+        return digits || hex;
+    }
+}
@@ -0,0 +1,142 @@
+package org.example.client;
+
+import io.restassured.specification.RequestSpecification;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+import static io.restassured.RestAssured.given;
+
+/**
+ * Follows the relationship URLs of the models ({@code Planet.residents}, {@code Person.homeworld},
+ * {@code Film.characters}, ...) for one session. Each unique URL is fetched once: {@link #resolveAll} starts every
+ * fetch that is not cached yet at the same time and then waits for all of them, so a film's whole cast costs one
+ * round of concurrent requests instead of one request after the other.
+ *
+ * <p>Fetches are memoized in a bounded LRU cache, including the ones still in flight, so concurrent callers asking for
+ * the same URL share one request. Failed fetches are not cached.
+ */
+public class LinkResolver implements AutoCloseable {
+    public static final int DEFAULT_CACHE_SIZE = 1024;
+    public static final int DEFAULT_PARALLELISM = 16;
+
+    private final RequestSpecification spec;
+    private final ExecutorService executor;
+    private final Map<String, CompletableFuture<Object>> cache;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder fetches = new LongAdder();
+
+    /**
+     * @param spec what every request needs, e.g. the {@code token} header
+     */
+    public LinkResolver(RequestSpecification spec) {
+        this(spec, DEFAULT_CACHE_SIZE, DEFAULT_PARALLELISM);
+    }
+
+    public LinkResolver(RequestSpecification spec, int cacheSize, int parallelism) {
+        this.spec = spec;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CompletableFuture<Object>> eldest) {
+                return size() > cacheSize;
+            }
+        };
+
+        executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            var thread = new Thread(runnable, "link-resolver");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public <T> T resolve(String url, Class<T> type) {
+        return resolveAll(List.of(url), type).get(0);
+    }
+
+    /**
+     * The models behind {@code urls}, in the same order. Duplicate URLs are fetched once and resolve to the same
+     * instance, and links to entities that do not exist (404) resolve to {@code null}.
+     */
+    public <T> List<T> resolveAll(Collection<String> urls, Class<T> type) {
+        var futures = new ArrayList<CompletableFuture<Object>>(urls.size());
+        for (var url : urls)
+            futures.add(fetch(url, type));
+
+        var result = new ArrayList<T>(futures.size());
+        try {
+            for (var future : futures)
+                result.add(type.cast(future.join()));
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+
+        return result;
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long fetches() {
+        return fetches.sum();
+    }
+
+    public synchronized int cached() {
+        return cache.size();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private synchronized CompletableFuture<Object> fetch(String url, Class<?> type) {
+        // SWAPI-style links come with and without the trailing slash
+        var path = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+        var key = type.getName() + " " + path;
+
+        var cached = cache.get(key);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+
+        fetches.increment();
+        var future = CompletableFuture.supplyAsync(() -> get(path, type), executor);
+        cache.put(key, future);
+        future.whenComplete((value, failure) -> {
+            if (failure != null)
+                evict(key, future);
+        });
+
+        return future;
+    }
+
+    private synchronized void evict(String key, CompletableFuture<Object> future) {
+        cache.remove(key, future);
+    }
+
+    private Object get(String path, Class<?> type) {
+        var response = given()
+                .spec(spec)
+                .when()
+                .get(path);
+
+        if (response.statusCode() == 404)
+            return null;
+
+        if (response.statusCode() != 200)
+            throw new IllegalStateException("GET " + path + " returned " + response.statusCode());
+
+        return response.as(type);
+    }
+}
@@ -0,0 +1,179 @@
+package org.example.client;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.restassured.specification.RequestSpecification;
+import org.example.codec.ModelCodec;
+import org.example.codec.ModelCodecs;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+
+import static io.restassured.RestAssured.given;
+
+/**
+ * Publishes every entity of a collection from the server's NDJSON export ({@code GET /export/:collection}), parsing
+ * the response one entity at a time as it arrives:
+ * <pre>
+ * new NdjsonPublisher&lt;&gt;(spec, "people", Person.class).subscribe(subscriber);
+ * </pre>
+ * Each subscription makes its own request, read on its own thread, and only parses an entity once the subscriber has
+ * asked for it. Until then the response is left unread, so the socket's buffers fill up and the server stops sending
+ * too: the memory held is the parser's buffer plus whatever the subscriber keeps, however large the collection.
+ * Cancelling closes the connection instead of reading the rest of the export.
+ *
+ * <p>Entities are read with the generated {@link ModelCodec} of the type, or else with Jackson. The connection pool
+ * leaves exports unbuffered, see {@link ConnectionPool}.
+ */
+public class NdjsonPublisher<T> implements Flow.Publisher<T> {
+    public static final String MEDIA_TYPE = "application/x-ndjson";
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final JsonFactory factory = mapper.getFactory();
+
+    private static final ExecutorService readers = Executors.newCachedThreadPool(runnable -> {
+        var thread = new Thread(runnable, "ndjson-publisher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final RequestSpecification spec;
+    private final String collection;
+    private final Class<T> type;
+    private final ModelCodec<T> codec;
+
+    /**
+     * @param spec what every request needs, e.g. the {@code token} header
+     */
+    public NdjsonPublisher(RequestSpecification spec, String collection, Class<T> type) {
+        this.spec = spec;
+        this.collection = collection;
+        this.type = type;
+        this.codec = ModelCodecs.get(type);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        var subscription = new Export(subscriber);
+        subscriber.onSubscribe(subscription);
+        readers.execute(subscription);
+    }
+
+    private class Export implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super T> subscriber;
+
+        // Guarded by this
+        private long demand;
+        private boolean cancelled;
+        private IllegalArgumentException badRequest;
+        private InputStream stream;
+
+        Export(Flow.Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public synchronized void request(long n) {
+            if (n <= 0)
+                badRequest = new IllegalArgumentException("Requested " + n + " entities, which is not positive");
+            else
+                demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+
+            notifyAll();
+        }
+
+        @Override
+        public void cancel() {
+            InputStream open;
+            synchronized (this) {
+                cancelled = true;
+                open = stream;
+                notifyAll();
+            }
+
+            // Unblocks a read in progress
+            close(open);
+        }
+
+        @Override
+        public void run() {
+            try {
+                var in = open();
+
+                try (var parser = factory.createParser(in)) {
+                    while (awaitDemand()) {
+                        if (parser.nextToken() == null) {
+                            subscriber.onComplete();
+                            return;
+                        }
+
+                        subscriber.onNext(read(parser));
+                    }
+                } finally {
+                    close(in);
+                }
+            } catch (IllegalArgumentException e) {
+                subscriber.onError(e);
+            } catch (Exception e) {
+                if (!isCancelled())
+                    subscriber.onError(e);
+            }
+        }
+
+        private InputStream open() {
+            var response = given()
+                    .spec(spec)
+                    .when()
+                    .get("/export/" + collection);
+
+            if (response.statusCode() != 200)
+                throw new IllegalStateException("GET /export/" + collection + " returned " + response.statusCode());
+
+            var in = response.asInputStream();
+            synchronized (this) {
+                stream = in;
+            }
+            return in;
+        }
+
+        // Takes one from the demand; false once cancelled
+        private synchronized boolean awaitDemand() throws InterruptedException {
+            while (demand == 0 && !cancelled && badRequest == null)
+                wait();
+
+            if (badRequest != null) {
+                cancelled = true;
+                throw badRequest;
+            }
+
+            if (cancelled)
+                return false;
+
+            demand--;
+            return true;
+        }
+
+        private synchronized boolean isCancelled() {
+            return cancelled;
+        }
+
+        private T read(JsonParser parser) throws IOException {
+            return codec != null ? codec.read(parser) : mapper.readValue(parser, type);
+        }
+
+        private static void close(InputStream in) {
+            if (in == null)
+                return;
+
+            try {
+                in.close();
+            } catch (IOException ignored) {
+                // Closed while being read after a cancel
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package org.example.client;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.protocol.HttpContext;
+import org.brotli.dec.BrotliInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HttpClient interceptors that ask the server for brotli or gzip ({@code Accept-Encoding: br, gzip}) and count the
+ * bytes received per content encoding. Brotli bodies are decoded here, as they are read; gzip is left to RestAssured,
+ * which decodes it the same way.
+ *
+ * <p>This does not make responses stream: with {@link ConnectionPool} the whole compressed body has been read into
+ * memory by the time it is decoded, since the pool buffers every entity but NDJSON exports to release the connection
+ * early. What the decoders save is a second buffer, for the decompressed bytes. Must be added after an interceptor
+ * that buffers the entity, like the one of the pool, so that it is the compressed bytes that are held and counted.
+ */
+public class ResponseCompression implements HttpRequestInterceptor, HttpResponseInterceptor {
+    public static final String ACCEPT_ENCODING = "br, gzip";
+    private static final String IDENTITY = "identity";
+
+    private final Map<String, LongAdder> bytes = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> responses = new ConcurrentHashMap<>();
+
+    @Override
+    public void process(HttpRequest request, HttpContext context) {
+        if (!request.containsHeader("Accept-Encoding"))
+            request.setHeader("Accept-Encoding", ACCEPT_ENCODING);
+    }
+
+    @Override
+    public void process(HttpResponse response, HttpContext context) {
+        var entity = response.getEntity();
+        if (entity == null)
+            return;
+
+        var header = response.getFirstHeader("Content-Encoding");
+        var encoding = header == null ? IDENTITY : header.getValue().trim().toLowerCase();
+
+        responses.computeIfAbsent(encoding, key -> new LongAdder()).increment();
+        if (entity.getContentLength() > 0)
+            bytes.computeIfAbsent(encoding, key -> new LongAdder()).add(entity.getContentLength());
+
+        if (encoding.equals("br")) {
+            response.setEntity(new BrotliEntity(entity));
+            response.removeHeaders("Content-Encoding");
+            response.removeHeaders("Content-Length");
+        }
+    }
+
+    /**
+     * Bytes received per content encoding, as sent over the wire.
+     */
+    public Map<String, Long> bytes() {
+        var result = new TreeMap<String, Long>();
+        bytes.forEach((encoding, count) -> result.put(encoding, count.sum()));
+        return result;
+    }
+
+    /**
+     * Responses received per content encoding.
+     */
+    public Map<String, Long> responses() {
+        var result = new TreeMap<String, Long>();
+        responses.forEach((encoding, count) -> result.put(encoding, count.sum()));
+        return result;
+    }
+
+    public String report() {
+        var out = new StringBuilder("Response encodings:");
+        responses().forEach((encoding, count) -> out.append(String.format(" %s %d responses, %d bytes;", encoding, count,
+                bytes().getOrDefault(encoding, 0L))));
+        return out.toString();
+    }
+
+    private static class BrotliEntity extends HttpEntityWrapper {
+        BrotliEntity(HttpEntity entity) {
+            super(entity);
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            return new BrotliInputStream(wrappedEntity.getContent());
+        }
+
+        @Override
+        public long getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public Header getContentEncoding() {
+            return null;
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            try (var in = getContent()) {
+                in.transferTo(out);
+            }
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package org.example.client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.restassured.filter.Filter;
+import io.restassured.filter.FilterContext;
+import io.restassured.response.Response;
+import io.restassured.specification.FilterableRequestSpecification;
+import io.restassured.specification.FilterableResponseSpecification;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import static io.restassured.RestAssured.given;
+
+/**
+ * Holds the token of a client that runs for longer than a token lives, and sends it in the {@code token} header of
+ * every request as a RestAssured filter:
+ * <pre>
+ * var tokens = new TokenProvider(() -> given().noFiltersOfType(TokenProvider.class).get("/auth").jsonPath().get("token"));
+ * RestAssured.filters(tokens);
+ * </pre>
+ *
+ * <p>Reading the token is one volatile read. A background thread logs in again {@code refreshAhead} before the token
+ * expires, as read from the JWT's {@code exp} claim, so callers never wait for a login while the server is reachable.
+ * A request answered with 401 is sent once more with a new token. However many requests fail with the same token at
+ * the same time, they share one login (single flight); requests failing with a token that has been replaced already
+ * just retry with the current one.
+ *
+ * <p>Requests that set the {@code token} header themselves are left alone.
+ */
+public class TokenProvider implements Filter, AutoCloseable {
+    public static final String HEADER = "token";
+    public static final Duration DEFAULT_REFRESH_AHEAD = Duration.ofMinutes(5);
+    public static final Duration DEFAULT_LIFETIME = Duration.ofHours(5);
+
+    private static final Duration RETRY_DELAY = Duration.ofSeconds(10);
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Supplier<String> login;
+    private final Duration refreshAhead;
+    private final Clock clock;
+    private final ScheduledExecutorService scheduler;
+
+    private volatile Token current;
+    private final AtomicReference<CompletableFuture<Token>> refreshing = new AtomicReference<>();
+    private ScheduledFuture<?> scheduled;
+
+    private final LongAdder logins = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder refreshFailures = new LongAdder();
+
+    private record Token(String value, Instant expires) {
+    }
+
+    /**
+     * @param login fetches a new token, e.g. from {@code /auth}; it must not go through this filter
+     */
+    public TokenProvider(Supplier<String> login) {
+        this(login, DEFAULT_REFRESH_AHEAD, Clock.systemUTC());
+    }
+
+    public TokenProvider(Supplier<String> login, Duration refreshAhead, Clock clock) {
+        this.login = login;
+        this.refreshAhead = refreshAhead;
+        this.clock = clock;
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "token-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * The current token, logging in first if there is none yet or it has expired.
+     */
+    public String token() {
+        var token = current;
+        if (token == null || !clock.instant().isBefore(token.expires()))
+            token = refresh(token);
+
+        return token.value();
+    }
+
+    /**
+     * Replaces {@code stale} with a new token, unless that has happened already. Concurrent callers share one login.
+     */
+    public String refresh(String stale) {
+        var token = current;
+        return refresh(token != null && token.value().equals(stale) ? token : null).value();
+    }
+
+    private Token refresh(Token stale) {
+        while (true) {
+            var token = current;
+            if (token != null && token != stale)
+                return token;
+
+            var flight = refreshing.get();
+            if (flight == null) {
+                var mine = new CompletableFuture<Token>();
+                if (!refreshing.compareAndSet(null, mine))
+                    continue;
+
+                // The flight before may have landed between reading current and taking over
+                token = current;
+                if (token != null && token != stale) {
+                    refreshing.set(null);
+                    mine.complete(token);
+                    return token;
+                }
+
+                login(mine);
+                flight = mine;
+            }
+
+            try {
+                return flight.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+    }
+
+    private void login(CompletableFuture<Token> flight) {
+        try {
+            var value = login.get();
+            if (value == null)
+                throw new IllegalStateException("The login returned no token");
+
+            var token = new Token(value, expiryOf(value));
+            logins.increment();
+            current = token;
+            schedule(token);
+            flight.complete(token);
+        } catch (RuntimeException e) {
+            flight.completeExceptionally(e);
+        } finally {
+            refreshing.set(null);
+        }
+    }
+
+    private void schedule(Token token) {
+        // Tokens living shorter than twice refreshAhead are renewed halfway through instead
+        var lifetime = Duration.between(clock.instant(), token.expires());
+        schedule(token, lifetime.compareTo(refreshAhead.multipliedBy(2)) > 0 ? lifetime.minus(refreshAhead) : lifetime.dividedBy(2));
+    }
+
+    private synchronized void schedule(Token token, Duration delay) {
+        if (scheduler.isShutdown())
+            return;
+
+        if (scheduled != null)
+            scheduled.cancel(false);
+
+        scheduled = scheduler.schedule(() -> {
+            try {
+                refresh(token);
+            } catch (RuntimeException e) {
+                // The token is still good until it expires, and requests log in themselves after that
+                refreshFailures.increment();
+                if (current == token)
+                    schedule(token, RETRY_DELAY);
+            }
+        }, Math.max(delay.toMillis(), 0), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Response filter(FilterableRequestSpecification requestSpec, FilterableResponseSpecification responseSpec, FilterContext ctx) {
+        if (requestSpec.getHeaders().hasHeaderWithName(HEADER))
+            return ctx.next(requestSpec, responseSpec);
+
+        var sent = token();
+        requestSpec.header(HEADER, sent);
+        var response = ctx.next(requestSpec, responseSpec);
+
+        if (response.statusCode() != 401)
+            return response;
+
+        // Sent again through the whole chain, which leaves the request alone now that it has the header
+        retries.increment();
+        requestSpec.replaceHeader(HEADER, refresh(sent));
+        return ctx.send(given().spec(requestSpec));
+    }
+
+    public long logins() {
+        return logins.sum();
+    }
+
+    public long retries() {
+        return retries.sum();
+    }
+
+    public long refreshFailures() {
+        return refreshFailures.sum();
+    }
+
+    @Override
+    public synchronized void close() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * When a JWT expires: its {@code exp} claim, or {@link #DEFAULT_LIFETIME} from now for tokens without one.
+     */
+    Instant expiryOf(String token) {
+        var parts = token.split("\\.");
+        if (parts.length == 3) {
+            try {
+                var exp = MAPPER.readTree(Base64.getUrlDecoder().decode(parts[1])).path("exp");
+                if (exp.canConvertToLong())
+                    return Instant.ofEpochSecond(exp.asLong());
+            } catch (IllegalArgumentException | IOException e) {
+                // Not a JWT after all
+            }
+        }
+
+        return clock.instant().plus(DEFAULT_LIFETIME);
+    }
+}
@@ -0,0 +1,96 @@
+package org.example.codec;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.restassured.mapper.ObjectMapperDeserializationContext;
+import io.restassured.mapper.ObjectMapperSerializationContext;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * RestAssured object mapper that reads and writes the models (and {@code List}s of them) with their generated
+ * {@link ModelCodec}s, and everything else with one shared Jackson {@link ObjectMapper}. Responses are read in the
+ * {@link WireFormat} their {@code Content-Type} names, so CBOR, MessagePack and Smile bodies map to the same models
+ * as JSON; requests are always written as JSON. Install it with
+ * <pre>
+ * RestAssured.config = RestAssured.config().objectMapperConfig(new ObjectMapperConfig(new CodecObjectMapper()));
+ * </pre>
+ */
+public class CodecObjectMapper implements io.restassured.mapper.ObjectMapper {
+    private final ObjectMapper jackson;
+    private final JsonFactory factory;
+    // Copies of `jackson` for the binary formats
+    private final Map<WireFormat, ObjectMapper> mappers = new EnumMap<>(WireFormat.class);
+
+    public CodecObjectMapper() {
+        this(new ObjectMapper());
+    }
+
+    public CodecObjectMapper(ObjectMapper jackson) {
+        this.jackson = jackson;
+        this.factory = jackson.getFactory();
+
+        mappers.put(WireFormat.JSON, jackson);
+        for (var format : WireFormat.values()) {
+            if (format != WireFormat.JSON)
+                mappers.put(format, jackson.copyWith(format.factory().copy()));
+        }
+    }
+
+    @Override
+    public Object deserialize(ObjectMapperDeserializationContext context) {
+        var type = context.getType();
+        var codec = codecFor(type);
+        var elementCodec = codec == null ? elementCodecFor(type) : null;
+        var mapper = mappers.get(WireFormat.of(context.getContentType()));
+
+        try {
+            if (codec == null && elementCodec == null)
+                return mapper.readValue(context.getDataToDeserialize().asInputStream(), mapper.constructType(type));
+
+            try (var parser = mapper.getFactory().createParser(context.getDataToDeserialize().asInputStream())) {
+                return codec != null ? codec.read(parser) : ModelCodecs.readModelList(parser, elementCodec);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not deserialize the response to " + type.getTypeName(), e);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object serialize(ObjectMapperSerializationContext context) {
+        var value = context.getObjectToSerialize();
+        var codec = (ModelCodec<Object>) ModelCodecs.get(value.getClass());
+
+        try {
+            if (codec == null)
+                return jackson.writeValueAsString(value);
+
+            var out = new StringWriter();
+            try (var generator = factory.createGenerator(out)) {
+                codec.write(value, generator);
+            }
+            return out.toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not serialize " + value.getClass().getName(), e);
+        }
+    }
+
+    private static ModelCodec<?> codecFor(Type type) {
+        return type instanceof Class<?> ? ModelCodecs.get((Class<?>) type) : null;
+    }
+
+    private static ModelCodec<?> elementCodecFor(Type type) {
+        if (!(type instanceof ParameterizedType parameterized) || parameterized.getRawType() != List.class)
+            return null;
+
+        return codecFor(parameterized.getActualTypeArguments()[0]);
+    }
+}
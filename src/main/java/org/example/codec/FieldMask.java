@@ -0,0 +1,107 @@
+package org.example.codec;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonToken;
+import com.github.jasminb.jsonapi.annotations.Type;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * The fields of a model to read, for responses projected with a sparse fieldset such as
+ * {@code fields[starship]=name,hyperdrive_rating}. The generated codecs skip every other field without turning its
+ * value into a string or a list, so the unrequested fields stay {@code null}. The id is always read, like the server
+ * always sends it.
+ * <pre>
+ * var mask = FieldMask.of(Starship.class, "name", "hyperdrive_rating");
+ * var response = given().queryParam(mask.parameter(), mask.value()).get("/starships");
+ * List&lt;Starship&gt; starships = mask.readList(response.asByteArray());
+ * </pre>
+ */
+public final class FieldMask<T> {
+    private static final JsonFactory factory = new JsonFactory();
+
+    private final Class<T> type;
+    private final ModelCodec<T> codec;
+    private final List<String> names;
+    private final BitSet fields = new BitSet();
+
+    private FieldMask(Class<T> type, ModelCodec<T> codec, List<String> names) {
+        this.type = type;
+        this.codec = codec;
+        this.names = names;
+
+        for (var name : names) {
+            var index = codec.fields().indexOf(name);
+            if (index < 0)
+                throw new IllegalArgumentException(type.getSimpleName() + " has no field named " + name);
+
+            fields.set(index);
+        }
+
+        var id = codec.fields().indexOf("id");
+        if (id >= 0)
+            fields.set(id);
+    }
+
+    public static <T> FieldMask<T> of(Class<T> type, String... fields) {
+        var codec = ModelCodecs.get(type);
+        if (codec == null)
+            throw new IllegalArgumentException("There is no generated codec for " + type.getName());
+
+        return new FieldMask<>(type, codec, List.of(fields));
+    }
+
+    /**
+     * Whether the field at {@code index} of {@link ModelCodec#fields()} is read.
+     */
+    public boolean includes(int index) {
+        return fields.get(index);
+    }
+
+    public List<String> names() {
+        return names;
+    }
+
+    /**
+     * The query parameter of the sparse fieldset, e.g. {@code fields[starship]}.
+     */
+    public String parameter() {
+        var annotation = type.getAnnotation(Type.class);
+        return "fields[" + (annotation == null ? type.getSimpleName().toLowerCase() : annotation.value()) + "]";
+    }
+
+    /**
+     * The value of the sparse fieldset parameter, e.g. {@code name,hyperdrive_rating}.
+     */
+    public String value() {
+        return String.join(",", names);
+    }
+
+    public T read(byte[] json) {
+        try (var parser = factory.createParser(json)) {
+            return ModelCodecs.current(parser) == JsonToken.VALUE_NULL ? null : codec.read(parser, this);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not deserialize the response to " + type.getName(), e);
+        }
+    }
+
+    public List<T> readList(byte[] json) {
+        try (var parser = factory.createParser(json)) {
+            if (ModelCodecs.current(parser) == JsonToken.VALUE_NULL)
+                return null;
+
+            ModelCodecs.expect(parser, JsonToken.START_ARRAY);
+            var result = new ArrayList<T>();
+            while (parser.nextToken() != JsonToken.END_ARRAY)
+                result.add(ModelCodecs.current(parser) == JsonToken.VALUE_NULL ? null : codec.read(parser, this));
+
+            return result;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not deserialize the response to a list of " + type.getName(), e);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package org.example.codec;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Streaming reader and writer for one model class. Implementations are generated at build time for every class
+ * annotated with jsonapi-converter's {@code @Type} (see {@code ModelCodecProcessor}) and bind the public fields
+ * directly, without reflection.
+ */
+public interface ModelCodec<T> {
+    Class<T> type();
+
+    /**
+     * The names of the bound fields, in declaration order; {@link FieldMask}s refer to them by index.
+     */
+    List<String> fields();
+
+    /**
+     * Reads one model from the parser, which is either positioned on the value or right before it. Unknown
+     * properties fail the read with an {@code UnrecognizedPropertyException}, like Jackson's
+     * {@code FAIL_ON_UNKNOWN_PROPERTIES}.
+     */
+    default T read(JsonParser parser) throws IOException {
+        return read(parser, null);
+    }
+
+    /**
+     * Like {@link #read(JsonParser)}, but only reads the fields in {@code mask} and skips the others as well as
+     * unknown properties. A {@code null} mask reads every field, and fails on unknown properties.
+     */
+    T read(JsonParser parser, FieldMask<T> mask) throws IOException;
+
+    void write(T value, JsonGenerator generator) throws IOException;
+}
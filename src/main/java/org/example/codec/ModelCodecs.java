@@ -0,0 +1,133 @@
+package org.example.codec;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.exc.UnrecognizedPropertyException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+/**
+ * Registry of the generated {@link ModelCodec}s, plus the value readers and writers the generated code delegates to.
+ * The readers coerce scalars to strings the same way Jackson does for {@code String} fields.
+ */
+public final class ModelCodecs {
+    private static final Map<Class<?>, ModelCodec<?>> codecs = new HashMap<>();
+
+    static {
+        for (var codec : ServiceLoader.load(ModelCodec.class, ModelCodecs.class.getClassLoader()))
+            codecs.put(codec.type(), codec);
+    }
+
+    private ModelCodecs() {
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> ModelCodec<T> get(Class<T> type) {
+        return (ModelCodec<T>) codecs.get(type);
+    }
+
+    public static boolean has(Class<?> type) {
+        return codecs.containsKey(type);
+    }
+
+    public static String readString(JsonParser parser) throws IOException {
+        var token = current(parser);
+        if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY)
+            throw new JsonParseException(parser, "Expected a string value but found " + token);
+
+        return parser.getValueAsString();
+    }
+
+    public static List<String> readStringList(JsonParser parser) throws IOException {
+        if (current(parser) == JsonToken.VALUE_NULL)
+            return null;
+
+        expect(parser, JsonToken.START_ARRAY);
+        var result = new ArrayList<String>();
+        while (parser.nextToken() != JsonToken.END_ARRAY)
+            result.add(readString(parser));
+
+        return result;
+    }
+
+    public static <T> T readModel(JsonParser parser, ModelCodec<T> codec) throws IOException {
+        return current(parser) == JsonToken.VALUE_NULL ? null : codec.read(parser);
+    }
+
+    public static <T> List<T> readModelList(JsonParser parser, ModelCodec<T> codec) throws IOException {
+        if (current(parser) == JsonToken.VALUE_NULL)
+            return null;
+
+        expect(parser, JsonToken.START_ARRAY);
+        var result = new ArrayList<T>();
+        while (parser.nextToken() != JsonToken.END_ARRAY)
+            result.add(readModel(parser, codec));
+
+        return result;
+    }
+
+    public static void writeString(JsonGenerator generator, String value) throws IOException {
+        if (value == null)
+            generator.writeNull();
+        else
+            generator.writeString(value);
+    }
+
+    public static void writeStringList(JsonGenerator generator, List<String> values) throws IOException {
+        if (values == null) {
+            generator.writeNull();
+            return;
+        }
+
+        generator.writeStartArray();
+        for (var value : values)
+            writeString(generator, value);
+        generator.writeEndArray();
+    }
+
+    public static <T> void writeModel(JsonGenerator generator, T value, ModelCodec<T> codec) throws IOException {
+        if (value == null)
+            generator.writeNull();
+        else
+            codec.write(value, generator);
+    }
+
+    public static <T> void writeModelList(JsonGenerator generator, List<T> values, ModelCodec<T> codec) throws IOException {
+        if (values == null) {
+            generator.writeNull();
+            return;
+        }
+
+        generator.writeStartArray();
+        for (var value : values)
+            writeModel(generator, value, codec);
+        generator.writeEndArray();
+    }
+
+    /**
+     * Moves a parser that has not been read yet onto its first token, so codecs can be called either way.
+     */
+    public static JsonToken current(JsonParser parser) throws IOException {
+        var token = parser.currentToken();
+        return token != null ? token : parser.nextToken();
+    }
+
+    /**
+     * What Jackson throws for a property the model does not have, with the known ones in the message.
+     */
+    public static UnrecognizedPropertyException unknownProperty(JsonParser parser, Class<?> type, String name, List<String> fields) {
+        return UnrecognizedPropertyException.from(parser, type, name, new ArrayList<>(fields));
+    }
+
+    public static void expect(JsonParser parser, JsonToken expected) throws IOException {
+        if (parser.currentToken() != expected)
+            throw new JsonParseException(parser, "Expected " + expected + " but found " + parser.currentToken());
+    }
+}
@@ -0,0 +1,62 @@
+package org.example.codec;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+
+import java.util.List;
+
+/**
+ * The formats the server can send instead of JSON ({@code server/middleware/formats.js}), chosen with the
+ * {@code Accept} header. They carry the same data model as JSON, so the generated {@link ModelCodec}s read all of
+ * them from a parser of the matching {@link JsonFactory}; {@link CodecObjectMapper} picks it from the response's
+ * {@code Content-Type}.
+ */
+public enum WireFormat {
+    JSON("application/json", new JsonFactory()),
+    CBOR("application/cbor", new CBORFactory()),
+    MESSAGE_PACK("application/msgpack", new MessagePackFactory(), "application/x-msgpack"),
+    SMILE("application/x-jackson-smile", new SmileFactory());
+
+    private final String mediaType;
+    private final JsonFactory factory;
+    private final List<String> aliases;
+
+    WireFormat(String mediaType, JsonFactory factory, String... aliases) {
+        this.mediaType = mediaType;
+        this.factory = factory;
+        this.aliases = List.of(aliases);
+    }
+
+    public String mediaType() {
+        return mediaType;
+    }
+
+    public JsonFactory factory() {
+        return factory;
+    }
+
+    /**
+     * Whether a {@code Content-Type} or {@code Accept} entry, parameters included, names this format.
+     */
+    public boolean matches(String contentType) {
+        if (contentType == null)
+            return false;
+
+        var type = contentType.split(";", 2)[0].trim().toLowerCase();
+        return type.equals(mediaType) || aliases.contains(type);
+    }
+
+    /**
+     * The format of a response with the given {@code Content-Type}; JSON for anything else, JSON:API included.
+     */
+    public static WireFormat of(String contentType) {
+        for (var format : values()) {
+            if (format.matches(contentType))
+                return format;
+        }
+
+        return JSON;
+    }
+}
@@ -0,0 +1,261 @@
+package org.example.codec.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Generates a {@code ModelCodec} named {@code <Model>Codec}, next to every class annotated with jsonapi-converter's
+ * {@code @Type}, and registers it in {@code META-INF/services}. Public instance fields are bound by name, like
+ * Jackson does, and {@code @JsonIgnore}d ones are left out. Supported field types are {@code String}, other
+ * {@code @Type} classes and {@code List}s of either. Unknown properties fail the read, unless it goes through a
+ * {@code FieldMask}.
+ *
+ * <p>The processor has to be compiled before the models, which is why the compiler plugin runs in two executions.
+ */
+@SupportedAnnotationTypes(ModelCodecProcessor.TYPE_ANNOTATION)
+public class ModelCodecProcessor extends AbstractProcessor {
+    static final String TYPE_ANNOTATION = "com.github.jasminb.jsonapi.annotations.Type";
+    private static final String IGNORE_ANNOTATION = "com.fasterxml.jackson.annotation.JsonIgnore";
+    private static final String SERVICE_FILE = "META-INF/services/org.example.codec.ModelCodec";
+
+    private enum Kind { STRING, STRING_LIST, MODEL, MODEL_LIST }
+
+    private record Field(String name, Kind kind, String model) {
+    }
+
+    private final Set<String> generated = new TreeSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment round) {
+        var annotation = processingEnv.getElementUtils().getTypeElement(TYPE_ANNOTATION);
+
+        if (annotation != null) {
+            for (var element : round.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() == ElementKind.CLASS)
+                    generate((TypeElement) element);
+            }
+        }
+
+        if (round.processingOver() && !generated.isEmpty())
+            writeServiceFile();
+
+        return false;
+    }
+
+    private void generate(TypeElement model) {
+        var fields = new ArrayList<Field>();
+        for (var field : ElementFilter.fieldsIn(model.getEnclosedElements())) {
+            var modifiers = field.getModifiers();
+            if (!modifiers.contains(Modifier.PUBLIC) || modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT))
+                continue;
+
+            // Like Jackson, which leaves the JSON:API relationships to the ResourceConverter
+            if (hasAnnotation(field, IGNORE_ANNOTATION))
+                continue;
+
+            var bound = bind(field);
+            if (bound == null) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "Unsupported field type for a generated codec: " + field.asType(), field);
+                return;
+            }
+
+            fields.add(bound);
+        }
+
+        var packageName = processingEnv.getElementUtils().getPackageOf(model).getQualifiedName().toString();
+        var modelName = model.getSimpleName().toString();
+        var codecName = modelName + "Codec";
+
+        try (var out = new PrintWriter(processingEnv.getFiler().createSourceFile(packageName + "." + codecName, model).openWriter())) {
+            write(out, packageName, modelName, codecName, fields);
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Could not write " + codecName + ": " + e, model);
+            return;
+        }
+
+        generated.add(packageName + "." + codecName);
+    }
+
+    private Field bind(VariableElement field) {
+        var name = field.getSimpleName().toString();
+        var type = field.asType();
+
+        if (isString(type))
+            return new Field(name, Kind.STRING, null);
+
+        if (isModel(type))
+            return new Field(name, Kind.MODEL, qualifiedName(type));
+
+        if (type.getKind() == TypeKind.DECLARED && qualifiedName(type).equals("java.util.List")) {
+            var arguments = ((DeclaredType) type).getTypeArguments();
+            if (arguments.size() != 1)
+                return null;
+
+            if (isString(arguments.get(0)))
+                return new Field(name, Kind.STRING_LIST, null);
+
+            if (isModel(arguments.get(0)))
+                return new Field(name, Kind.MODEL_LIST, qualifiedName(arguments.get(0)));
+        }
+
+        return null;
+    }
+
+    private void write(PrintWriter out, String packageName, String modelName, String codecName, List<Field> fields) {
+        var models = new TreeSet<String>();
+        fields.stream().filter(field -> field.model() != null).forEach(field -> models.add(field.model()));
+
+        out.println("package " + packageName + ";");
+        out.println();
+        out.println("import com.fasterxml.jackson.core.JsonGenerator;");
+        out.println("import com.fasterxml.jackson.core.JsonParser;");
+        out.println("import com.fasterxml.jackson.core.JsonToken;");
+        out.println("import org.example.codec.FieldMask;");
+        out.println("import org.example.codec.ModelCodec;");
+        out.println("import org.example.codec.ModelCodecs;");
+        out.println();
+        out.println("import java.io.IOException;");
+        out.println("import java.util.List;");
+        out.println();
+        out.println("@javax.annotation.processing.Generated(\"" + getClass().getName() + "\")");
+        out.println("public final class " + codecName + " implements ModelCodec<" + modelName + "> {");
+        for (var model : models)
+            out.println("    private static final ModelCodec<" + model + "> " + constant(model) + " = new " + model + "Codec();");
+        out.println("    private static final List<String> FIELDS = List.of(" + String.join(", ", fields.stream().map(field -> "\"" + field.name() + "\"").toList()) + ");");
+        out.println();
+
+        out.println("    @Override");
+        out.println("    public Class<" + modelName + "> type() {");
+        out.println("        return " + modelName + ".class;");
+        out.println("    }");
+        out.println();
+
+        out.println("    @Override");
+        out.println("    public List<String> fields() {");
+        out.println("        return FIELDS;");
+        out.println("    }");
+        out.println();
+
+        out.println("    @Override");
+        out.println("    public " + modelName + " read(JsonParser parser, FieldMask<" + modelName + "> mask) throws IOException {");
+        out.println("        if (ModelCodecs.current(parser) == JsonToken.VALUE_NULL)");
+        out.println("            return null;");
+        out.println();
+        out.println("        ModelCodecs.expect(parser, JsonToken.START_OBJECT);");
+        out.println("        var result = new " + modelName + "();");
+        out.println("        while (parser.nextToken() == JsonToken.FIELD_NAME) {");
+        out.println("            var name = parser.currentName();");
+        out.println("            parser.nextToken();");
+        out.println("            switch (name) {");
+        // Masked out fields are skipped before their value is turned into a String or a List
+        for (var index = 0; index < fields.size(); index++) {
+            var field = fields.get(index);
+            out.println("                case \"" + field.name() + "\" -> {");
+            out.println("                    if (mask == null || mask.includes(" + index + "))");
+            out.println("                        result." + field.name() + " = " + reader(field) + ";");
+            out.println("                    else");
+            out.println("                        parser.skipChildren();");
+            out.println("                }");
+        }
+        // Like Jackson's FAIL_ON_UNKNOWN_PROPERTIES, except for masked reads of projected responses
+        out.println("                default -> {");
+        out.println("                    if (mask == null)");
+        out.println("                        throw ModelCodecs.unknownProperty(parser, " + modelName + ".class, name, FIELDS);");
+        out.println("                    parser.skipChildren();");
+        out.println("                }");
+        out.println("            }");
+        out.println("        }");
+        out.println();
+        out.println("        ModelCodecs.expect(parser, JsonToken.END_OBJECT);");
+        out.println("        return result;");
+        out.println("    }");
+        out.println();
+
+        out.println("    @Override");
+        out.println("    public void write(" + modelName + " value, JsonGenerator generator) throws IOException {");
+        out.println("        generator.writeStartObject();");
+        for (var field : fields) {
+            out.println("        generator.writeFieldName(\"" + field.name() + "\");");
+            out.println("        " + writer(field) + ";");
+        }
+        out.println("        generator.writeEndObject();");
+        out.println("    }");
+        out.println("}");
+    }
+
+    private static String reader(Field field) {
+        return switch (field.kind()) {
+            case STRING -> "ModelCodecs.readString(parser)";
+            case STRING_LIST -> "ModelCodecs.readStringList(parser)";
+            case MODEL -> "ModelCodecs.readModel(parser, " + constant(field.model()) + ")";
+            case MODEL_LIST -> "ModelCodecs.readModelList(parser, " + constant(field.model()) + ")";
+        };
+    }
+
+    private static String writer(Field field) {
+        var value = "value." + field.name();
+        return switch (field.kind()) {
+            case STRING -> "ModelCodecs.writeString(generator, " + value + ")";
+            case STRING_LIST -> "ModelCodecs.writeStringList(generator, " + value + ")";
+            case MODEL -> "ModelCodecs.writeModel(generator, " + value + ", " + constant(field.model()) + ")";
+            case MODEL_LIST -> "ModelCodecs.writeModelList(generator, " + value + ", " + constant(field.model()) + ")";
+        };
+    }
+
+    private static String constant(String model) {
+        return model.substring(model.lastIndexOf('.') + 1).toUpperCase() + "_CODEC";
+    }
+
+    private void writeServiceFile() {
+        try (var out = new PrintWriter(processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", SERVICE_FILE).openWriter())) {
+            generated.forEach(out::println);
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Could not write " + SERVICE_FILE + ": " + e);
+        }
+    }
+
+    private boolean isString(TypeMirror type) {
+        return type.getKind() == TypeKind.DECLARED && qualifiedName(type).equals("java.lang.String");
+    }
+
+    private boolean isModel(TypeMirror type) {
+        if (type.getKind() != TypeKind.DECLARED)
+            return false;
+
+        return hasAnnotation(((DeclaredType) type).asElement(), TYPE_ANNOTATION);
+    }
+
+    private static boolean hasAnnotation(Element element, String annotation) {
+        return element.getAnnotationMirrors().stream()
+                .anyMatch(mirror -> mirror.getAnnotationType().toString().equals(annotation));
+    }
+
+    private static String qualifiedName(TypeMirror type) {
+        return ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().toString();
+    }
+}
@@ -0,0 +1,404 @@
+package org.example.data;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.TreeSet;
+
+/**
+ * Writes a synthetic {@code db.json} of any size in the shapes of {@code org.example.models}, for benchmarks that need
+ * more than the 64 entities of the real one:
+ * <pre>
+ * new DatasetGenerator(42, DatasetGenerator.Sizes.scaled(1_000_000)).write(Path.of("target/db-1m.json"));
+ * </pre>
+ * The same seed and sizes always produce the same bytes. Every entity is computed from the seed, its collection and its
+ * id alone, and written as soon as it is computed, so memory use does not grow with the size of the dataset.
+ *
+ * <p>Relationships are consistent both ways: if {@code /people/7/} lists {@code /films/2/}, film 2 lists person 7 as a
+ * character, and a planet's residents are exactly the people with it as their homeworld. Each relationship hands out a
+ * fixed number of links per entity on one side ({@link Relation#links}) and shuffles them with a bijection over all the
+ * links, which can be inverted to find the entities linking to one on the other side without remembering any of them.
+ */
+public class DatasetGenerator {
+    public static final List<String> COLLECTIONS = List.of("planets", "people", "films", "species", "vehicles", "starships");
+
+    private static final List<Relation> RELATIONS = List.of(
+            new Relation("people", "homeworld", 1, "planets", "residents"),
+            new Relation("species", "homeworld", 1, "planets", null),
+            new Relation("people", "films", 3, "films", "characters"),
+            new Relation("planets", "films", 1, "films", "planets"),
+            new Relation("starships", "films", 2, "films", "starships"),
+            new Relation("vehicles", "films", 1, "films", "vehicles"),
+            new Relation("species", "films", 2, "films", "species"),
+            new Relation("people", "species", 1, "species", "people"),
+            new Relation("people", "vehicles", 1, "vehicles", "pilots"),
+            new Relation("people", "starships", 1, "starships", "pilots"));
+
+    private static final long MAX_LINKS = 3_000_000_000L;
+
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'000Z'").withZone(ZoneOffset.UTC);
+    private static final DateTimeFormatter DATE = DateTimeFormatter.ofPattern("yyyy-MM-dd").withZone(ZoneOffset.UTC);
+    private static final long CREATED = Instant.parse("2014-12-09T13:50:49.641Z").toEpochMilli();
+    private static final long RELEASED = Instant.parse("1977-05-25T00:00:00Z").toEpochMilli();
+
+    private static final String[] SYLLABLES = {"ta", "to", "ine", "al", "der", "aan", "ho", "th", "da", "go", "bah", "kas",
+            "hyy", "yk", "na", "boo", "en", "dor", "cor", "us", "cant", "bes", "pin", "sk", "ryl", "oth", "mus", "tafar"};
+    private static final String[] WORDS = {"the", "rebel", "empire", "galaxy", "star", "fleet", "secret", "plans", "war",
+            "peace", "senate", "jedi", "sith", "hope", "dark", "side", "force", "battle", "station", "republic", "of", "a"};
+    private static final String[] CLIMATES = {"arid", "temperate", "tropical", "frozen", "murky", "humid", "windy", "hot",
+            "artificial temperate", "superheated"};
+    private static final String[] TERRAINS = {"desert", "grasslands", "mountains", "jungle", "rainforests", "tundra",
+            "ice caves", "swamp", "cityscape", "ocean", "gas giant", "forests", "lakes"};
+    private static final String[] GENDERS = {"male", "female", "n/a", "hermaphrodite", "none"};
+    private static final String[] COLORS = {"blond", "brown", "black", "white", "grey", "red", "blue", "green", "yellow",
+            "orange", "hazel", "fair", "gold", "light", "dark", "none", "n/a"};
+    private static final String[] CLASSIFICATIONS = {"mammal", "artificial", "sentient", "gastropod", "reptile", "amphibian",
+            "insectoid", "reptilian"};
+    private static final String[] LANGUAGES = {"Galactic Basic", "Shyriiwook", "Huttese", "Rodese", "Gungan basic",
+            "Ewokese", "Sullutese", "n/a"};
+    private static final String[] MANUFACTURERS = {"Corellian Engineering Corporation", "Kuat Drive Yards",
+            "Sienar Fleet Systems", "Incom Corporation", "Koensayr Manufacturing", "Gallofree Yards", "Imperial Department of Military Research",
+            "Corellia Mining Corporation", "Aratech Repulsor Company", "Baktoid Armor Workshop"};
+    private static final String[] VEHICLE_CLASSES = {"wheeled", "repulsorcraft", "starfighter", "airspeeder",
+            "space/planetary bomber", "assault walker", "walker", "sail barge", "speeder"};
+    private static final String[] STARSHIP_CLASSES = {"corvette", "Star Destroyer", "landing craft", "Deep Space Mobile Battlestation",
+            "Light freighter", "assault starfighter", "Starfighter", "Star dreadnought", "transport"};
+    private static final String[] CONSUMABLES = {"1 day", "2 days", "1 week", "2 months", "6 months", "1 year", "2 years",
+            "3 years", "none", "unknown"};
+    private static final String[] PEOPLE = {"George Lucas", "Richard Marquand", "Irvin Kershner", "Gary Kurtz",
+            "Rick McCallum", "Howard G. Kazanjian"};
+
+    private static final JsonFactory factory = new JsonFactory();
+
+    private final long seed;
+    private final Sizes sizes;
+    private final List<Shuffle> shuffles = new ArrayList<>();
+
+    /**
+     * How many entities every collection gets.
+     */
+    public record Sizes(int planets, int people, int films, int species, int vehicles, int starships) {
+        public Sizes {
+            if (planets < 1 || people < 1 || films < 1 || species < 1 || vehicles < 1 || starships < 1)
+                throw new IllegalArgumentException("every collection needs at least one entity");
+        }
+
+        /**
+         * About {@code rows} entities in total, split between the collections like in {@code server/db.json}.
+         */
+        public static Sizes scaled(long rows) {
+            return new Sizes(share(rows, 11), share(rows, 20), share(rows, 6), share(rows, 10), share(rows, 7), share(rows, 10));
+        }
+
+        private static int share(long rows, int of64) {
+            return Math.toIntExact(Math.max(1, Math.round(rows * of64 / 64.0)));
+        }
+
+        public int of(String collection) {
+            return switch (collection) {
+                case "planets" -> planets;
+                case "people" -> people;
+                case "films" -> films;
+                case "species" -> species;
+                case "vehicles" -> vehicles;
+                case "starships" -> starships;
+                default -> throw new IllegalArgumentException("Unknown collection: " + collection);
+            };
+        }
+
+        public long total() {
+            return (long) planets + people + films + species + vehicles + starships;
+        }
+    }
+
+    /**
+     * Every entity of {@code from} links to {@code links} entities of {@code to} through {@code field}, and the
+     * entities of {@code to} list them back through {@code inverse}, if it is not {@code null}.
+     */
+    record Relation(String from, String field, int links, String to, String inverse) {
+    }
+
+    // x -> (multiplier * x + offset) mod size, a bijection as long as the multiplier and the size are coprime
+    private record Shuffle(Relation relation, long size, long multiplier, long offset, long inverse) {
+        long apply(long x) {
+            return Math.floorMod(multiplier * x + offset, size);
+        }
+
+        long invert(long y) {
+            return Math.floorMod(inverse * Math.floorMod(y - offset, size), size);
+        }
+    }
+
+    public DatasetGenerator(long seed, Sizes sizes) {
+        this.seed = seed;
+        this.sizes = sizes;
+
+        var random = new SplittableRandom(seed);
+        for (var relation : RELATIONS) {
+            var size = (long) sizes.of(relation.from()) * relation.links();
+            // Shuffling multiplies two numbers below the size
+            if (size > MAX_LINKS)
+                throw new IllegalArgumentException("Too many " + relation.from() + " for " + relation.field() + " links: " + size);
+
+            var multiplier = size == 1 ? 1 : 1 + random.nextLong(size - 1);
+            while (BigInteger.valueOf(multiplier).gcd(BigInteger.valueOf(size)).intValue() != 1)
+                multiplier = multiplier % (size - 1) + 1;
+
+            var inverse = BigInteger.valueOf(multiplier).modInverse(BigInteger.valueOf(size)).longValue();
+            shuffles.add(new Shuffle(relation, size, multiplier, random.nextLong(size), inverse));
+        }
+    }
+
+    public Sizes sizes() {
+        return sizes;
+    }
+
+    public void write(Path file) throws IOException {
+        try (var out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)) {
+            write(out);
+        }
+    }
+
+    public void write(OutputStream out) throws IOException {
+        try (var generator = factory.createGenerator(out)) {
+            write(generator);
+        }
+    }
+
+    /**
+     * Writes the whole database as one object holding an array per collection, like {@code db.json}.
+     */
+    public void write(JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+
+        for (var collection : COLLECTIONS) {
+            generator.writeArrayFieldStart(collection);
+            for (var id = 1; id <= sizes.of(collection); id++)
+                writeEntity(generator, collection, id);
+            generator.writeEndArray();
+        }
+
+        generator.writeEndObject();
+    }
+
+    /**
+     * One entity on its own, exactly as {@link #write} writes it.
+     */
+    public ObjectNode entity(ObjectMapper mapper, String collection, int id) throws IOException {
+        try (var buffer = new TokenBuffer(mapper, false)) {
+            writeEntity(buffer, collection, id);
+            return mapper.readTree(buffer.asParser());
+        }
+    }
+
+    public void writeEntity(JsonGenerator out, String collection, int id) throws IOException {
+        if (id < 1 || id > sizes.of(collection))
+            throw new IllegalArgumentException(collection + " has no entity " + id);
+
+        var random = new SplittableRandom(seed ^ (COLLECTIONS.indexOf(collection) + 1) * 0x9E3779B97F4A7C15L ^ id * 0xC2B2AE3D27D4EB4FL);
+
+        out.writeStartObject();
+        out.writeNumberField("id", id);
+
+        switch (collection) {
+            case "planets" -> {
+                out.writeStringField("name", name(random, id));
+                out.writeStringField("rotation_period", number(random, 6, 60));
+                out.writeStringField("orbital_period", number(random, 100, 5000));
+                out.writeStringField("diameter", number(random, 0, 200000));
+                out.writeStringField("climate", pick(random, CLIMATES));
+                out.writeStringField("gravity", random.nextInt(1, 4) + " standard");
+                out.writeStringField("terrain", pick(random, TERRAINS) + ", " + pick(random, TERRAINS));
+                out.writeStringField("surface_water", number(random, 0, 100));
+                out.writeStringField("population", number(random, 0, 2000000000));
+                writeLinks(out, "residents", collection, id);
+                writeLinks(out, "films", collection, id);
+            }
+            case "people" -> {
+                out.writeStringField("name", name(random, id));
+                out.writeStringField("height", number(random, 60, 260));
+                out.writeStringField("mass", number(random, 20, 1400));
+                out.writeStringField("hair_color", pick(random, COLORS));
+                out.writeStringField("skin_color", pick(random, COLORS));
+                out.writeStringField("eye_color", pick(random, COLORS));
+                out.writeStringField("birth_year", random.nextInt(8, 900) + "BBY");
+                out.writeStringField("gender", pick(random, GENDERS));
+                writeLinks(out, "homeworld", collection, id);
+                writeLinks(out, "films", collection, id);
+                writeLinks(out, "species", collection, id);
+                writeLinks(out, "vehicles", collection, id);
+                writeLinks(out, "starships", collection, id);
+            }
+            case "films" -> {
+                out.writeStringField("title", capitalize(words(random, 3)));
+                out.writeNumberField("episode_id", id);
+                out.writeStringField("opening_crawl", words(random, 60));
+                out.writeStringField("director", pick(random, PEOPLE));
+                out.writeStringField("producer", pick(random, PEOPLE) + ", " + pick(random, PEOPLE));
+                out.writeStringField("release_date", DATE.format(Instant.ofEpochMilli(RELEASED + random.nextLong(1_500_000_000_000L))));
+                writeLinks(out, "characters", collection, id);
+                writeLinks(out, "planets", collection, id);
+                writeLinks(out, "starships", collection, id);
+                writeLinks(out, "vehicles", collection, id);
+                writeLinks(out, "species", collection, id);
+            }
+            case "species" -> {
+                out.writeStringField("name", name(random, id));
+                out.writeStringField("classification", pick(random, CLASSIFICATIONS));
+                out.writeStringField("designation", random.nextBoolean() ? "sentient" : "reptilian");
+                out.writeStringField("average_height", number(random, 30, 300));
+                out.writeStringField("skin_colors", pick(random, COLORS) + ", " + pick(random, COLORS));
+                out.writeStringField("hair_colors", pick(random, COLORS) + ", " + pick(random, COLORS));
+                out.writeStringField("eye_colors", pick(random, COLORS) + ", " + pick(random, COLORS));
+                out.writeStringField("average_lifespan", number(random, 10, 1000));
+                writeLinks(out, "homeworld", collection, id);
+                out.writeStringField("language", pick(random, LANGUAGES));
+                writeLinks(out, "people", collection, id);
+                writeLinks(out, "films", collection, id);
+            }
+            case "vehicles", "starships" -> {
+                var starship = collection.equals("starships");
+                out.writeStringField("name", name(random, id));
+                out.writeStringField("model", name(random, id) + (starship ? "-class" : " model"));
+                out.writeStringField("manufacturer", pick(random, MANUFACTURERS));
+                out.writeStringField("cost_in_credits", number(random, 1000, 1000000000));
+                out.writeStringField("length", number(random, 3, 20000));
+                out.writeStringField("max_atmosphering_speed", number(random, 30, 1500));
+                out.writeStringField("crew", number(random, 1, 50000));
+                out.writeStringField("passengers", number(random, 0, 800000));
+                out.writeStringField("cargo_capacity", number(random, 0, 1000000000));
+                out.writeStringField("consumables", pick(random, CONSUMABLES));
+                if (starship) {
+                    out.writeStringField("hyperdrive_rating", random.nextInt(1, 7) + ".0");
+                    out.writeStringField("MGLT", number(random, 10, 120));
+                    out.writeStringField("starship_class", pick(random, STARSHIP_CLASSES));
+                } else
+                    out.writeStringField("vehicle_class", pick(random, VEHICLE_CLASSES));
+                writeLinks(out, "pilots", collection, id);
+                writeLinks(out, "films", collection, id);
+            }
+            default -> throw new IllegalArgumentException("Unknown collection: " + collection);
+        }
+
+        var created = CREATED + random.nextLong(86_400_000L * 30);
+        out.writeStringField("created", TIMESTAMP.format(Instant.ofEpochMilli(created)));
+        out.writeStringField("edited", TIMESTAMP.format(Instant.ofEpochMilli(created + random.nextLong(86_400_000L * 30))));
+        out.writeEndObject();
+    }
+
+    /**
+     * The ids {@code collection}'s entity {@code id} links to through {@code field}, in ascending order.
+     */
+    public List<Integer> links(String collection, String field, int id) {
+        var result = new TreeSet<Integer>();
+
+        for (var shuffle : shuffles) {
+            var relation = shuffle.relation();
+            var targets = sizes.of(relation.to());
+
+            if (relation.from().equals(collection) && relation.field().equals(field)) {
+                // Link j of entity i is number i * links + j of the relationship, and lands on the target its
+                // shuffled number points at
+                for (var j = 0; j < relation.links(); j++)
+                    result.add((int) (shuffle.apply((long) (id - 1) * relation.links() + j) % targets) + 1);
+            } else if (relation.to().equals(collection) && field.equals(relation.inverse())) {
+                // The shuffled numbers landing here are id - 1, id - 1 + targets, ...
+                for (long shuffled = id - 1; shuffled < shuffle.size(); shuffled += targets)
+                    result.add((int) (shuffle.invert(shuffled) / relation.links()) + 1);
+            }
+        }
+
+        return new ArrayList<>(result);
+    }
+
+    // Single links (homeworld) are written as one URL, everything else as a list
+    private void writeLinks(JsonGenerator out, String field, String collection, int id) throws IOException {
+        var relation = RELATIONS.stream()
+                .filter(candidate -> candidate.from().equals(collection) && candidate.field().equals(field)
+                        || candidate.to().equals(collection) && field.equals(candidate.inverse()))
+                .findFirst()
+                .orElseThrow();
+        var target = relation.from().equals(collection) && relation.field().equals(field) ? relation.to() : relation.from();
+        var ids = links(collection, field, id);
+
+        if (field.equals("homeworld")) {
+            out.writeStringField(field, ids.isEmpty() ? null : link(target, ids.get(0)));
+            return;
+        }
+
+        out.writeArrayFieldStart(field);
+        for (var linked : ids)
+            out.writeString(link(target, linked));
+        out.writeEndArray();
+    }
+
+    private static String link(String collection, int id) {
+        return "/" + collection + "/" + id + "/";
+    }
+
+    // Ids keep the names unique
+    private static String name(SplittableRandom random, int id) {
+        var name = new StringBuilder();
+        var syllables = random.nextInt(2, 4);
+        for (var i = 0; i < syllables; i++)
+            name.append(pick(random, SYLLABLES));
+        return capitalize(name.toString()) + " " + id;
+    }
+
+    private static String words(SplittableRandom random, int count) {
+        var text = new StringBuilder();
+        for (var i = 0; i < count; i++) {
+            if (i > 0)
+                text.append(i % 6 == 0 ? "\r\n" : " ");
+            text.append(pick(random, WORDS));
+        }
+        return text.toString();
+    }
+
+    // Like SWAPI, some numbers are not known
+    private static String number(SplittableRandom random, int from, int to) {
+        return random.nextInt(20) == 0 ? "unknown" : String.valueOf(random.nextInt(from, to + 1));
+    }
+
+    private static String pick(SplittableRandom random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private static String capitalize(String text) {
+        return Character.toUpperCase(text.charAt(0)) + text.substring(1);
+    }
+
+    /**
+     * {@code DatasetGenerator <rows> <file> [seed]}
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: DatasetGenerator <rows> <file> [seed]");
+            System.exit(2);
+        }
+
+        var sizes = Sizes.scaled(Long.parseLong(args[0].replace("_", "")));
+        var seed = args.length > 2 ? Long.parseLong(args[2]) : 42;
+        var file = Path.of(args[1]);
+
+        var start = System.nanoTime();
+        new DatasetGenerator(seed, sizes).write(file);
+        System.out.printf("%d entities (%s) written to %s in %d ms, %d MB%n", sizes.total(), sizes, file,
+                (System.nanoTime() - start) / 1_000_000, Files.size(file) >> 20);
+    }
+}
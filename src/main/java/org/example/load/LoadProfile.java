@@ -0,0 +1,45 @@
+package org.example.load;
+
+import java.time.Duration;
+
+/**
+ * How a {@link LoadRunner} drives its scenarios. A closed profile keeps {@code concurrency} virtual users busy, each
+ * starting its next iteration as soon as the previous one finished. An open profile starts {@code arrivalRate}
+ * iterations per second no matter how long they take, with at most {@code concurrency} of them in flight.
+ *
+ * <p>Iterations started during the warmup run normally but are left out of the report.
+ */
+public record LoadProfile(int concurrency, double arrivalRate, Duration duration, Duration warmup) {
+    public LoadProfile {
+        if (concurrency < 1)
+            throw new IllegalArgumentException("concurrency must be at least 1");
+        if (arrivalRate < 0)
+            throw new IllegalArgumentException("arrivalRate must not be negative");
+        if (duration.isNegative() || duration.isZero())
+            throw new IllegalArgumentException("duration must be positive");
+        if (warmup.isNegative())
+            throw new IllegalArgumentException("warmup must not be negative");
+    }
+
+    public static LoadProfile closed(int concurrency, Duration duration, Duration warmup) {
+        return new LoadProfile(concurrency, 0, duration, warmup);
+    }
+
+    public static LoadProfile open(double arrivalRate, int maxConcurrency, Duration duration, Duration warmup) {
+        if (arrivalRate <= 0)
+            throw new IllegalArgumentException("arrivalRate must be positive");
+
+        return new LoadProfile(maxConcurrency, arrivalRate, duration, warmup);
+    }
+
+    public boolean isOpen() {
+        return arrivalRate > 0;
+    }
+
+    @Override
+    public String toString() {
+        return isOpen()
+                ? String.format("%.1f/s (at most %d in flight) for %ds after %ds warmup", arrivalRate, concurrency, duration.toSeconds(), warmup.toSeconds())
+                : String.format("%d virtual users for %ds after %ds warmup", concurrency, duration.toSeconds(), warmup.toSeconds());
+    }
+}
@@ -0,0 +1,62 @@
+package org.example.load;
+
+import org.HdrHistogram.Histogram;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * What a {@link LoadRunner} measured after the warmup: iterations, failures and latency percentiles (in microseconds)
+ * per scenario, and the throughput over the measured part of the run.
+ */
+public record LoadReport(LoadProfile profile, boolean virtualThreads, Duration elapsed, List<Scenario> scenarios) {
+    public record Scenario(String name, Histogram latencies, long failures, String firstFailure) {
+        public long iterations() {
+            return latencies.getTotalCount();
+        }
+    }
+
+    public long iterations() {
+        return scenarios.stream().mapToLong(Scenario::iterations).sum();
+    }
+
+    public long failures() {
+        return scenarios.stream().mapToLong(Scenario::failures).sum();
+    }
+
+    /**
+     * Iterations per second over the measured part of the run.
+     */
+    public double throughput() {
+        return iterations() / (elapsed.toNanos() / 1e9);
+    }
+
+    public Histogram latencies() {
+        var total = new Histogram(3);
+        scenarios.forEach(scenario -> total.add(scenario.latencies()));
+        return total;
+    }
+
+    public String format() {
+        var out = new StringBuilder(String.format("Load: %s on %s threads, %d iterations in %.1fs (%.1f/s), %d failed%n",
+                profile, virtualThreads ? "virtual" : "platform", iterations(), elapsed.toNanos() / 1e9, throughput(), failures()));
+
+        out.append(String.format("%-32s %10s %8s %10s %10s %10s %10s%n", "scenario", "iterations", "failed", "p50 us", "p99 us", "p999 us", "max us"));
+        for (var scenario : scenarios)
+            out.append(row(scenario.name(), scenario.latencies(), scenario.failures()));
+        out.append(row("all", latencies(), failures()));
+
+        for (var scenario : scenarios) {
+            if (scenario.firstFailure() != null)
+                out.append(String.format("%s first failed with %s%n", scenario.name(), scenario.firstFailure()));
+        }
+
+        return out.toString();
+    }
+
+    private static String row(String name, Histogram latencies, long failures) {
+        return String.format("%-32s %10d %8d %10d %10d %10d %10d%n", name, latencies.getTotalCount(), failures,
+                latencies.getValueAtPercentile(50), latencies.getValueAtPercentile(99),
+                latencies.getValueAtPercentile(99.9), latencies.getMaxValue());
+    }
+}
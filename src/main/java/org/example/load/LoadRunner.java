@@ -0,0 +1,168 @@
+package org.example.load;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs named scenarios (plain {@code Runnable}s that throw on failure, such as the {@code APITests} methods) as a load
+ * profile and reports throughput and end-to-end latency per scenario. Iterations go round robin over the scenarios.
+ *
+ * <p>The build targets Java 17, so the virtual users are platform threads: one per concurrent iteration, which is
+ * what bounds {@code load.concurrency} in practice. Only when the tests run on a Java 21 JVM are virtual threads
+ * picked up instead; the report says which it was.
+ *
+ * <p>Iterations count once they finish after the warmup, so iterations slower than the measured duration still show
+ * up. In an open profile the latency is measured from the moment the iteration was due to start, so a saturated
+ * server cannot hide its queueing delay by slowing down the arrivals.
+ */
+public class LoadRunner {
+    private final Map<String, Runnable> scenarios;
+
+    public LoadRunner(Map<String, Runnable> scenarios) {
+        if (scenarios.isEmpty())
+            throw new IllegalArgumentException("At least one scenario is needed");
+
+        this.scenarios = new LinkedHashMap<>(scenarios);
+    }
+
+    public LoadReport run(LoadProfile profile) throws InterruptedException {
+        var results = new ArrayList<Results>();
+        scenarios.forEach((name, scenario) -> results.add(new Results(name, scenario)));
+
+        var virtualThreads = virtualThreadExecutor();
+        var executor = virtualThreads != null ? virtualThreads : platformThreadExecutor(profile.concurrency());
+
+        var start = System.nanoTime();
+        var measureFrom = start + profile.warmup().toNanos();
+        var end = measureFrom + profile.duration().toNanos();
+        var next = new AtomicLong();
+
+        try {
+            if (profile.isOpen())
+                runOpen(profile, executor, results, next, measureFrom, start, end);
+            else
+                runClosed(profile, executor, results, next, measureFrom, end);
+        } finally {
+            executor.shutdown();
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES))
+                executor.shutdownNow();
+        }
+
+        var elapsed = Duration.ofNanos(System.nanoTime() - measureFrom);
+        return new LoadReport(profile, virtualThreads != null, elapsed, results.stream().map(Results::result).toList());
+    }
+
+    private static void runClosed(LoadProfile profile, ExecutorService executor, List<Results> results, AtomicLong next,
+                                  long measureFrom, long end) {
+        for (var user = 0; user < profile.concurrency(); user++) {
+            executor.execute(() -> {
+                for (var begin = System.nanoTime(); begin < end; begin = System.nanoTime())
+                    pick(results, next).execute(begin, measureFrom);
+            });
+        }
+    }
+
+    private static void runOpen(LoadProfile profile, ExecutorService executor, List<Results> results, AtomicLong next,
+                                long measureFrom, long start, long end) throws InterruptedException {
+        var inFlight = new Semaphore(profile.concurrency());
+        var interval = 1_000_000_000d / profile.arrivalRate();
+
+        for (long arrival = 0; ; arrival++) {
+            var due = start + (long) (arrival * interval);
+            if (due >= end)
+                break;
+
+            for (var wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime())
+                LockSupport.parkNanos(wait);
+
+            // Waiting here for a free slot delays the arrivals, but not the time they are measured from
+            inFlight.acquire();
+            var scenario = pick(results, next);
+            executor.execute(() -> {
+                try {
+                    scenario.execute(due, measureFrom);
+                } finally {
+                    inFlight.release();
+                }
+            });
+        }
+    }
+
+    private static Results pick(List<Results> results, AtomicLong next) {
+        return results.get((int) (next.getAndIncrement() % results.size()));
+    }
+
+    /**
+     * {@code Executors.newVirtualThreadPerTaskExecutor()} when the running JDK has it, looked up reflectively so the
+     * project still builds for Java 17. {@code null} otherwise.
+     */
+    private static ExecutorService virtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            // Not there before Java 19, and a preview feature up to Java 20
+            return null;
+        }
+    }
+
+    private static ExecutorService platformThreadExecutor(int threads) {
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            var thread = new Thread(runnable, "load-runner");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static class Results {
+        private final String name;
+        private final Runnable scenario;
+        private final Histogram latencies = new ConcurrentHistogram(3);
+        private final LongAdder failures = new LongAdder();
+        private final AtomicReference<Throwable> firstFailure = new AtomicReference<>();
+
+        Results(String name, Runnable scenario) {
+            this.name = name;
+            this.scenario = scenario;
+        }
+
+        void execute(long due, long measureFrom) {
+            Throwable failure = null;
+            try {
+                scenario.run();
+            } catch (Throwable e) {
+                failure = e;
+            }
+
+            var finished = System.nanoTime();
+            if (finished < measureFrom)
+                return;
+
+            if (failure != null) {
+                failures.increment();
+                firstFailure.compareAndSet(null, failure);
+            }
+
+            latencies.recordValue(TimeUnit.NANOSECONDS.toMicros(finished - due));
+        }
+
+        LoadReport.Scenario result() {
+            var failure = firstFailure.get();
+            return new LoadReport.Scenario(name, latencies.copy(), failures.sum(),
+                    failure == null ? null : failure.toString());
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package org.example.models;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.github.jasminb.jsonapi.annotations.Id;
+import com.github.jasminb.jsonapi.annotations.Relationship;
 import com.github.jasminb.jsonapi.annotations.Type;
 
 import java.util.List;
@@ -23,4 +25,21 @@ public class Film {
     public List<String> species;
     public String created;
     public String edited;
+
+    // Relationships of the JSON:API documents, only filled in by a ResourceConverter
+    @JsonIgnore
+    @Relationship("characters")
+    public List<Person> linkedCharacters;
+    @JsonIgnore
+    @Relationship("planets")
+    public List<Planet> linkedPlanets;
+    @JsonIgnore
+    @Relationship("starships")
+    public List<Starship> linkedStarships;
+    @JsonIgnore
+    @Relationship("vehicles")
+    public List<Vehicle> linkedVehicles;
+    @JsonIgnore
+    @Relationship("species")
+    public List<Species> linkedSpecies;
 }
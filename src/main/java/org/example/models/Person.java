@@ -1,6 +1,8 @@
 package org.example.models;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.github.jasminb.jsonapi.annotations.Id;
+import com.github.jasminb.jsonapi.annotations.Relationship;
 import com.github.jasminb.jsonapi.annotations.Type;
 
 import java.util.List;
@@ -24,4 +26,21 @@ public class Person {
     public List<String> starships;
     public String created;
     public String edited;
+
+    // Relationships of the JSON:API documents, only filled in by a ResourceConverter
+    @JsonIgnore
+    @Relationship("homeworld")
+    public Planet linkedHomeworld;
+    @JsonIgnore
+    @Relationship("films")
+    public List<Film> linkedFilms;
+    @JsonIgnore
+    @Relationship("species")
+    public List<Species> linkedSpecies;
+    @JsonIgnore
+    @Relationship("vehicles")
+    public List<Vehicle> linkedVehicles;
+    @JsonIgnore
+    @Relationship("starships")
+    public List<Starship> linkedStarships;
 }
@@ -1,6 +1,8 @@
 package org.example.models;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.github.jasminb.jsonapi.annotations.Id;
+import com.github.jasminb.jsonapi.annotations.Relationship;
 import com.github.jasminb.jsonapi.annotations.Type;
 
 import java.util.List;
@@ -23,4 +25,15 @@ public class Species {
     public List<String> films;
     public String created;
     public String edited;
+
+    // Relationships of the JSON:API documents, only filled in by a ResourceConverter
+    @JsonIgnore
+    @Relationship("homeworld")
+    public Planet linkedHomeworld;
+    @JsonIgnore
+    @Relationship("people")
+    public List<Person> linkedPeople;
+    @JsonIgnore
+    @Relationship("films")
+    public List<Film> linkedFilms;
 }
@@ -1,6 +1,8 @@
 package org.example.models;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.github.jasminb.jsonapi.annotations.Id;
+import com.github.jasminb.jsonapi.annotations.Relationship;
 import com.github.jasminb.jsonapi.annotations.Type;
 
 import java.util.List;
@@ -26,4 +28,12 @@ public class Starship {
     public List<String> films;
     public String created;
     public String edited;
+
+    // Relationships of the JSON:API documents, only filled in by a ResourceConverter
+    @JsonIgnore
+    @Relationship("pilots")
+    public List<Person> linkedPilots;
+    @JsonIgnore
+    @Relationship("films")
+    public List<Film> linkedFilms;
 }
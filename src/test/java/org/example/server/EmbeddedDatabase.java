@@ -0,0 +1,419 @@
+package org.example.server;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * In-memory copy of the json-server database. Every collection is a map keyed by id, so lookups by id do not scan
+ * the collection. Sequences, fingerprints and snapshots behave like the ones in {@code server/middleware}.
+ */
+class EmbeddedDatabase {
+    private static final int HISTORY_SIZE = 32;
+    private static final BigInteger ROLLUP_WIDTH = BigInteger.ONE.shiftLeft(160);
+
+    private final ObjectMapper mapper;
+
+    private Map<String, Map<String, ObjectNode>> collections = new LinkedHashMap<>();
+    private final Map<String, Long> sequences = new HashMap<>();
+    private final Map<String, Map<String, Map<String, ObjectNode>>> snapshots = new HashMap<>();
+
+    // collection -> entity hashes of the current content, dropped on every write
+    private final Map<String, Map<String, String>> trees = new HashMap<>();
+    // collection -> collection hash -> entity hashes, oldest first
+    private final Map<String, LinkedHashMap<String, Map<String, String>>> history = new HashMap<>();
+
+    EmbeddedDatabase(ObjectMapper mapper, Path file) throws IOException {
+        this.mapper = mapper;
+
+        mapper.readTree(file.toFile()).fields().forEachRemaining(field -> {
+            if (!field.getValue().isArray())
+                return;
+
+            var items = new LinkedHashMap<String, ObjectNode>();
+            for (var item : field.getValue())
+                items.put(item.get("id").asText(), (ObjectNode) item);
+
+            collections.put(field.getKey(), items);
+        });
+    }
+
+    synchronized boolean has(String collection) {
+        return collections.containsKey(collection);
+    }
+
+    synchronized ObjectNode state() {
+        var state = mapper.createObjectNode();
+        collections.forEach((name, items) -> state.putArray(name).addAll(items.values()));
+        return state.deepCopy();
+    }
+
+    record Page(List<ObjectNode> items, int total) {
+    }
+
+    synchronized List<ObjectNode> list(String collection, Map<String, String> filters) {
+        return list(collection, filters, 0, Integer.MAX_VALUE).items();
+    }
+
+    // The matches at positions [start, end), copied, and how many matched in all
+    synchronized Page list(String collection, Map<String, String> filters, int start, int end) {
+        var result = new ArrayList<ObjectNode>();
+        var total = 0;
+        for (var item : collections.get(collection).values()) {
+            var matches = filters.entrySet().stream()
+                    .allMatch(filter -> item.has(filter.getKey()) && item.get(filter.getKey()).asText().equals(filter.getValue()));
+
+            if (matches && total++ >= start && total <= end)
+                result.add(item.deepCopy());
+        }
+
+        return new Page(result, total);
+    }
+
+    // The entities as of now, not copied; read them with copyOf, since updates change them in place
+    synchronized List<ObjectNode> entities(String collection) {
+        return new ArrayList<>(collections.get(collection).values());
+    }
+
+    synchronized ObjectNode copyOf(ObjectNode item) {
+        return item.deepCopy();
+    }
+
+    synchronized ObjectNode get(String collection, String id) {
+        var item = collections.get(collection).get(id);
+        return item == null ? null : item.deepCopy();
+    }
+
+    synchronized ObjectNode create(String collection, ObjectNode body) {
+        assign(collection, body);
+
+        var id = body.get("id").asText();
+        if (collections.get(collection).containsKey(id))
+            throw new IllegalStateException("Insert failed, duplicate id");
+
+        writable(collection).put(id, body);
+        return body.deepCopy();
+    }
+
+    synchronized ObjectNode replace(String collection, String id, ObjectNode body) {
+        if (!collections.get(collection).containsKey(id))
+            return null;
+
+        body.set("id", collections.get(collection).get(id).get("id"));
+        writable(collection).put(id, body);
+        return body.deepCopy();
+    }
+
+    synchronized ObjectNode update(String collection, String id, ObjectNode body) {
+        if (!collections.get(collection).containsKey(id))
+            return null;
+
+        var item = writable(collection).get(id);
+        body.fields().forEachRemaining(field -> {
+            if (!field.getKey().equals("id"))
+                item.set(field.getKey(), field.getValue());
+        });
+
+        return item.deepCopy();
+    }
+
+    synchronized boolean delete(String collection, String id) {
+        if (!collections.get(collection).containsKey(id))
+            return false;
+
+        writable(collection).remove(id);
+        return true;
+    }
+
+    record Bulk(int status, ArrayNode results) {
+    }
+
+    // Like middleware/bulk.js: every operation is checked before any is applied, and if one fails none is
+    synchronized Bulk bulk(String collection, ArrayNode operations) {
+        var present = new HashSet<>(collections.get(collection).keySet());
+        var checked = new ArrayList<ObjectNode>();
+        var failed = -1;
+
+        for (var operation : operations) {
+            var result = check(collection, present, operation);
+            if (failed < 0 && result.has("status"))
+                failed = checked.size();
+            checked.add(result);
+        }
+
+        var results = mapper.createArrayNode();
+        if (failed >= 0) {
+            for (var result : checked)
+                results.add(result.has("status") ? result : mapper.createObjectNode()
+                        .put("status", 424)
+                        .put("message", "Not applied, operation " + failed + " failed"));
+
+            return new Bulk(checked.get(failed).get("status").asInt(), results);
+        }
+
+        for (var operation : checked) {
+            var op = operation.get("op").asText();
+            var id = operation.get("id");
+            var data = (ObjectNode) operation.get("data");
+
+            switch (op) {
+                case "create" -> create(collection, data);
+                case "replace" -> replace(collection, id.asText(), data);
+                case "update" -> update(collection, id.asText(), data);
+                default -> delete(collection, id.asText());
+            }
+
+            results.addObject().put("status", op.equals("create") ? 201 : 200).set("id", id);
+        }
+
+        return new Bulk(200, results);
+    }
+
+    // The operation with the id it applies to, or a failed result with a status
+    private ObjectNode check(String collection, Set<String> present, JsonNode operation) {
+        var op = operation.path("op").asText();
+        if (!List.of("create", "replace", "update", "delete").contains(op))
+            return failure(400, null, "op must be one of create, replace, update, delete");
+
+        var data = operation.get("data");
+        if (!op.equals("delete") && !(data instanceof ObjectNode))
+            return failure(400, null, "data must be an object");
+
+        var checked = mapper.createObjectNode().put("op", op);
+        if (op.equals("create")) {
+            var item = ((ObjectNode) data).deepCopy();
+            assign(collection, item);
+
+            var id = item.get("id");
+            if (!present.add(id.asText()))
+                return failure(409, id, "Duplicate id: " + id.asText());
+
+            return checked.setAll(Map.of("id", id, "data", item));
+        }
+
+        var id = operation.get("id");
+        if (id == null || id.isNull())
+            return failure(400, null, "id is missing");
+
+        if (!present.contains(id.asText()))
+            return failure(404, id, "Unknown id: " + id.asText());
+
+        if (op.equals("delete"))
+            present.remove(id.asText());
+        else
+            checked.set("data", data.deepCopy());
+
+        return checked.set("id", id);
+    }
+
+    private ObjectNode failure(int status, JsonNode id, String message) {
+        var failure = mapper.createObjectNode().put("status", status);
+        if (id != null)
+            failure.set("id", id);
+        return failure.put("message", message);
+    }
+
+    // Sequences
+
+    synchronized int count(String collection) {
+        return collections.get(collection).size();
+    }
+
+    synchronized long[] reserve(String collection, int size) {
+        var from = current(collection) + 1;
+        sequences.put(collection, from + size - 1);
+        return new long[] { from, from + size - 1 };
+    }
+
+    // The next id for an entity without one, and past the id of one that has it
+    private void assign(String collection, ObjectNode item) {
+        if (!item.hasNonNull("id"))
+            item.put("id", reserve(collection, 1)[0]);
+        else if (item.get("id").canConvertToLong() && item.get("id").asLong() > current(collection))
+            sequences.put(collection, item.get("id").asLong());
+    }
+
+    private long current(String collection) {
+        return sequences.computeIfAbsent(collection, name -> collections.get(name).values().stream()
+                .map(item -> item.get("id"))
+                .filter(JsonNode::canConvertToLong)
+                .mapToLong(JsonNode::asLong)
+                .max()
+                .orElse(0));
+    }
+
+    // Fingerprints
+
+    synchronized ObjectNode fingerprint() {
+        var result = mapper.createObjectNode();
+        var summary = result.putObject("collections");
+        var rollup = new StringBuilder();
+
+        for (var name : new TreeSet<>(collections.keySet())) {
+            var entities = tree(name);
+            var hash = rollup(entities);
+
+            summary.putObject(name).put("hash", hash).put("count", entities.size());
+            rollup.append(name).append(':').append(hash).append('\n');
+        }
+
+        return result.put("hash", sha1(rollup.toString()));
+    }
+
+    synchronized ObjectNode fingerprint(String collection) {
+        var entities = tree(collection);
+        var result = mapper.createObjectNode()
+                .put("collection", collection)
+                .put("hash", rollup(entities));
+
+        var hashes = result.putObject("entities");
+        entities.forEach(hashes::put);
+        return result;
+    }
+
+    synchronized ObjectNode diff(String collection, String from) {
+        var current = tree(collection);
+        var previous = history.getOrDefault(collection, new LinkedHashMap<>()).get(from);
+        if (previous == null)
+            return null;
+
+        var result = mapper.createObjectNode()
+                .put("collection", collection)
+                .put("from", from)
+                .put("to", rollup(current));
+
+        var added = result.putArray("added");
+        var removed = result.putArray("removed");
+        var changed = result.putArray("changed");
+
+        current.forEach((id, hash) -> {
+            if (!previous.containsKey(id))
+                added.add(id);
+            else if (!previous.get(id).equals(hash))
+                changed.add(id);
+        });
+        previous.keySet().stream().filter(id -> !current.containsKey(id)).forEach(removed::add);
+
+        return result;
+    }
+
+    private Map<String, String> tree(String collection) {
+        var cached = trees.get(collection);
+        if (cached != null)
+            return cached;
+
+        var entities = new LinkedHashMap<String, String>();
+        collections.get(collection).forEach((id, item) -> entities.put(id, sha1(canonical(item))));
+        trees.put(collection, entities);
+
+        var entries = history.computeIfAbsent(collection, name -> new LinkedHashMap<>());
+        var hash = rollup(entities);
+        entries.remove(hash);
+        entries.put(hash, entities);
+        if (entries.size() > HISTORY_SIZE)
+            entries.remove(entries.keySet().iterator().next());
+
+        return entities;
+    }
+
+    // The sum of the hashes of id and content, modulo 2^160, like the incremental rollup of fingerprint.js
+    private String rollup(Map<String, String> entities) {
+        var sum = BigInteger.ZERO;
+        for (var entity : entities.entrySet())
+            sum = sum.add(new BigInteger(sha1(entity.getKey() + ":" + entity.getValue()), 16));
+
+        return String.format("%040x", sum.mod(ROLLUP_WIDTH));
+    }
+
+    // Keys are sorted so the hash only depends on the content of an entity
+    private String canonical(JsonNode node) {
+        if (node.isArray()) {
+            var parts = new ArrayList<String>();
+            node.forEach(element -> parts.add(canonical(element)));
+            return "[" + String.join(",", parts) + "]";
+        }
+
+        if (node.isObject()) {
+            var names = new TreeSet<String>();
+            node.fieldNames().forEachRemaining(names::add);
+
+            var parts = new ArrayList<String>();
+            for (var name : names)
+                parts.add(mapper.getNodeFactory().textNode(name) + ":" + canonical(node.get(name)));
+            return "{" + String.join(",", parts) + "}";
+        }
+
+        return node.toString();
+    }
+
+    private static String sha1(String text) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-1").digest(text.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Snapshots
+
+    synchronized void snapshot(String name) {
+        snapshots.put(name, new LinkedHashMap<>(collections));
+    }
+
+    synchronized List<String> restore(String name) {
+        var snapshot = snapshots.get(name);
+        if (snapshot == null)
+            return null;
+
+        var restored = new ArrayList<String>();
+        snapshot.forEach((collection, items) -> {
+            if (collections.get(collection) != items)
+                restored.add(collection);
+        });
+
+        collections = new LinkedHashMap<>(snapshot);
+        restored.forEach(trees::remove);
+        return restored;
+    }
+
+    synchronized boolean discard(String name) {
+        return snapshots.remove(name) != null;
+    }
+
+    synchronized Set<String> snapshots() {
+        return new TreeSet<>(snapshots.keySet());
+    }
+
+    // The first write to a collection still shared with a snapshot copies it, so the snapshot keeps the original
+    private Map<String, ObjectNode> writable(String collection) {
+        trees.remove(collection);
+
+        var items = collections.get(collection);
+        var shared = snapshots.values().stream().anyMatch(snapshot -> snapshot.get(collection) == items);
+        if (!shared)
+            return items;
+
+        var copy = new LinkedHashMap<String, ObjectNode>();
+        items.forEach((id, item) -> copy.put(id, item.deepCopy()));
+        collections.put(collection, copy);
+        return copy;
+    }
+}
@@ -0,0 +1,450 @@
+package org.example.server;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.example.codec.WireFormat;
+import org.junit.jupiter.api.extension.ExtensionContext;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * In-process stand-in for {@code server/server.js}. It serves the same routes (the collections, {@code /:id},
+ * {@code /db}, {@code /auth} with the {@code token} header check, JSON:API documents, the binary formats of
+ * {@link WireFormat}, the NDJSON exports, bulk writes and the utility routes under {@code /_}) from an
+ * {@link EmbeddedDatabase} loaded from {@code db.json}, so the tests can run without Node or MongoDB.
+ */
+public class EmbeddedServer implements ExtensionContext.Store.CloseableResource {
+    private static final String JSON = "application/json; charset=utf-8";
+    private static final String NDJSON = "application/x-ndjson; charset=utf-8";
+    private static final int EXPORT_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_RESERVATION = 10000;
+    private static final int MAX_BULK_OPERATIONS = 10000;
+    // Like middleware/compression.js, which would send brotli to clients preferring it; the JDK only has gzip
+    private static final int COMPRESSION_THRESHOLD = 1024;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Map<WireFormat, ObjectMapper> writers = new EnumMap<>(WireFormat.class);
+    private final EmbeddedDatabase database;
+    private final JsonApiDocuments documents;
+    private final EmbeddedTokens tokens;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    static {
+        // The headers and the body go out as separate writes, which Nagle's algorithm holds back until the client's
+        // delayed ACK on a kept-alive connection, adding 40ms to every response. Read once, when HttpServer loads
+        if (System.getProperty("sun.net.httpserver.nodelay") == null)
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private EmbeddedServer(Path db, int port) throws IOException {
+        database = new EmbeddedDatabase(mapper, db);
+        documents = new JsonApiDocuments(mapper, database);
+        tokens = new EmbeddedTokens(mapper);
+        for (var format : WireFormat.values())
+            writers.put(format, format == WireFormat.JSON ? mapper : new ObjectMapper(format.factory().copy()));
+        executor = Executors.newCachedThreadPool(runnable -> {
+            var thread = new Thread(runnable, "embedded-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+    }
+
+    public static EmbeddedServer start(Path db, int port) throws IOException {
+        var embedded = new EmbeddedServer(db, port);
+        embedded.server.start();
+        return embedded;
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    // The catch clauses of a try-with-resources run after the exchange is closed, too late to answer
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            try {
+                route(exchange);
+            } catch (IllegalStateException e) {
+                send(exchange, 500, mapper.createObjectNode().put("message", e.getMessage()));
+            } catch (IllegalArgumentException e) {
+                // Including the NumberFormatException of a parameter like ?size=abc
+                send(exchange, 400, mapper.createObjectNode().put("message", "Bad request: " + e.getMessage()));
+            } catch (JsonProcessingException e) {
+                send(exchange, 400, mapper.createObjectNode().put("message", "Malformed JSON body: " + e.getOriginalMessage()));
+            }
+        }
+    }
+
+    private void route(HttpExchange exchange) throws IOException {
+        var method = exchange.getRequestMethod();
+        var path = Arrays.stream(exchange.getRequestURI().getPath().split("/"))
+                .filter(segment -> !segment.isEmpty())
+                .toArray(String[]::new);
+        var query = parseQuery(exchange.getRequestURI().getRawQuery());
+
+        if (method.equals("GET") && path.length == 1 && path[0].equals("auth")) {
+            auth(exchange);
+            return;
+        }
+
+        if (!tokens.isValid(exchange.getRequestHeaders().getFirst("token"))) {
+            send(exchange, 401, mapper.createObjectNode().put("message", "Authentication failed"));
+            return;
+        }
+
+        if (path.length > 0 && path[0].startsWith("_"))
+            utility(exchange, method, path, query);
+        else if (method.equals("GET") && path.length == 1 && path[0].equals("db"))
+            send(exchange, 200, database.state());
+        else if (method.equals("GET") && path.length == 2 && path[0].equals("export"))
+            export(exchange, path[1]);
+        else if (method.equals("GET") && accepts(exchange, JsonApiDocuments.MEDIA_TYPE))
+            jsonApi(exchange, path, query, JsonApiDocuments.takeFields(query));
+        else
+            collection(exchange, method, path, query);
+    }
+
+    private void auth(HttpExchange exchange) throws IOException {
+        var user = mapper.createObjectNode()
+                .put("_id", "embedded")
+                .put("name", "qli")
+                .put("token", tokens.issue("embedded"));
+
+        send(exchange, 201, user);
+    }
+
+    // Like middleware/export.js: one entity per line, chunked, written as fast as the client reads them
+    private void export(HttpExchange exchange, String collection) throws IOException {
+        if (!database.has(collection)) {
+            send(exchange, 404, mapper.createObjectNode().put("message", "Unknown collection: " + collection));
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", NDJSON);
+        exchange.sendResponseHeaders(200, 0);
+
+        try (var out = new BufferedOutputStream(exchange.getResponseBody(), EXPORT_BUFFER_SIZE)) {
+            for (var item : database.entities(collection)) {
+                out.write(mapper.writeValueAsBytes(database.copyOf(item)));
+                out.write('\n');
+            }
+        }
+    }
+
+    private void utility(HttpExchange exchange, String method, String[] path, Map<String, String> query) throws IOException {
+        var route = method + " " + path[0] + "/" + path.length;
+        var collection = path.length > 1 ? path[1] : null;
+
+        if (route.equals("GET _snapshots/1")) {
+            send(exchange, 200, mapper.valueToTree(database.snapshots()));
+            return;
+        }
+
+        if (route.equals("GET _fingerprint/1")) {
+            send(exchange, 200, database.fingerprint());
+            return;
+        }
+
+        if (path[0].equals("_snapshots") && path.length > 1) {
+            snapshots(exchange, method, path);
+            return;
+        }
+
+        if (collection == null || !database.has(collection)) {
+            send(exchange, 404, mapper.createObjectNode().put("message", "Unknown collection: " + collection));
+            return;
+        }
+
+        switch (route) {
+            case "GET _count/2" -> send(exchange, 200, mapper.createObjectNode()
+                    .put("collection", collection)
+                    .put("count", database.count(collection)));
+
+            case "POST _seq/2" -> {
+                var size = parseInt(query.getOrDefault("size", "1"), 0);
+                if (size < 1 || size > MAX_RESERVATION) {
+                    send(exchange, 400, mapper.createObjectNode()
+                            .put("message", "size must be an integer between 1 and " + MAX_RESERVATION));
+                    return;
+                }
+
+                var range = database.reserve(collection, size);
+                send(exchange, 201, mapper.createObjectNode()
+                        .put("collection", collection)
+                        .put("from", range[0])
+                        .put("to", range[1]));
+            }
+
+            case "GET _fingerprint/2" -> send(exchange, 200, database.fingerprint(collection));
+
+            case "GET _fingerprint/3" -> {
+                var diff = database.diff(collection, query.get("from"));
+                if (diff == null)
+                    send(exchange, 410, mapper.createObjectNode()
+                            .put("message", "Fingerprint " + query.get("from") + " of " + collection + " is no longer known"));
+                else
+                    send(exchange, 200, diff);
+            }
+
+            default -> send(exchange, 404, mapper.createObjectNode());
+        }
+    }
+
+    private void snapshots(HttpExchange exchange, String method, String[] path) throws IOException {
+        var name = path[1];
+        var route = method + " " + path.length;
+
+        switch (route) {
+            case "POST 2" -> {
+                database.snapshot(name);
+                send(exchange, 201, mapper.createObjectNode().put("name", name));
+            }
+
+            case "POST 3" -> {
+                var restored = database.restore(name);
+                if (restored == null) {
+                    send(exchange, 404, mapper.createObjectNode().put("message", "Unknown snapshot: " + name));
+                    return;
+                }
+
+                var result = mapper.createObjectNode().put("name", name);
+                result.set("restored", mapper.valueToTree(restored));
+                send(exchange, 200, result);
+            }
+
+            case "DELETE 2" -> {
+                if (database.discard(name))
+                    send(exchange, 200, mapper.createObjectNode().put("name", name));
+                else
+                    send(exchange, 404, mapper.createObjectNode().put("message", "Unknown snapshot: " + name));
+            }
+
+            default -> send(exchange, 404, mapper.createObjectNode());
+        }
+    }
+
+    private void collection(HttpExchange exchange, String method, String[] path, Map<String, String> query) throws IOException {
+        if (path.length == 0 || path.length > 2 || !database.has(path[0])) {
+            send(exchange, 404, mapper.createObjectNode());
+            return;
+        }
+
+        var collection = path[0];
+        var fields = JsonApiDocuments.takeFields(query);
+
+        if (path.length == 1) {
+            switch (method) {
+                case "GET" -> {
+                    var filters = new LinkedHashMap<>(query);
+                    filters.keySet().removeIf(key -> key.startsWith("_") || key.equals("q"));
+
+                    var range = range(query);
+                    var page = database.list(collection, filters, range[0], range[1]);
+                    if (range[1] != Integer.MAX_VALUE)
+                        exchange.getResponseHeaders().set("X-Total-Count", String.valueOf(page.total()));
+
+                    send(exchange, 200, JsonApiDocuments.project(collection, mapper.valueToTree(page.items()), fields));
+                }
+                case "POST" -> send(exchange, 201, database.create(collection, readBody(exchange)));
+                default -> send(exchange, 404, mapper.createObjectNode());
+            }
+            return;
+        }
+
+        if (method.equals("POST") && path[1].equals("_bulk")) {
+            bulk(exchange, collection);
+            return;
+        }
+
+        var id = path[1];
+        JsonNode result = switch (method) {
+            case "GET" -> database.get(collection, id);
+            case "PUT" -> database.replace(collection, id, readBody(exchange));
+            case "PATCH" -> database.update(collection, id, readBody(exchange));
+            case "DELETE" -> database.delete(collection, id) ? mapper.createObjectNode() : null;
+            default -> null;
+        };
+
+        if (result == null)
+            send(exchange, 404, mapper.createObjectNode());
+        else if (method.equals("GET"))
+            send(exchange, 200, JsonApiDocuments.project(collection, result, fields));
+        else
+            send(exchange, 200, result);
+    }
+
+    private void bulk(HttpExchange exchange, String collection) throws IOException {
+        var operations = mapper.readTree(exchange.getRequestBody());
+        if (!(operations instanceof ArrayNode)) {
+            send(exchange, 400, mapper.createObjectNode().put("message", "The body must be an array of operations"));
+            return;
+        }
+
+        if (operations.size() > MAX_BULK_OPERATIONS) {
+            send(exchange, 413, mapper.createObjectNode().put("message", "At most " + MAX_BULK_OPERATIONS + " operations per request"));
+            return;
+        }
+
+        var bulk = database.bulk(collection, (ArrayNode) operations);
+        send(exchange, bulk.status(), bulk.results());
+    }
+
+    private void jsonApi(HttpExchange exchange, String[] path, Map<String, String> query, Map<String, Set<String>> fields) throws IOException {
+        if (path.length == 0 || path.length > 2 || !database.has(path[0])) {
+            send(exchange, 404, documents.errors(404, "Not Found"), JsonApiDocuments.MEDIA_TYPE);
+            return;
+        }
+
+        var collection = path[0];
+        var filters = new LinkedHashMap<>(query);
+        filters.keySet().removeIf(key -> key.startsWith("_") || key.equals("q") || key.equals("include"));
+
+        JsonNode data = path.length == 1 ? mapper.valueToTree(database.list(collection, filters)) : database.get(collection, path[1]);
+        if (data == null) {
+            send(exchange, 404, documents.errors(404, "Not Found"), JsonApiDocuments.MEDIA_TYPE);
+            return;
+        }
+
+        var include = Arrays.stream(query.getOrDefault("include", "").split(","))
+                .filter(name -> !name.isEmpty())
+                .toList();
+
+        var document = documents.document(collection, data, include, fields);
+        if (document == null)
+            send(exchange, 400, documents.errors(400, "Bad include"), JsonApiDocuments.MEDIA_TYPE);
+        else
+            send(exchange, 200, document, JsonApiDocuments.MEDIA_TYPE);
+    }
+
+    // json-server's paging, `_page` and `_limit` or `_start` with `_end` or `_limit`, as [start, end); without the Link
+    // header of `_page`
+    private static int[] range(Map<String, String> query) {
+        var limit = parseInt(query.get("_limit"), 0);
+
+        if (query.containsKey("_page")) {
+            var page = Math.max(parseInt(query.get("_page"), 1), 1);
+            var size = limit > 0 ? limit : 10;
+            return new int[] { (page - 1) * size, page * size };
+        }
+
+        var start = parseInt(query.get("_start"), 0);
+        if (query.containsKey("_end"))
+            return new int[] { start, parseInt(query.get("_end"), Integer.MAX_VALUE) };
+        if (limit > 0)
+            return new int[] { start, start + limit };
+
+        return new int[] { 0, Integer.MAX_VALUE };
+    }
+
+    private static int parseInt(String value, int otherwise) {
+        try {
+            return value == null ? otherwise : Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return otherwise;
+        }
+    }
+
+    private static boolean accepts(HttpExchange exchange, String mediaType) {
+        var accept = exchange.getRequestHeaders().getFirst("Accept");
+        return accept != null && accept.contains(mediaType);
+    }
+
+    private ObjectNode readBody(HttpExchange exchange) throws IOException {
+        var body = mapper.readTree(exchange.getRequestBody());
+        return body instanceof ObjectNode ? (ObjectNode) body : mapper.createObjectNode();
+    }
+
+    // Like middleware/formats.js, but the first format the Accept header names wins, whatever its q
+    private static WireFormat accepted(HttpExchange exchange) {
+        var accept = exchange.getRequestHeaders().getFirst("Accept");
+        if (accept == null)
+            return WireFormat.JSON;
+
+        for (var entry : accept.split(",")) {
+            for (var format : WireFormat.values()) {
+                if (format.matches(entry))
+                    return format;
+            }
+        }
+
+        return WireFormat.JSON;
+    }
+
+    private void send(HttpExchange exchange, int status, JsonNode body) throws IOException {
+        var format = accepted(exchange);
+
+        exchange.getResponseHeaders().add("Vary", "Accept");
+        send(exchange, status, writers.get(format).writeValueAsBytes(body), format == WireFormat.JSON ? JSON : format.mediaType());
+    }
+
+    private void send(HttpExchange exchange, int status, JsonNode body, String contentType) throws IOException {
+        send(exchange, status, mapper.writeValueAsBytes(body), contentType);
+    }
+
+    private void send(HttpExchange exchange, int status, byte[] bytes, String contentType) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+
+        if (bytes.length >= COMPRESSION_THRESHOLD) {
+            exchange.getResponseHeaders().add("Vary", "Accept-Encoding");
+
+            var accepted = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            if (accepted != null && accepted.contains("gzip")) {
+                var compressed = new ByteArrayOutputStream(bytes.length / 4);
+                try (var gzip = new GZIPOutputStream(compressed)) {
+                    gzip.write(bytes);
+                }
+
+                bytes = compressed.toByteArray();
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            }
+        }
+
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        var result = new LinkedHashMap<String, String>();
+        if (query == null || query.isEmpty())
+            return result;
+
+        for (var pair : query.split("&")) {
+            var separator = pair.indexOf('=');
+            var key = separator < 0 ? pair : pair.substring(0, separator);
+            var value = separator < 0 ? "" : pair.substring(separator + 1);
+            result.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+
+        return result;
+    }
+}
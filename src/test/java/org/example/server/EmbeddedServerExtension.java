@@ -0,0 +1,35 @@
+package org.example.server;
+
+import org.junit.jupiter.api.extension.BeforeAllCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+
+import java.nio.file.Path;
+
+/**
+ * Starts one {@link EmbeddedServer} per test run when {@code api.server=embedded} (see the {@code embedded} Maven
+ * profile) and publishes its port as {@code api.port}. Without that property the tests keep talking to the Node
+ * server.
+ */
+public class EmbeddedServerExtension implements BeforeAllCallback {
+    @Override
+    public void beforeAll(ExtensionContext context) {
+        if (!"embedded".equals(System.getProperty("api.server")))
+            return;
+
+        // The root store outlives every test class and closes the server once the run is over
+        var server = context.getRoot()
+                .getStore(ExtensionContext.Namespace.GLOBAL)
+                .getOrComputeIfAbsent(EmbeddedServer.class, key -> start(), EmbeddedServer.class);
+
+        System.setProperty("api.port", String.valueOf(server.port()));
+    }
+
+    private static EmbeddedServer start() {
+        try {
+            var db = Path.of(System.getProperty("api.db", "server/db.json"));
+            return EmbeddedServer.start(db, Integer.getInteger("api.port", 0));
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not start the embedded server", e);
+        }
+    }
+}
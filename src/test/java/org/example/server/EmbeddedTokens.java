@@ -0,0 +1,113 @@
+package org.example.server;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The HS256 JWTs of {@code server/middleware/auth.js}: every token issued stays valid until it expires, and carries a
+ * random {@code jti} so that no two are the same. Checking one only verifies its signature. Tokens that passed are kept
+ * in an LRU cache until they expire.
+ */
+class EmbeddedTokens {
+    private static final String HEADER = encode("{\"alg\":\"HS256\",\"typ\":\"JWT\"}".getBytes(StandardCharsets.UTF_8));
+    private static final Duration LIFETIME = Duration.ofHours(5);
+    private static final int CACHE_SIZE = 10000;
+
+    private final ObjectMapper mapper;
+    private final SecretKeySpec key;
+
+    // token -> expiry in ms, least recently used first
+    private final Map<String, Long> verified = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    EmbeddedTokens(ObjectMapper mapper) {
+        this.mapper = mapper;
+
+        var secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        key = new SecretKeySpec(secret, "HmacSHA256");
+    }
+
+    String issue(String userId) {
+        var now = System.currentTimeMillis() / 1000;
+        var payload = mapper.createObjectNode()
+                .put("user_id", userId)
+                .put("jti", UUID.randomUUID().toString())
+                .put("iat", now)
+                .put("exp", now + LIFETIME.toSeconds());
+
+        try {
+            var data = HEADER + "." + encode(mapper.writeValueAsBytes(payload));
+            return data + "." + encode(sign(data));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    boolean isValid(String token) {
+        if (token == null)
+            return false;
+
+        synchronized (verified) {
+            var expires = verified.get(token);
+            if (expires != null) {
+                if (expires > System.currentTimeMillis())
+                    return true;
+
+                verified.remove(token);
+                return false;
+            }
+        }
+
+        var parts = token.split("\\.");
+        if (parts.length != 3)
+            return false;
+
+        try {
+            var signature = Base64.getUrlDecoder().decode(parts[2]);
+            if (!MessageDigest.isEqual(signature, sign(parts[0] + "." + parts[1])))
+                return false;
+
+            var expires = mapper.readTree(Base64.getUrlDecoder().decode(parts[1])).path("exp").asLong() * 1000;
+            if (expires <= System.currentTimeMillis())
+                return false;
+
+            synchronized (verified) {
+                verified.put(token, expires);
+            }
+            return true;
+        } catch (IllegalArgumentException | IOException e) {
+            return false;
+        }
+    }
+
+    private byte[] sign(String data) {
+        try {
+            var mac = Mac.getInstance("HmacSHA256");
+            mac.init(key);
+            return mac.doFinal(data.getBytes(StandardCharsets.US_ASCII));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String encode(byte[] bytes) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+}
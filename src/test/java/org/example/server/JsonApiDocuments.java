@@ -0,0 +1,267 @@
+package org.example.server;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Builds the JSON:API documents of {@code server/middleware/jsonapi.js}: fields holding links such as
+ * {@code /people/1/} become relationships, and {@code include} paths (dotted ones too) add the linked resources to
+ * {@code included}, each once. Sparse fieldsets ({@code fields[starship]=name,hyperdrive_rating}) trim the resources
+ * of a type, here and in plain JSON responses.
+ */
+class JsonApiDocuments {
+    static final String MEDIA_TYPE = "application/vnd.api+json";
+
+    private static final Pattern LINK = Pattern.compile("^/(\\w+)/([^/]+)/?$");
+    private static final Pattern FIELDS = Pattern.compile("^fields\\[(\\w+)]$");
+    private static final Map<String, String> TYPES = Map.of(
+            "people", "person",
+            "planets", "planet",
+            "films", "film",
+            "species", "species",
+            "vehicles", "vehicle",
+            "starships", "starship");
+
+    private final ObjectMapper mapper;
+    private final EmbeddedDatabase database;
+
+    // collection -> field -> linked collection, learnt from the data once
+    private final Map<String, Map<String, String>> schemas = new HashMap<>();
+
+    private record Link(String collection, String id) {
+    }
+
+    JsonApiDocuments(ObjectMapper mapper, EmbeddedDatabase database) {
+        this.mapper = mapper;
+        this.database = database;
+    }
+
+    /**
+     * The document for one entity or a list of them, or {@code null} when an include path names a field that is not
+     * a relationship.
+     */
+    ObjectNode document(String collection, JsonNode data, List<String> include, Map<String, Set<String>> fields) {
+        var primary = new ArrayList<ObjectNode>();
+        if (data.isArray())
+            data.forEach(item -> primary.add(resource(collection, (ObjectNode) item)));
+        else
+            primary.add(resource(collection, (ObjectNode) data));
+
+        var document = mapper.createObjectNode();
+        if (data.isArray()) {
+            var array = document.putArray("data");
+            primary.forEach(resource -> array.add(project(resource, fields)));
+        } else
+            document.set("data", project(primary.get(0), fields));
+
+        if (include.isEmpty())
+            return document;
+
+        var included = include(primary, include);
+        if (included == null)
+            return null;
+
+        var projected = document.putArray("included");
+        included.forEach(resource -> projected.add(project((ObjectNode) resource, fields)));
+        return document;
+    }
+
+    /**
+     * The {@code fields[type]} parameters of a query, taken out of it.
+     */
+    static Map<String, Set<String>> takeFields(Map<String, String> query) {
+        var fields = new HashMap<String, Set<String>>();
+        var parameters = query.entrySet().iterator();
+
+        while (parameters.hasNext()) {
+            var parameter = parameters.next();
+            var matcher = FIELDS.matcher(parameter.getKey());
+            if (!matcher.matches())
+                continue;
+
+            fields.put(matcher.group(1), Arrays.stream(parameter.getValue().split(","))
+                    .filter(name -> !name.isEmpty())
+                    .collect(Collectors.toSet()));
+            parameters.remove();
+        }
+
+        return fields;
+    }
+
+    /**
+     * Plain JSON {@code item} trimmed to the fields requested for the type of {@code collection}, and its id.
+     */
+    static JsonNode project(String collection, JsonNode item, Map<String, Set<String>> fields) {
+        var wanted = fields.get(TYPES.getOrDefault(collection, collection));
+        if (wanted == null)
+            return item;
+
+        if (item.isArray()) {
+            item.forEach(element -> ((ObjectNode) element).retain(withId(wanted)));
+            return item;
+        }
+
+        return ((ObjectNode) item).retain(withId(wanted));
+    }
+
+    private static Set<String> withId(Set<String> fields) {
+        var result = new HashSet<>(fields);
+        result.add("id");
+        return result;
+    }
+
+    private static ObjectNode project(ObjectNode resource, Map<String, Set<String>> fields) {
+        var wanted = fields.get(resource.get("type").asText());
+        if (wanted == null)
+            return resource;
+
+        var projected = resource.deepCopy();
+        ((ObjectNode) projected.get("attributes")).retain(wanted);
+        ((ObjectNode) projected.get("relationships")).retain(wanted);
+        return projected;
+    }
+
+    ObjectNode errors(int status, String title) {
+        var document = mapper.createObjectNode();
+        document.putArray("errors").addObject()
+                .put("status", String.valueOf(status))
+                .put("title", title);
+        return document;
+    }
+
+    private ArrayNode include(List<ObjectNode> primary, List<String> paths) {
+        var resources = new HashMap<String, ObjectNode>();
+        primary.forEach(resource -> resources.put(key(resource), resource));
+        var included = mapper.createArrayNode();
+
+        for (var path : paths) {
+            List<ObjectNode> level = primary;
+
+            for (var field : path.split("\\.")) {
+                var next = new LinkedHashSet<ObjectNode>();
+
+                for (var resource : level) {
+                    var relationship = resource.get("relationships").get(field);
+                    if (relationship == null)
+                        return null;
+
+                    var data = relationship.get("data");
+                    for (var identifier : data.isArray() ? data : List.of(data)) {
+                        if (identifier.isNull())
+                            continue;
+
+                        var key = key(identifier);
+                        var linked = resources.get(key);
+
+                        if (linked == null) {
+                            var collection = collectionOf(identifier.get("type").asText());
+                            var item = database.get(collection, identifier.get("id").asText());
+                            if (item == null)
+                                continue;
+
+                            linked = resource(collection, item);
+                            resources.put(key, linked);
+                            included.add(linked);
+                        }
+
+                        next.add(linked);
+                    }
+                }
+
+                level = new ArrayList<>(next);
+            }
+        }
+
+        return included;
+    }
+
+    private ObjectNode resource(String collection, ObjectNode item) {
+        var fields = schema(collection);
+        var resource = mapper.createObjectNode()
+                .put("type", TYPES.getOrDefault(collection, collection))
+                .put("id", item.get("id").asText());
+        var attributes = resource.putObject("attributes");
+        var relationships = resource.putObject("relationships");
+
+        item.fields().forEachRemaining(field -> {
+            if (field.getKey().equals("id"))
+                return;
+
+            if (!fields.containsKey(field.getKey())) {
+                attributes.set(field.getKey(), field.getValue());
+            } else if (field.getValue().isArray()) {
+                var data = relationships.putObject(field.getKey()).putArray("data");
+                for (var value : field.getValue()) {
+                    var link = parseLink(value);
+                    if (link != null)
+                        data.add(identifier(link));
+                }
+            } else {
+                var link = parseLink(field.getValue());
+                relationships.putObject(field.getKey()).set("data", link == null ? mapper.nullNode() : identifier(link));
+            }
+        });
+
+        resource.putObject("links").put("self", "/" + collection + "/" + item.get("id").asText());
+        return resource;
+    }
+
+    private synchronized Map<String, String> schema(String collection) {
+        return schemas.computeIfAbsent(collection, key -> {
+            var fields = new LinkedHashMap<String, String>();
+            for (var item : database.list(collection, Map.of())) {
+                item.fields().forEachRemaining(field -> {
+                    var values = field.getValue().isArray() ? field.getValue() : List.of(field.getValue());
+                    for (var value : values) {
+                        var link = parseLink(value);
+                        if (link != null) {
+                            fields.put(field.getKey(), link.collection());
+                            break;
+                        }
+                    }
+                });
+            }
+            return fields;
+        });
+    }
+
+    private Link parseLink(JsonNode value) {
+        if (!value.isTextual())
+            return null;
+
+        var matcher = LINK.matcher(value.asText());
+        return matcher.matches() && database.has(matcher.group(1)) ? new Link(matcher.group(1), matcher.group(2)) : null;
+    }
+
+    private ObjectNode identifier(Link link) {
+        return mapper.createObjectNode()
+                .put("type", TYPES.getOrDefault(link.collection(), link.collection()))
+                .put("id", link.id());
+    }
+
+    private static String collectionOf(String type) {
+        return TYPES.entrySet().stream()
+                .filter(entry -> entry.getValue().equals(type))
+                .map(Map.Entry::getKey)
+                .findFirst()
+                .orElse(type);
+    }
+
+    private static String key(JsonNode resource) {
+        return resource.get("type").asText() + ":" + resource.get("id").asText();
+    }
+}
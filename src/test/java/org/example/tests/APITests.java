@@ -1,66 +1,226 @@
 package org.example.tests;
 
 import io.restassured.RestAssured;
+import io.restassured.builder.RequestSpecBuilder;
+import io.restassured.common.mapper.TypeRef;
+import io.restassured.config.ObjectMapperConfig;
 import io.restassured.http.ContentType;
-import io.restassured.response.Response;
+import io.restassured.path.json.JsonPath;
+import org.example.client.BatchWriter;
+import org.example.client.ConnectionPool;
+import org.example.client.EntityCursor;
+import org.example.client.JsonApiReader;
+import org.example.client.LatencyFilter;
+import org.example.client.LinkResolver;
+import org.example.client.NdjsonPublisher;
+import org.example.client.TokenProvider;
+import org.example.codec.CodecObjectMapper;
+import org.example.codec.FieldMask;
+import org.example.codec.WireFormat;
 import org.example.models.*;
+import org.example.server.EmbeddedServerExtension;
+import org.json.JSONArray;
 import org.json.JSONObject;
+import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 import static io.restassured.RestAssured.given;
 import static org.hamcrest.CoreMatchers.*;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
+@ExtendWith(EmbeddedServerExtension.class)
 public class APITests {
     final static String protocol = "http";
     final static String host = "localhost";
     final static int port = 3000;
 
-    private static List<Planet> createdPlanets = new ArrayList<>();
-    private static List<Person> createdPeople = new ArrayList<>();
-    private static List<Film> createdFilms = new ArrayList<>();
-    private static List<Species> createdSpecies = new ArrayList<>();
-    private static List<Vehicle> createdVehicles = new ArrayList<>();
-    private static List<Starship> createdStarships = new ArrayList<>();
+    // Set by the `parallel` Maven profile; JUnit reads the same property as its configuration parameter.
+    // The `load` profile runs these tests from many threads at once too (see LoadTests)
+    static final boolean parallelExecution = Boolean.getBoolean("junit.jupiter.execution.parallel.enabled")
+            || Boolean.getBoolean("load");
 
-    private static String databaseState;
+    // JUnit creates one instance per test method, so these only ever hold what the current test created
+    private List<Planet> createdPlanets = new ArrayList<>();
+    private List<Person> createdPeople = new ArrayList<>();
+    private List<Film> createdFilms = new ArrayList<>();
+    private List<Species> createdSpecies = new ArrayList<>();
+    private List<Vehicle> createdVehicles = new ArrayList<>();
+    private List<Starship> createdStarships = new ArrayList<>();
 
-    private static String token;
+    // The Mongo store (ENTITY_STORE=mongo) has no snapshots, fingerprints or JSON:API includes, so there each test
+    // deletes what it created, like in parallel mode
+    static boolean snapshotsSupported;
+
+    private String snapshotName;
+    private JsonPath databaseFingerprint;
+
+    static TokenProvider tokens;
+
+    private static ConnectionPool connectionPool;
+
+    static LatencyFilter latencyFilter;
+
+    // Cleanups delete through these, so the cleanups of tests running at the same time share bulk requests
+    private static Map<String, BatchWriter<?>> cleanupWriters;
 
     // Hooks and Utilities
 
     @BeforeAll
     static void setup() {
+        setup(Integer.getInteger("api.connections", ConnectionPool.DEFAULT_MAX_PER_ROUTE));
+    }
+
+    // Connections to the server, at most; LoadTests wants one per virtual user
+    static void setup(int connections) {
         RestAssured.baseURI = protocol + "://" + host;
-        RestAssured.port = port;
+        RestAssured.port = Integer.getInteger("api.port", port);
+        RestAssured.config = RestAssured.config().objectMapperConfig(new ObjectMapperConfig(new CodecObjectMapper()));
 
-        var response = given()
+        connectionPool = new ConnectionPool(connections, Math.max(connections, ConnectionPool.DEFAULT_MAX_TOTAL),
+                ConnectionPool.DEFAULT_IDLE_TIMEOUT, ConnectionPool.DEFAULT_SOCKET_BUFFER_SIZE);
+        connectionPool.install();
+
+        // Every request gets the token header from the provider, which logs in again before the token expires
+        latencyFilter = new LatencyFilter();
+        tokens = new TokenProvider(() -> given()
+                .noFiltersOfType(TokenProvider.class)
                 .when()
-                .get("/auth");
+                .get("/auth")
+                .jsonPath()
+                .get("token"));
+        RestAssured.replaceFiltersWith(latencyFilter, tokens);
+
+        snapshotsSupported = given().when().get("/_snapshots").statusCode() == 200;
+
+        var spec = new RequestSpecBuilder().build();
+        cleanupWriters = Map.of(
+                "people", new BatchWriter<>(spec, "people", Person.class),
+                "planets", new BatchWriter<>(spec, "planets", Planet.class),
+                "films", new BatchWriter<>(spec, "films", Film.class),
+                "species", new BatchWriter<>(spec, "species", Species.class),
+                "vehicles", new BatchWriter<>(spec, "vehicles", Vehicle.class),
+                "starships", new BatchWriter<>(spec, "starships", Starship.class));
+    }
+
+    // One method, since JUnit runs several in no particular order: the cleanup writers still need the token and the
+    // connections for their last requests, and the pool report should count those
+    @AfterAll
+    static void teardownAll() throws IOException {
+        cleanupWriters.values().forEach(BatchWriter::close);
+        tokens.close();
 
-        token = response.body().jsonPath().get("token");
+        Files.createDirectories(Path.of("target"));
+        Files.writeString(Path.of("target", "connection-pool.txt"), connectionPool.report());
+        connectionPool.close();
+
+        latencyFilter.export(Path.of("target", "latency.csv"));
+        Files.writeString(Path.of("target", "latency.txt"), latencyFilter.report());
     }
 
     @BeforeEach
     void getDbState() {
+        if (parallelExecution || !snapshotsSupported)
+            return;
+
+        snapshotName = UUID.randomUUID().toString();
         var response = given()
-                .header("token", token)
                 .when()
-                .get("/db");
+                .post("/_snapshots/" + snapshotName);
+
+        assertThat(response.statusCode(), equalTo(201));
 
-        databaseState = response.body().jsonPath().prettify();
+        databaseFingerprint = getDbFingerprint();
     }
 
     @AfterEach
     void teardown() {
-        // TODO: Remove DELETE calls directly to the API
+        // Rolling back would also undo the writes of the tests running concurrently,
+        // so in parallel mode each test deletes (and verifies) only what it created
+        if (parallelExecution || !snapshotsSupported) {
+            deleteCreatedEntities();
+            return;
+        }
+
+        restoreSnapshot();
+
+        // Ensure the state of the db was not changed
+        var fingerprint = getDbFingerprint();
+        if (fingerprint.getString("hash").equals(databaseFingerprint.getString("hash")))
+            return;
+
+        // Only the collections whose hash changed are inspected entity by entity
+        var drift = new ArrayList<String>();
+        var collections = new TreeSet<String>();
+        collections.addAll(databaseFingerprint.<String, Object>getMap("collections").keySet());
+        collections.addAll(fingerprint.<String, Object>getMap("collections").keySet());
+        for (var collection : collections) {
+            var before = databaseFingerprint.getString("collections." + collection + ".hash");
+            var after = fingerprint.getString("collections." + collection + ".hash");
+            if (Objects.equals(before, after))
+                continue;
+
+            if (before == null || after == null) {
+                drift.add((before == null ? "added " : "removed ") + collection);
+                continue;
+            }
+
+            var diff = given()
+                    .queryParam("from", before)
+                    .when()
+                    .get("/_fingerprint/" + collection + "/diff");
+
+            assertThat(diff.statusCode(), equalTo(200));
+            for (var change : List.of("added", "removed", "changed"))
+                for (var id : diff.jsonPath().getList(change))
+                    drift.add(change + " " + collection + "/" + id);
+        }
+
+        // The root hash changed, so something did even if no collection can tell what
+        if (drift.isEmpty())
+            drift.add("root " + databaseFingerprint.getString("hash") + " -> " + fingerprint.getString("hash"));
+
+        assertThat(drift, equalTo(List.of()));
+    }
+
+    private void restoreSnapshot() {
+        var restore = given()
+                .when()
+                .post("/_snapshots/" + snapshotName + "/restore");
+
+        assertThat(restore.statusCode(), equalTo(200));
+
+        var delete = given()
+                .when()
+                .delete("/_snapshots/" + snapshotName);
+
+        assertThat(delete.statusCode(), equalTo(200));
+    }
+
+    void deleteCreatedEntities() {
         if (!createdPeople.isEmpty())
             deleteNewPeople();
 
@@ -78,203 +238,257 @@ public class APITests {
 
         if (!createdStarships.isEmpty())
             deleteNewStarships();
+    }
 
-        // Ensure the state of the db was not changed
+    private JsonPath getDbFingerprint() {
         var response = given()
-                .header("token", token)
                 .when()
-                .get("/db");
+                .get("/_fingerprint");
 
-        assertThat(response.body().jsonPath().prettify(), equalTo(databaseState));
+        assertThat(response.statusCode(), equalTo(200));
+        return response.jsonPath();
     }
 
-    private static void deleteNewPeople() {
-        for (var person : createdPeople) {
-            var response = given()
-                    .header("token", token)
-                    .when()
-                    .delete("people/" + person.id);
-
-            assertThat(response.statusCode(), equalTo(200));
-        }
-
+    private void deleteNewPeople() {
+        deleteCreated("people", createdPeople.stream().map(person -> person.id).toList());
         createdPeople = new ArrayList<>();
     }
 
-    private static void deleteNewPlanets() {
-        for (var planet : createdPlanets) {
-            var response = given()
-                    .header("token", token)
-                    .when()
-                    .delete("planets/" + planet.id);
-
-            assertThat(response.statusCode(), equalTo(200));
-        }
-
+    private void deleteNewPlanets() {
+        deleteCreated("planets", createdPlanets.stream().map(planet -> planet.id).toList());
         createdPlanets = new ArrayList<>();
     }
 
-    private static void deleteNewFilms() {
-        for (var film : createdFilms) {
-            var response = given()
-                    .header("token", token)
-                    .when()
-                    .delete("films/" + film.id);
-
-            assertThat(response.statusCode(), equalTo(200));
-        }
-
+    private void deleteNewFilms() {
+        deleteCreated("films", createdFilms.stream().map(film -> film.id).toList());
         createdFilms = new ArrayList<>();
     }
 
-    private static void deleteNewSpecies() {
-        for (var species : createdSpecies) {
-            var response = given()
-                    .header("token", token)
-                    .when()
-                    .delete("species/" + species.id);
-
-            assertThat(response.statusCode(), equalTo(200));
-        }
-
+    private void deleteNewSpecies() {
+        deleteCreated("species", createdSpecies.stream().map(species -> species.id).toList());
         createdSpecies = new ArrayList<>();
     }
 
-    private static void deleteNewVehicles() {
-        for (var vehicle : createdVehicles) {
-            var response = given()
-                    .header("token", token)
-                    .when()
-                    .delete("vehicles/" + vehicle.id);
-
-            assertThat(response.statusCode(), equalTo(200));
-        }
-
+    private void deleteNewVehicles() {
+        deleteCreated("vehicles", createdVehicles.stream().map(vehicle -> vehicle.id).toList());
         createdVehicles = new ArrayList<>();
     }
 
-   private static void deleteNewStarships() {
-        for (var starship : createdStarships) {
-            var response = given()
-                    .header("token", token)
-                    .when()
-                    .delete("starships/" + starship.id);
+   private void deleteNewStarships() {
+        deleteCreated("starships", createdStarships.stream().map(starship -> starship.id).toList());
+        createdStarships = new ArrayList<>();
+   }
 
-            assertThat(response.statusCode(), equalTo(200));
+    private void deleteCreated(String collection, List<String> ids) {
+        var deletes = ids.stream().map(cleanupWriters.get(collection)::delete).toList();
+
+        for (var i = 0; i < ids.size(); i++) {
+            assertThat(deletes.get(i).join(), equalTo(ids.get(i)));
+            assertRemoved(collection + "/" + ids.get(i));
         }
+    }
 
-        createdStarships = new ArrayList<>();
-   }
+    private void assertRemoved(String path) {
+        var response = given()
+                .when()
+                .get(path);
+
+        assertThat(response.statusCode(), equalTo(404));
+    }
 
     private Integer getNumberOfPlanets() {
-        return getNumberOfItemsFromResponse(given().header("token", token).when().get("/planets"));
+        return getNumberOfItems("planets");
     }
 
     private Integer getNumberOfPeople() {
-        return getNumberOfItemsFromResponse(given().header("token", token).when().get("/people"));
+        return getNumberOfItems("people");
     }
 
     private Integer getNumberOfSpecies() {
-        return getNumberOfItemsFromResponse(given().header("token", token).when().get("/species"));
+        return getNumberOfItems("species");
     }
 
     private Integer getNumberOfFilms() {
-        return getNumberOfItemsFromResponse(given().header("token", token).when().get("/films"));
-
+        return getNumberOfItems("films");
     }
 
     private Integer getNumberOfVehicles() {
-        return getNumberOfItemsFromResponse(given().header("token", token).when().get("/vehicles"));
+        return getNumberOfItems("vehicles");
     }
 
     private Integer getNumberOfStarships() {
-        return getNumberOfItemsFromResponse(given().header("token", token).when().get("/starships"));
+        return getNumberOfItems("starships");
     }
 
-    private Integer getNumberOfItemsFromResponse(Response response) {
-        var ids = response.getBody().jsonPath().getList("id");
-        return Integer.parseInt(ids.get(ids.size() - 1).toString());
+    private Integer getNumberOfItems(String collection) {
+        var response = given()
+                .when()
+                .get("/_count/" + collection);
+
+        assertThat(response.statusCode(), equalTo(200));
+        return response.jsonPath().getInt("count");
     }
 
-    private Boolean isGETAllResponseSuccessful(Response response) {
-        try {
-            assertThat(response.statusCode(), equalTo(200));
-            var body = response.getBody().jsonPath().getList("id");
-            assertThat(body.isEmpty(), equalTo(false));
-        } catch(Exception e) {
-            System.out.println(e.getMessage());
-            return  false;
+    // Reserved ids come from a server-side sequence, so they are unique even across concurrent tests
+    private Integer reserveId(String collection) {
+        var response = given()
+                .when()
+                .post("/_seq/" + collection);
+
+        assertThat(response.statusCode(), equalTo(201));
+        return response.jsonPath().getInt("from");
+    }
+
+    // Pages through the whole collection, in pages of 3 so that even db.json takes a few
+    private <T> void verifyCollection(String collection, Class<T> type) {
+        try (var cursor = new EntityCursor<>(new RequestSpecBuilder().build(), collection, type, 3)) {
+            var count = 0;
+            while (cursor.hasNext()) {
+                assertThat(cursor.next(), notNullValue());
+                count++;
+            }
+
+            assertThat(count > 0, equalTo(true));
+            assertThat(cursor.pages(), equalTo((count + 2) / 3));
+            // Concurrent tests add and remove entities while the cursor runs
+            if (!parallelExecution)
+                assertThat((long) count, equalTo(cursor.total()));
         }
+    }
 
-        return true;
+    // Takes `limit` entities from a publisher, asking for `batch` at a time, then cancels; all of them without a limit
+    private static <T> List<T> take(Flow.Publisher<T> publisher, int batch, int limit) throws Exception {
+        var result = new CompletableFuture<List<T>>();
+
+        publisher.subscribe(new Flow.Subscriber<T>() {
+            private final List<T> items = new ArrayList<>();
+            private Flow.Subscription subscription;
+            private int outstanding;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                outstanding = batch;
+                subscription.request(batch);
+            }
+
+            @Override
+            public void onNext(T item) {
+                items.add(item);
+                if (--outstanding < 0)
+                    result.completeExceptionally(new AssertionError("Got more entities than asked for"));
+
+                if (items.size() == limit) {
+                    subscription.cancel();
+                    result.complete(items);
+                } else if (outstanding == 0) {
+                    outstanding = batch;
+                    subscription.request(batch);
+                }
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                result.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                result.complete(items);
+            }
+        });
+
+        return result.get(30, TimeUnit.SECONDS);
     }
 
     // Tests
 
     @Test
     void GetPeople() {
-        var response = given()
-                .header("token", token)
-                .when()
-                .get("/people/");
-
-        assertThat(isGETAllResponseSuccessful(response), equalTo(true));
+        verifyCollection("people", Person.class);
     }
 
     @Test
     void GetFilms() {
-        var response = given()
-                .header("token", token)
-                .when()
-                .get("/films/");
-
-        assertThat(isGETAllResponseSuccessful(response), equalTo(true));
+        verifyCollection("films", Film.class);
     }
 
     @Test
     void GetPlanets() {
-        var response = given()
-                .header("token", token)
-                .when()
-                .get("/planets/");
-
-        assertThat(isGETAllResponseSuccessful(response), equalTo(true));
+        verifyCollection("planets", Planet.class);
     }
 
     @Test
     void GetSpecies() {
-        var response = given()
-                .header("token", token)
-                .when()
-                .get("/species/");
-
-        assertThat(isGETAllResponseSuccessful(response), equalTo(true));
+        verifyCollection("species", Species.class);
     }
 
     @Test
     void GetVehicles() {
-        var response = given()
-                .header("token", token)
-                .when()
-                .get("/vehicles/");
-
-        assertThat(isGETAllResponseSuccessful(response), equalTo(true));
+        verifyCollection("vehicles", Vehicle.class);
     }
 
     @Test
     void GetStarships() {
-        var response = given()
-                .header("token", token)
+        verifyCollection("starships", Starship.class);
+    }
+
+    @Test
+    void VerifyConcurrentLogins() {
+        var login = given()
+                .when()
+                .get("/auth");
+
+        assertThat(login.statusCode(), equalTo(201));
+
+        // A new login does not revoke the tokens of the clients that logged in before
+        String fresh = login.jsonPath().get("token");
+        var token = tokens.token();
+        assertThat(fresh, not(equalTo(token)));
+
+        for (var current : List.of(fresh, token)) {
+            var response = given()
+                    .header("token", current)
+                    .when()
+                    .get("/films/1");
+
+            assertThat(response.statusCode(), equalTo(200));
+        }
+
+        var forged = given()
+                .header("token", fresh.substring(0, fresh.lastIndexOf('.') + 1) + "forged")
                 .when()
-                .get("/starships/");
+                .get("/films/1");
+
+        assertThat(forged.statusCode(), equalTo(401));
+    }
 
-        assertThat(isGETAllResponseSuccessful(response), equalTo(true));
+    @Test
+    void VerifyTokenRefreshOnUnauthorized() {
+        var logins = new AtomicInteger();
+        Supplier<String> login = () -> logins.getAndIncrement() == 0 ? "revoked" : tokens.token();
+
+        // The request answered with 401 is sent again with a new token, which the following ones reuse
+        try (var provider = new TokenProvider(login)) {
+            for (var i = 0; i < 3; i++) {
+                var response = given()
+                        .noFiltersOfType(TokenProvider.class)
+                        .filter(provider)
+                        .when()
+                        .get("/films/1");
+
+                assertThat(response.statusCode(), equalTo(200));
+            }
+
+            assertThat(provider.logins(), equalTo(2L));
+            assertThat(provider.retries(), equalTo(1L));
+            assertThat(provider.refreshFailures(), equalTo(0L));
+        }
     }
 
     @Test
     void VerifyHuman() {
         var response = given()
-                .header("token", token)
                 .when()
                 .get("/species/1");
 
@@ -296,7 +510,6 @@ public class APITests {
     @Test
     void VerifyTatooine() {
         var response = given()
-                .header("token", token)
                 .when()
                 .get("/planets/1");
 
@@ -319,14 +532,12 @@ public class APITests {
     @Test
     void VerifyLukeSkywalker() {
         var planetResponse = given()
-                .header("token", token)
                 .when()
                 .get("/planets/1");
         assertThat(planetResponse, notNullValue());
         var tatooine = planetResponse.as(Planet.class);
 
         var personResponse = given()
-                .header("token", token)
                 .when()
                 .get("/people/1");
 
@@ -353,7 +564,6 @@ public class APITests {
     @Test
     void VerifyAtAt() {
         var vehicleResponse = given()
-                .header("token", token)
                 .when()
                 .get("/vehicles/7");
 
@@ -378,7 +588,6 @@ public class APITests {
     @Test
     void VerifyANewHope() {
         var response = given()
-                .header("token", token)
                 .when()
                 .get("/films/1");
 
@@ -401,7 +610,6 @@ public class APITests {
     @Test
     void VerifyStarDestroyer() {
         var response = given()
-                .header("token", token)
                 .when()
                 .get("/starships/2");
 
@@ -425,7 +633,8 @@ public class APITests {
 
     @Test
     void VerifyPlanetCreation() {
-        var newId = getNumberOfPlanets() + 1;
+        var newId = reserveId("planets");
+        var countBefore = getNumberOfPlanets();
 
         var body = new JSONObject()
                 .put("id", newId)
@@ -444,7 +653,6 @@ public class APITests {
                 .put("edited", Instant.now().toString());
 
         var postNewPlanetResponse = given()
-                .header("token", token)
                 .contentType(ContentType.JSON)
                 .body(body.toString())
                 .when()
@@ -452,8 +660,11 @@ public class APITests {
 
         assertThat(postNewPlanetResponse.statusCode(), equalTo(201));
 
+        // Other tests may be creating planets concurrently
+        if (!parallelExecution)
+            assertThat(getNumberOfPlanets(), equalTo(countBefore + 1));
+
         var getNewPlanetResponse = given()
-                .header("token", token)
                 .when()
                 .get("/planets/" + newId);
 
@@ -477,7 +688,8 @@ public class APITests {
 
     @Test
     void VerifyPersonCreation() {
-        var newId = getNumberOfPeople() + 1;
+        var newId = reserveId("people");
+        var countBefore = getNumberOfPeople();
 
         var body = new JSONObject()
                 .put("id", newId)
@@ -498,7 +710,6 @@ public class APITests {
                 .put("edited", Instant.now().toString());
 
         var newPersonResponse = given()
-                .header("token", token)
                 .contentType(ContentType.JSON)
                 .body(body.toString())
                 .when()
@@ -506,8 +717,11 @@ public class APITests {
 
         assertThat(newPersonResponse.statusCode(), equalTo(201));
 
+        // Other tests may be creating people concurrently
+        if (!parallelExecution)
+            assertThat(getNumberOfPeople(), equalTo(countBefore + 1));
+
         var personResponse = given()
-                .header("token", token)
                 .when()
                 .get("/people/" + newId);
 
@@ -532,7 +746,8 @@ public class APITests {
 
     @Test
     void VerifyFilmCreation() {
-        var newId = getNumberOfFilms() + 1;
+        var newId = reserveId("films");
+        var countBefore = getNumberOfFilms();
 
         var body = new JSONObject()
                 .put("id", newId)
@@ -551,15 +766,17 @@ public class APITests {
                 .put("edited", Instant.now());
 
         var newFilmResponse = given()
-                .header("token", token)
                 .contentType(ContentType.JSON)
                 .body(body.toString())
                 .post("/films");
 
         assertThat(newFilmResponse.statusCode(), equalTo(201));
 
+        // Other tests may be creating films concurrently
+        if (!parallelExecution)
+            assertThat(getNumberOfFilms(), equalTo(countBefore + 1));
+
         var filmResponse = given()
-                .header("token", token)
                 .when()
                 .get("/films/" + newId);
 
@@ -583,7 +800,8 @@ public class APITests {
 
     @Test
     void VerifySpeciesCreation() {
-        var newId = getNumberOfSpecies() + 1;
+        var newId = reserveId("species");
+        var countBefore = getNumberOfSpecies();
 
         var body = new JSONObject()
                 .put("id", newId)
@@ -603,15 +821,17 @@ public class APITests {
                 .put("edited", Instant.now());
 
         var newSpeciesResponse = given()
-                .header("token", token)
                 .contentType(ContentType.JSON)
                 .body(body.toString())
                 .post("/species");
 
         assertThat(newSpeciesResponse.statusCode(), equalTo(201));
 
+        // Other tests may be creating species concurrently
+        if (!parallelExecution)
+            assertThat(getNumberOfSpecies(), equalTo(countBefore + 1));
+
         var speciesResponse = given()
-                .header("token", token)
                 .when()
                 .get("/species/" + newId);
 
@@ -635,7 +855,8 @@ public class APITests {
 
     @Test
     void VerifyVehicleCreation() {
-        var newId = getNumberOfVehicles() + 1;
+        var newId = reserveId("vehicles");
+        var countBefore = getNumberOfVehicles();
 
         var body = new JSONObject()
                 .put("id", newId)
@@ -656,7 +877,6 @@ public class APITests {
                 .put("edited", Instant.now().toString());
 
         var postNewVehicleResponse = given()
-                .header("token", token)
                 .contentType(ContentType.JSON)
                 .body(body.toString())
                 .when()
@@ -664,8 +884,11 @@ public class APITests {
 
         assertThat(postNewVehicleResponse.statusCode(), equalTo(201));
 
+        // Other tests may be creating vehicles concurrently
+        if (!parallelExecution)
+            assertThat(getNumberOfVehicles(), equalTo(countBefore + 1));
+
         var getNewVehicleResponse = given()
-                .header("token", token)
                 .when()
                 .get("/vehicles/" + newId);
 
@@ -691,7 +914,8 @@ public class APITests {
 
     @Test
     void VerifyStarshipCreation() {
-        var newId = getNumberOfStarships() + 1;
+        var newId = reserveId("starships");
+        var countBefore = getNumberOfStarships();
 
         var body = new JSONObject()
                 .put("id", newId)
@@ -714,7 +938,6 @@ public class APITests {
                 .put("edited", Instant.now().toString());
 
         var postNewStarshipResponse = given()
-                .header("token", token)
                 .contentType(ContentType.JSON)
                 .body(body.toString())
                 .when()
@@ -722,8 +945,11 @@ public class APITests {
 
         assertThat(postNewStarshipResponse.statusCode(), equalTo(201));
 
+        // Other tests may be creating starships concurrently
+        if (!parallelExecution)
+            assertThat(getNumberOfStarships(), equalTo(countBefore + 1));
+
         var getNewStarshipResponse = given()
-                .header("token", token)
                 .when()
                 .get("/starships/" + newId);
 
@@ -773,7 +999,6 @@ public class APITests {
                 .put("edited", Instant.now().toString());
 
         var request = given()
-                .header("token", token)
                 .contentType(ContentType.JSON)
                 .body(body.toString())
                 .when()
@@ -785,7 +1010,6 @@ public class APITests {
         assertThat(patchedPerson.name, containsString("Patch"));
 
         var getRequest = given()
-                .header("token", token)
                 .when()
                 .get("/people/" + patchedPerson.id);
 
@@ -815,7 +1039,6 @@ public class APITests {
                 .put("edited", Instant.now().toString());
 
         var request = given()
-                .header("token", token)
                 .contentType(ContentType.JSON)
                 .body(body.toString())
                 .when()
@@ -827,7 +1050,6 @@ public class APITests {
         assertThat(patchedPlanet.name, containsString("Patch"));
 
         var getRequest = given()
-                .header("token", token)
                 .when()
                 .get("/planets/" + patchedPlanet.id);
 
@@ -859,7 +1081,6 @@ public class APITests {
                 .put("edited", Instant.now());
 
         var request = given()
-                .header("token", token)
                 .contentType(ContentType.JSON)
                 .body(body.toString())
                 .when()
@@ -871,7 +1092,6 @@ public class APITests {
         assertThat(patchedSpecies.name, containsString("Patch"));
 
         var getRequest = given()
-                .header("token", token)
                 .when()
                 .get("/species/" + patchedSpecies.id);
 
@@ -904,7 +1124,6 @@ public class APITests {
                 .put("edited", Instant.now().toString());
 
         var request = given()
-                .header("token", token)
                 .contentType(ContentType.JSON)
                 .body(body.toString())
                 .when()
@@ -916,7 +1135,6 @@ public class APITests {
         assertThat(patchedVehicle.name, containsString("Patch"));
 
         var getRequest = given()
-                .header("token", token)
                 .when()
                 .get("/vehicles/" + patchedVehicle.id);
 
@@ -951,7 +1169,6 @@ public class APITests {
                 .put("edited", Instant.now().toString());
 
         var request = given()
-                .header("token", token)
                 .contentType(ContentType.JSON)
                 .body(body.toString())
                 .when()
@@ -963,7 +1180,6 @@ public class APITests {
         assertThat(patchedStarship.name, containsString("Patch"));
 
         var getRequest = given()
-                .header("token", token)
                 .when()
                 .get("/starships/" + patchedStarship.id);
 
@@ -974,7 +1190,6 @@ public class APITests {
     @Test
     void VerifyPlanetNotFound() {
         var response = given()
-                .header("token", token)
                 .when()
                 .get("/planets/-1");
 
@@ -984,7 +1199,6 @@ public class APITests {
     @Test
     void VerifyPersonNotFound() {
         var response = given()
-                .header("token", token)
                 .when()
                 .get("/people/-1");
 
@@ -994,7 +1208,6 @@ public class APITests {
     @Test
     void VerifyFilmNotFound() {
         var response = given()
-                .header("token", token)
                 .when()
                 .get("/films/-1");
 
@@ -1004,7 +1217,6 @@ public class APITests {
     @Test
     void VerifySpeciesNotFound() {
         var response = given()
-                .header("token", token)
                 .when()
                 .get("/species/-1");
 
@@ -1014,7 +1226,6 @@ public class APITests {
     @Test
     void VerifyVehicleNotFound() {
         var response = given()
-                .header("token", token)
                 .when()
                 .get("/vehicles/-1");
 
@@ -1024,29 +1235,46 @@ public class APITests {
     @Test
     void VerifyStarshipNotFound() {
         var response = given()
-                .header("token", token)
                 .when()
                 .get("/starships/-1");
 
         assertThat(response.statusCode(), equalTo(404));
     }
 
+    @Test
+    void VerifyMalformedReservation() {
+        var response = given()
+                .queryParam("size", "abc")
+                .when()
+                .post("/_seq/planets");
+
+        assertThat(response.statusCode(), equalTo(400));
+    }
+
+    @Test
+    void VerifyMalformedBody() {
+        var response = given()
+                .contentType(ContentType.JSON)
+                .body("{\"name\": ")
+                .when()
+                .post("/planets");
+
+        assertThat(response.statusCode(), equalTo(400));
+    }
+
     @Test
     void VerifyCrossLinkedEndpointData() {
         var luke = given()
-                .header("token", token)
                 .when()
                 .get("/people/1")
                 .as(Person.class);
 
         var tatooine = given()
-                .header("token", token)
                 .when()
                 .get("/planets/1")
                 .as(Planet.class);
 
         var resident = given()
-                .header("token", token)
                 .when()
                 .get(tatooine.residents.get(0))
                 .as(Person.class);
@@ -1067,7 +1295,6 @@ public class APITests {
         assertThat(luke.starships, equalTo(resident.starships));
 
         var homeworld = given()
-                .header("token", token)
                 .when()
                 .get(resident.homeworld)
                 .as(Planet.class);
@@ -1086,9 +1313,320 @@ public class APITests {
         assertThat(homeworld.films, equalTo(tatooine.films));
     }
 
+    @Test
+    void VerifyResolvedFilmCast() {
+        var aNewHope = given()
+                .when()
+                .get("/films/1")
+                .as(Film.class);
+
+        try (var resolver = new LinkResolver(new RequestSpecBuilder().build())) {
+            var cast = resolver.resolveAll(aNewHope.characters, Person.class);
+            assertThat(cast.size(), equalTo(aNewHope.characters.size()));
+            assertThat(resolver.fetches(), equalTo((long) new HashSet<>(aNewHope.characters).size()));
+            assertThat(cast.get(aNewHope.characters.indexOf("/people/1/")).name, equalTo("Luke Skywalker"));
+
+            // Most of the cast shares a homeworld, and each one is fetched only once
+            var links = cast.stream().filter(Objects::nonNull).map(person -> person.homeworld).toList();
+            var homeworlds = resolver.resolveAll(links, Planet.class);
+            assertThat(resolver.fetches(), equalTo((long) new HashSet<>(aNewHope.characters).size() + new HashSet<>(links).size()));
+            assertThat(homeworlds.get(0).name, equalTo("Tatooine"));
+            assertThat(homeworlds.get(0), sameInstance(homeworlds.get(1)));
+
+            var luke = resolver.resolve("/people/1", Person.class);
+            assertThat(luke, sameInstance(cast.get(0)));
+        }
+    }
+
+    @Test
+    void VerifyCompoundDocument() {
+        assumeTrue(snapshotsSupported, "include needs db.json");
+
+        var response = given()
+                .accept(JsonApiReader.MEDIA_TYPE)
+                .queryParam("include", "residents,films")
+                .when()
+                .get("/planets/1");
+
+        assertThat(response.statusCode(), equalTo(200));
+
+        var tatooine = new JsonApiReader().read(response, Planet.class);
+        assertThat(tatooine.name, equalTo("Tatooine"));
+        assertThat(tatooine.linkedResidents.get(0).name, equalTo("Luke Skywalker"));
+        assertThat(tatooine.linkedFilms.get(0).title, equalTo("A New Hope"));
+
+        // Included resources are linked to each other too
+        var luke = tatooine.linkedResidents.get(0);
+        assertThat(luke.linkedHomeworld, sameInstance(tatooine));
+    }
+
+    @Test
+    void VerifyNestedCompoundDocument() {
+        assumeTrue(snapshotsSupported, "include needs db.json");
+
+        var response = given()
+                .accept(JsonApiReader.MEDIA_TYPE)
+                .queryParam("include", "characters.homeworld")
+                .when()
+                .get("/films");
+
+        assertThat(response.statusCode(), equalTo(200));
+
+        var films = new JsonApiReader().readList(response, Film.class);
+        assertThat(films.isEmpty(), equalTo(false));
+
+        var aNewHope = films.stream().filter(film -> film.id.equals("1")).findFirst().orElseThrow();
+        var luke = aNewHope.linkedCharacters.stream().filter(person -> person.id.equals("1")).findFirst().orElseThrow();
+        assertThat(luke.name, equalTo("Luke Skywalker"));
+        assertThat(luke.linkedHomeworld.name, equalTo("Tatooine"));
+    }
+
+    @Test
+    void VerifyBadInclude() {
+        var response = given()
+                .accept(JsonApiReader.MEDIA_TYPE)
+                .queryParam("include", "pilots")
+                .when()
+                .get("/planets/1");
+
+        assertThat(response.statusCode(), equalTo(400));
+    }
+
+    @Test
+    void VerifyStarshipProjection() {
+        var full = given()
+                .when()
+                .get("/starships");
+
+        var mask = FieldMask.of(Starship.class, "name", "hyperdrive_rating");
+        var projected = given()
+                .queryParam(mask.parameter(), mask.value())
+                .when()
+                .get("/starships");
+
+        assertThat(projected.statusCode(), equalTo(200));
+        assertThat(projected.asByteArray().length < full.asByteArray().length / 2, equalTo(true));
+
+        var starships = mask.readList(projected.asByteArray());
+        assertThat(starships.size(), equalTo(full.jsonPath().getList("id").size()));
+
+        var starDestroyer = starships.stream().filter(starship -> starship.id.equals("2")).findFirst().orElseThrow();
+        assertThat(starDestroyer.name, equalTo("Star Destroyer"));
+        assertThat(starDestroyer.hyperdrive_rating, equalTo("2.0"));
+        assertThat(starDestroyer.model, nullValue());
+        assertThat(starDestroyer.films, nullValue());
+    }
+
+    @Test
+    void VerifySparseFieldsetDocument() {
+        assumeTrue(snapshotsSupported, "include needs db.json");
+
+        var response = given()
+                .accept(JsonApiReader.MEDIA_TYPE)
+                .queryParam("include", "pilots")
+                .queryParam("fields[starship]", "name,pilots")
+                .queryParam("fields[person]", "name")
+                .when()
+                .get("/starships/5");
+
+        assertThat(response.statusCode(), equalTo(200));
+
+        var falcon = new JsonApiReader().read(response, Starship.class);
+        assertThat(falcon.name, equalTo("Millennium Falcon"));
+        assertThat(falcon.model, nullValue());
+        assertThat(falcon.linkedPilots.get(0).name, equalTo("Chewbacca"));
+        assertThat(falcon.linkedPilots.get(0).height, nullValue());
+    }
+
+    @Test
+    void VerifyCursorPaging() {
+        var people = given()
+                .when()
+                .get("/people")
+                .as(new TypeRef<List<Person>>() {});
+        var names = people.stream().map(person -> person.name).toList();
+
+        // One entity per page, pages that do not divide the collection, and one page holding all of it
+        for (var pageSize : List.of(1, 3, names.size(), names.size() + 1)) {
+            try (var cursor = EntityCursor.stream(new RequestSpecBuilder().build(), "people", Person.class, pageSize)) {
+                var seen = cursor.map(person -> person.name).toList();
+
+                // Concurrent tests add and remove people while the cursor runs
+                if (parallelExecution)
+                    assertThat(seen, hasItem("Luke Skywalker"));
+                else
+                    assertThat(seen, equalTo(names));
+            }
+        }
+
+        try (var tatooine = EntityCursor.stream(new RequestSpecBuilder().addQueryParam("homeworld", "/planets/1/").build(), "people", Person.class, 2)) {
+            var residents = tatooine.map(person -> person.homeworld).toList();
+
+            assertThat(residents.isEmpty(), equalTo(false));
+            assertThat(residents, everyItem(equalTo("/planets/1/")));
+        }
+    }
+
+    @Test
+    void VerifyExport() throws Exception {
+        var starships = given()
+                .when()
+                .get("/starships")
+                .as(new TypeRef<List<Starship>>() {});
+
+        // One entity at a time, a few at a time, and all at once
+        for (var batch : List.of(1, 3, Integer.MAX_VALUE)) {
+            var exported = take(new NdjsonPublisher<>(new RequestSpecBuilder().build(), "starships", Starship.class), batch, Integer.MAX_VALUE);
+
+            // Concurrent tests add and remove starships between the two reads
+            if (!parallelExecution)
+                assertThat(exported.size(), equalTo(starships.size()));
+            assertThat(exported.get(0).name, equalTo(starships.get(0).name));
+            assertThat(exported.get(0).films, equalTo(starships.get(0).films));
+        }
+
+        var people = take(new NdjsonPublisher<>(new RequestSpecBuilder().build(), "people", Person.class), 2, 5);
+        assertThat(people.size(), equalTo(5));
+        assertThat(people.get(0).name, equalTo("Luke Skywalker"));
+    }
+
+    @Test
+    void VerifyExportOfUnknownCollection() {
+        var publisher = new NdjsonPublisher<>(new RequestSpecBuilder().build(), "droids", Object.class);
+
+        try {
+            take(publisher, 1, Integer.MAX_VALUE);
+            assertThat("the export should have failed", false);
+        } catch (Exception e) {
+            assertThat(e.getCause() instanceof IllegalStateException, equalTo(true));
+        }
+    }
+
+    @Test
+    void VerifyBatchWriter() {
+        // Never sends on its own, so the creates only go out together on flush()
+        try (var planets = new BatchWriter<>(new RequestSpecBuilder().build(), "planets", Planet.class, 100, Duration.ofDays(1))) {
+            var creates = new ArrayList<CompletableFuture<String>>();
+            for (var i = 0; i < 20; i++) {
+                var planet = new Planet();
+                planet.name = "Batch_Tester_" + i;
+                planet.climate = "arid";
+                planet.residents = List.of();
+                planet.films = List.of();
+                creates.add(planets.create(planet));
+            }
+
+            var tatooine = new Planet();
+            tatooine.id = "1";
+            tatooine.name = "Tatooine";
+            var duplicate = planets.create(tatooine);
+
+            planets.flush();
+
+            // The duplicate fails on its own, and the others are sent again without it
+            assertThat(planets.batches(), equalTo(2L));
+            try {
+                duplicate.join();
+                assertThat("the duplicate should have failed", false);
+            } catch (CompletionException e) {
+                assertThat(e.getCause().getMessage(), containsString("409"));
+            }
+
+            var ids = creates.stream().map(CompletableFuture::join).toList();
+            assertThat(new HashSet<>(ids).size(), equalTo(20));
+            for (var i = 0; i < ids.size(); i++) {
+                var planet = given()
+                        .when()
+                        .get("/planets/" + ids.get(i))
+                        .as(Planet.class);
+
+                assertThat(planet.name, equalTo("Batch_Tester_" + i));
+                createdPlanets.add(planet);
+            }
+
+            var replacement = new Planet();
+            replacement.name = "Batch_Tester_Replaced";
+            var replace = planets.replace(ids.get(0), replacement);
+            var delete = planets.delete(ids.get(1));
+            planets.flush();
+
+            assertThat(replace.join(), equalTo(ids.get(0)));
+            assertThat(delete.join(), equalTo(ids.get(1)));
+            assertThat(given().when().get("/planets/" + ids.get(0)).as(Planet.class).name, equalTo("Batch_Tester_Replaced"));
+            assertRemoved("planets/" + ids.get(1));
+            createdPlanets.remove(1);
+        }
+    }
+
+    @Test
+    void VerifyBulkWriteIsAtomic() {
+        var newId = reserveId("planets");
+        var unknownId = reserveId("planets");
+
+        var operations = new JSONArray()
+                .put(new JSONObject().put("op", "create").put("data", new JSONObject().put("id", newId).put("name", "Planet_Tester_" + newId)))
+                .put(new JSONObject().put("op", "update").put("id", 1).put("data", new JSONObject().put("name", "Not Tatooine")))
+                .put(new JSONObject().put("op", "delete").put("id", unknownId));
+
+        var response = given()
+                .contentType(ContentType.JSON)
+                .body(operations.toString())
+                .when()
+                .post("/planets/_bulk");
+
+        // The status of the operation that failed, and nothing applied
+        assertThat(response.statusCode(), equalTo(404));
+        assertThat(response.jsonPath().getList("status"), equalTo(List.of(424, 424, 404)));
+        assertRemoved("planets/" + newId);
+        assertThat(given().when().get("/planets/1").as(Planet.class).name, equalTo("Tatooine"));
+    }
+
+    @Test
+    void VerifyBinaryWireFormats() {
+        var json = given()
+                .when()
+                .get("/planets");
+        var jsonBytes = json.asByteArray().length;
+        var planets = json.as(new TypeRef<List<Planet>>() {});
+
+        for (var format : WireFormat.values()) {
+            if (format == WireFormat.JSON)
+                continue;
+
+            var collection = given()
+                    .accept(format.mediaType())
+                    .when()
+                    .get("/planets");
+
+            assertThat(collection.statusCode(), equalTo(200));
+            assertThat(format.matches(collection.contentType()), equalTo(true));
+            var bytes = collection.asByteArray().length;
+            var decoded = collection.as(new TypeRef<List<Planet>>() {});
+
+            // Concurrent tests add and remove planets between the two reads
+            if (!parallelExecution) {
+                assertThat(bytes < jsonBytes, equalTo(true));
+                assertThat(decoded.size(), equalTo(planets.size()));
+            }
+            assertThat(decoded.get(0).name, equalTo(planets.get(0).name));
+            assertThat(decoded.get(0).residents, equalTo(planets.get(0).residents));
+
+            var tatooine = given()
+                    .accept(format.mediaType())
+                    .when()
+                    .get("/planets/1")
+                    .as(Planet.class);
+
+            assertThat(tatooine.id, equalTo("1"));
+            assertThat(tatooine.name, equalTo("Tatooine"));
+            assertThat(tatooine.population, equalTo("200000"));
+        }
+    }
+
     @Test
     void VerifyNoAuthentication() {
         var response = given()
+                .noFiltersOfType(TokenProvider.class)
                 .when()
                 .get("/people");
 
@@ -0,0 +1,136 @@
+package org.example.tests;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.data.DatasetGenerator;
+import org.example.models.*;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class DatasetGeneratorTests {
+    private static final Pattern LINK = Pattern.compile("^/(\\w+)/(\\d+)/$");
+
+    // Relationship fields and the fields of the linked entities that list them back
+    private static final List<List<String>> INVERSES = List.of(
+            List.of("people", "homeworld", "planets", "residents"),
+            List.of("people", "films", "films", "characters"),
+            List.of("planets", "films", "films", "planets"),
+            List.of("starships", "films", "films", "starships"),
+            List.of("vehicles", "films", "films", "vehicles"),
+            List.of("species", "films", "films", "species"),
+            List.of("people", "species", "species", "people"),
+            List.of("people", "vehicles", "vehicles", "pilots"),
+            List.of("people", "starships", "starships", "pilots"));
+
+    private final ObjectMapper jackson = new ObjectMapper();
+
+    @Test
+    void VerifyScaledSizesMatchDbJson() {
+        assertThat(DatasetGenerator.Sizes.scaled(64), equalTo(new DatasetGenerator.Sizes(11, 20, 6, 10, 7, 10)));
+        assertThat(DatasetGenerator.Sizes.scaled(10_000_000).total(), equalTo(10_000_000L));
+    }
+
+    @Test
+    void VerifySameSeedSameBytes() throws IOException {
+        var sizes = DatasetGenerator.Sizes.scaled(2_000);
+
+        assertThat(generate(42, sizes), equalTo(generate(42, sizes)));
+        assertThat(generate(42, sizes), not(equalTo(generate(43, sizes))));
+    }
+
+    @Test
+    void VerifyEntitiesBindToModels() throws IOException {
+        var db = jackson.readTree(generate(42, DatasetGenerator.Sizes.scaled(2_000)));
+        var models = Map.of(
+                "planets", Planet.class,
+                "people", Person.class,
+                "films", Film.class,
+                "species", Species.class,
+                "vehicles", Vehicle.class,
+                "starships", Starship.class);
+
+        for (var collection : models.entrySet()) {
+            var entities = db.get(collection.getKey());
+            assertThat(entities.size(), equalTo(DatasetGenerator.Sizes.scaled(2_000).of(collection.getKey())));
+
+            // Unknown or missing properties would fail or be left out of the round trip
+            for (var entity : entities)
+                assertThat(jackson.valueToTree(jackson.treeToValue(entity, collection.getValue())).size(), equalTo(entity.size()));
+        }
+    }
+
+    @Test
+    void VerifyRelationshipsAreConsistent() throws IOException {
+        var db = jackson.readTree(generate(7, DatasetGenerator.Sizes.scaled(5_000)));
+
+        for (var inverse : INVERSES) {
+            var forward = links(db, inverse.get(0), inverse.get(1));
+            var backward = links(db, inverse.get(2), inverse.get(3));
+            var flipped = new HashSet<String>();
+            backward.forEach(link -> {
+                var parts = link.split(" ");
+                flipped.add(parts[1] + " " + parts[0]);
+            });
+
+            assertThat(inverse.toString(), forward.isEmpty(), equalTo(false));
+            assertThat(inverse.toString(), flipped, equalTo(forward));
+        }
+
+        for (var species : db.get("species"))
+            assertThat(exists(db, species.get("homeworld").asText()), equalTo(true));
+    }
+
+    @Test
+    void VerifyEntityMatchesWrittenOne() throws IOException {
+        var generator = new DatasetGenerator(42, DatasetGenerator.Sizes.scaled(2_000));
+        var output = new ByteArrayOutputStream();
+        generator.write(output);
+        var db = jackson.readTree(output.toByteArray());
+
+        for (var collection : DatasetGenerator.COLLECTIONS)
+            assertThat(generator.entity(jackson, collection, 3), equalTo(db.get(collection).get(2)));
+    }
+
+    private static byte[] generate(long seed, DatasetGenerator.Sizes sizes) throws IOException {
+        var output = new ByteArrayOutputStream();
+        new DatasetGenerator(seed, sizes).write(output);
+        return output.toByteArray();
+    }
+
+    // "/people/1/ /films/2/" for every link, after checking that it points at an entity
+    private static Set<String> links(JsonNode db, String collection, String field) {
+        var result = new HashSet<String>();
+
+        for (var entity : db.get(collection)) {
+            var self = "/" + collection + "/" + entity.get("id").asText() + "/";
+            var value = entity.get(field);
+
+            for (var link : value.isArray() ? value : List.of(value)) {
+                assertThat(link.asText(), exists(db, link.asText()), equalTo(true));
+                result.add(self + " " + link.asText());
+            }
+        }
+
+        return result;
+    }
+
+    private static boolean exists(JsonNode db, String link) {
+        var matcher = LINK.matcher(link);
+        if (!matcher.matches())
+            return false;
+
+        var id = Integer.parseInt(matcher.group(2));
+        var entities = db.get(matcher.group(1));
+        return entities != null && id >= 1 && id <= entities.size() && entities.get(id - 1).get("id").asInt() == id;
+    }
+}
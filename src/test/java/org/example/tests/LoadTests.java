@@ -0,0 +1,127 @@
+package org.example.tests;
+
+import org.example.load.LoadProfile;
+import org.example.load.LoadRunner;
+import org.example.server.EmbeddedServerExtension;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Runs the {@link APITests} scenarios as load instead of once each. Only enabled by the {@code load} Maven profile:
+ * <pre>
+ * mvn test -Pembedded,load -Dload.concurrency=200 -Dload.duration=30
+ * mvn test -Pload -Dload.rate=500
+ * </pre>
+ * Without {@code load.rate} every profile keeps {@code load.concurrency} virtual users busy; with it, that many
+ * iterations start every second.
+ */
+@ExtendWith(EmbeddedServerExtension.class)
+@EnabledIfSystemProperty(named = "load", matches = "true")
+public class LoadTests {
+    // Each test appends the report of its scenarios
+    private static final Path REPORT = Path.of("target", "load-report.txt");
+
+    @BeforeAll
+    static void setup() throws IOException {
+        Files.createDirectories(REPORT.getParent());
+        Files.deleteIfExists(REPORT);
+
+        // Each iteration cleans up after itself instead of rolling back everybody else's writes, since the `load`
+        // profile counts as parallel execution for APITests. Every virtual user gets a connection of its own
+        APITests.setup(Math.max(concurrency(), Integer.getInteger("api.connections", 0)));
+    }
+
+    @AfterAll
+    static void teardown() throws IOException {
+        APITests.teardownAll();
+    }
+
+    @Test
+    void Listings() throws InterruptedException, IOException {
+        var scenarios = new LinkedHashMap<String, Consumer<APITests>>();
+        scenarios.put("GetPeople", APITests::GetPeople);
+        scenarios.put("GetFilms", APITests::GetFilms);
+        scenarios.put("GetPlanets", APITests::GetPlanets);
+        scenarios.put("GetSpecies", APITests::GetSpecies);
+        scenarios.put("GetVehicles", APITests::GetVehicles);
+        scenarios.put("GetStarships", APITests::GetStarships);
+
+        run(scenarios);
+    }
+
+    @Test
+    void CrossLinkedReads() throws InterruptedException, IOException {
+        run(Map.of("VerifyCrossLinkedEndpointData", APITests::VerifyCrossLinkedEndpointData));
+    }
+
+    @Test
+    void Logins() throws InterruptedException, IOException {
+        // Every iteration logs in, so clients only get through if logging in does not lock out the others
+        run(Map.of("VerifyConcurrentLogins", APITests::VerifyConcurrentLogins));
+    }
+
+    @Test
+    void Writes() throws InterruptedException, IOException {
+        var scenarios = new LinkedHashMap<String, Consumer<APITests>>();
+        scenarios.put("VerifyPlanetCreation", APITests::VerifyPlanetCreation);
+        scenarios.put("VerifyPersonCreation", APITests::VerifyPersonCreation);
+        scenarios.put("VerifyStarshipCreation", APITests::VerifyStarshipCreation);
+        scenarios.put("VerifyPatchedPerson", APITests::VerifyPatchedPerson);
+        scenarios.put("VerifyPatchedPlanet", APITests::VerifyPatchedPlanet);
+        scenarios.put("VerifyPatchedStarship", APITests::VerifyPatchedStarship);
+
+        run(scenarios);
+    }
+
+    private static void run(Map<String, Consumer<APITests>> scenarios) throws InterruptedException, IOException {
+        // JUnit would create a fresh instance per test, so every iteration does too
+        var runnables = new LinkedHashMap<String, Runnable>();
+        scenarios.forEach((name, scenario) -> runnables.put(name, () -> {
+            var test = new APITests();
+            try {
+                scenario.accept(test);
+            } finally {
+                test.deleteCreatedEntities();
+            }
+        }));
+
+        var report = new LoadRunner(runnables).run(profile());
+        Files.writeString(REPORT, report.format(), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+
+        assertThat(report.iterations() > 0, equalTo(true));
+        assertThat(report.failures(), equalTo(0L));
+    }
+
+    private static int concurrency() {
+        return Integer.getInteger("load.concurrency", 200);
+    }
+
+    private static LoadProfile profile() {
+        var concurrency = concurrency();
+        var duration = Duration.ofSeconds(Integer.getInteger("load.duration", 10));
+        var warmup = Duration.ofSeconds(Integer.getInteger("load.warmup", 2));
+        var rate = Double.parseDouble(System.getProperty("load.rate", "0"));
+
+        // The open profile measures every iteration from when it was due, which accounts for the requests a stalled
+        // server holds back; the per-route latencies of APITests.latencyFilter are never corrected
+        if (rate <= 0)
+            return LoadProfile.closed(concurrency, duration, warmup);
+
+        return LoadProfile.open(rate, concurrency, duration, warmup);
+    }
+}
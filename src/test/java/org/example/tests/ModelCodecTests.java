@@ -0,0 +1,124 @@
+package org.example.tests;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.exc.UnrecognizedPropertyException;
+import org.example.codec.FieldMask;
+import org.example.codec.ModelCodecs;
+import org.example.models.*;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// The generated codecs have to bind exactly like the reflective Jackson mapping they replace
+public class ModelCodecTests {
+    private static final Map<String, Class<?>> models = Map.of(
+            "planets", Planet.class,
+            "people", Person.class,
+            "films", Film.class,
+            "species", Species.class,
+            "vehicles", Vehicle.class,
+            "starships", Starship.class);
+
+    private final ObjectMapper jackson = new ObjectMapper();
+
+    @Test
+    void VerifyEveryModelHasACodec() {
+        for (var model : models.values())
+            assertThat(model.getSimpleName(), ModelCodecs.has(model), equalTo(true));
+    }
+
+    @Test
+    void VerifyReadMatchesJackson() throws IOException {
+        var db = jackson.readTree(Path.of("server/db.json").toFile());
+
+        for (var collection : models.entrySet()) {
+            for (var entity : db.get(collection.getKey())) {
+                var expected = jackson.treeToValue(entity, collection.getValue());
+                var actual = read(collection.getValue(), entity.toString());
+
+                assertThat(jackson.valueToTree(actual), equalTo(jackson.valueToTree(expected)));
+            }
+        }
+    }
+
+    @Test
+    void VerifyWriteMatchesJackson() throws IOException {
+        var db = jackson.readTree(Path.of("server/db.json").toFile());
+
+        for (var collection : models.entrySet()) {
+            for (var entity : db.get(collection.getKey())) {
+                var model = jackson.treeToValue(entity, collection.getValue());
+
+                assertThat(write(model), equalTo(jackson.valueToTree(model)));
+            }
+        }
+    }
+
+    @Test
+    void VerifyNullsAndCoercion() throws IOException {
+        var planet = read(Planet.class, "{\"id\": 7, \"name\": null, \"residents\": null, \"films\": [\"/films/1/\", 2]}");
+
+        assertThat(planet.id, equalTo("7"));
+        assertThat(planet.name, nullValue());
+        assertThat(planet.residents, nullValue());
+        assertThat(planet.films, equalTo(List.of("/films/1/", "2")));
+    }
+
+    @Test
+    void VerifyUnknownPropertiesAreRejected() {
+        var e = assertThrows(UnrecognizedPropertyException.class,
+                () -> read(Planet.class, "{\"name\": \"Tatooine\", \"extra\": {\"nested\": [1, 2]}}"));
+
+        assertThat(e.getPropertyName(), equalTo("extra"));
+        assertThat(e.getReferringClass(), equalTo(Planet.class));
+    }
+
+    @Test
+    void VerifyMaskedFieldsAreSkipped() {
+        var mask = FieldMask.of(Starship.class, "name", "hyperdrive_rating");
+        var json = "[{\"id\": 9, \"name\": \"Death Star\", \"model\": \"DS-1\", \"hyperdrive_rating\": \"4.0\", \"pilots\": [\"/people/1/\"], \"extra\": [{}]}]";
+
+        var starship = mask.readList(json.getBytes(StandardCharsets.UTF_8)).get(0);
+        assertThat(starship.id, equalTo("9"));
+        assertThat(starship.name, equalTo("Death Star"));
+        assertThat(starship.hyperdrive_rating, equalTo("4.0"));
+        assertThat(starship.model, nullValue());
+        assertThat(starship.pilots, nullValue());
+
+        assertThat(mask.parameter(), equalTo("fields[starship]"));
+        assertThat(mask.value(), equalTo("name,hyperdrive_rating"));
+    }
+
+    @Test
+    void VerifyUnknownMaskedFieldIsRejected() {
+        var e = assertThrows(IllegalArgumentException.class,
+                () -> FieldMask.of(Starship.class, "title"));
+
+        assertThat(e.getMessage(), containsString("title"));
+    }
+
+    private <T> T read(Class<T> type, String json) throws IOException {
+        try (var parser = jackson.getFactory().createParser(json)) {
+            return ModelCodecs.get(type).read(parser);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> JsonNode write(T value) throws IOException {
+        var out = new StringWriter();
+        try (var generator = jackson.getFactory().createGenerator(out)) {
+            ModelCodecs.get((Class<T>) value.getClass()).write(value, generator);
+        }
+        return jackson.readTree(out.toString());
+    }
+}
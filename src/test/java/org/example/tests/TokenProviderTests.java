@@ -0,0 +1,148 @@
+package org.example.tests;
+
+import org.example.client.TokenProvider;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class TokenProviderTests {
+    @Test
+    void VerifyConcurrentRefreshesShareOneLogin() throws Exception {
+        var logins = new AtomicInteger();
+        try (var provider = new TokenProvider(() -> {
+            sleep(Duration.ofMillis(100));
+            return jwt(logins.incrementAndGet(), Instant.now().plus(Duration.ofHours(5)));
+        })) {
+            var stale = provider.token();
+
+            var threads = 16;
+            var executor = Executors.newFixedThreadPool(threads);
+            var start = new CountDownLatch(1);
+            var results = new ArrayList<Future<String>>();
+            for (var i = 0; i < threads; i++)
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return provider.refresh(stale);
+                }));
+
+            start.countDown();
+            var tokens = new HashSet<String>();
+            for (var result : results)
+                tokens.add(result.get());
+            executor.shutdown();
+
+            assertThat(logins.get(), equalTo(2));
+            assertThat(tokens, equalTo(Set.of(provider.token())));
+            assertThat(tokens.contains(stale), equalTo(false));
+
+            // Refreshing a token that was replaced already hands out the current one
+            assertThat(provider.refresh(stale), equalTo(provider.token()));
+            assertThat(logins.get(), equalTo(2));
+        }
+    }
+
+    @Test
+    void VerifyBlockedLoginIsShared() throws Exception {
+        var entered = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        try (var provider = new TokenProvider(() -> {
+            entered.countDown();
+            await(release);
+            return jwt(1, Instant.now().plus(Duration.ofHours(5)));
+        })) {
+            var executor = Executors.newFixedThreadPool(2);
+            var first = executor.submit(provider::token);
+            entered.await();
+            var second = executor.submit(provider::token);
+
+            // The second caller is waiting for the first one's login, or about to
+            sleep(Duration.ofMillis(100));
+            release.countDown();
+
+            assertThat(first.get(), equalTo(second.get()));
+            executor.shutdown();
+
+            assertThat(provider.logins(), equalTo(1L));
+        }
+    }
+
+    @Test
+    void VerifyRacingRefreshesLogInOnce() throws Exception {
+        var executor = Executors.newFixedThreadPool(2);
+        for (var round = 0; round < 500; round++) {
+            var logins = new AtomicInteger();
+            try (var provider = new TokenProvider(() -> jwt(logins.incrementAndGet(), Instant.now().plus(Duration.ofHours(5))))) {
+                var stale = provider.token();
+
+                var start = new CountDownLatch(1);
+                var a = executor.submit(() -> {
+                    await(start);
+                    return provider.refresh(stale);
+                });
+                var b = executor.submit(() -> {
+                    await(start);
+                    return provider.refresh(stale);
+                });
+
+                start.countDown();
+                assertThat(a.get(), equalTo(b.get()));
+                assertThat(provider.logins(), equalTo(2L));
+            }
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    void VerifyTokenRefreshedBeforeExpiry() {
+        var logins = new AtomicInteger();
+        try (var provider = new TokenProvider(() -> jwt(logins.incrementAndGet(), Instant.now().plusSeconds(2)),
+                Duration.ofSeconds(1), Clock.systemUTC())) {
+            var first = provider.token();
+
+            var deadline = Instant.now().plusSeconds(5);
+            while (logins.get() < 2 && Instant.now().isBefore(deadline))
+                sleep(Duration.ofMillis(50));
+
+            assertThat(logins.get() >= 2, equalTo(true));
+            assertThat(provider.token(), not(equalTo(first)));
+        }
+    }
+
+    private static String jwt(int login, Instant expires) {
+        var encoder = Base64.getUrlEncoder().withoutPadding();
+        var header = encoder.encodeToString("{\"alg\":\"none\"}".getBytes(StandardCharsets.UTF_8));
+        var payload = encoder.encodeToString(("{\"login\":" + login + ",\"exp\":" + expires.getEpochSecond() + "}")
+                .getBytes(StandardCharsets.UTF_8));
+        return header + "." + payload + ".unsigned";
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}